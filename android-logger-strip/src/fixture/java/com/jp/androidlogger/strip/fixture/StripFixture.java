@@ -0,0 +1,97 @@
+package com.jp.androidlogger.strip.fixture;
+
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * typical log call sites - StripVerifier strips this class (min level INFO) and checks what's left
+ * - each method returns how many times its side-effect counters were hit
+ */
+public class StripFixture {
+    private static final Marker MARKER = MarkerFactory.getMarker("PERF");
+
+    // what Lombok's @Slf4j generates
+    static Logger log;
+
+    private final Logger instanceLog;
+    private int nextId;
+    private int expensiveCount;
+
+    public StripFixture(Logger instanceLog) {
+        this.instanceLog = instanceLog;
+    }
+
+    public int boxing(int count, long bytes, double ratio) {
+        log.debug("count={}, bytes={}", count, bytes);
+        log.trace("count={}, bytes={}, ratio={}", count, bytes, ratio);
+        log.info("loaded {} items", count);
+        return 0;
+    }
+
+    public int concatenation(String name, int count) {
+        log.debug("name=" + name + ", count=" + count);
+        instanceLog.debug("instance: " + name);
+        log.warn("slow: " + name);
+        return 0;
+    }
+
+    public int sideEffect() {
+        // nextId() still has to run
+        log.debug("next: {}", nextId());
+        log.debug("next: {}, {}", nextId(), nextId());
+        return nextId;
+    }
+
+    public int guarded() {
+        if (log.isDebugEnabled()) {
+            log.debug("state: {}", expensive());
+        }
+        if (instanceLog.isTraceEnabled(MARKER)) {
+            expensive();
+        }
+        log.error("done");
+        return expensiveCount;
+    }
+
+    public int branches(boolean isReady, Exception e) {
+        log.debug("ready: {}", isReady ? "yes" : "no");
+        for (int i = 0; i < 3; i++) {
+            log.trace(MARKER, "attempt {}", i);
+        }
+        log.debug("failed", e);
+        log.error("failed", e);
+        return 0;
+    }
+
+    public int exceptions(StripFixture other, Object name) {
+        // stripping can't remove the NullPointerException / ClassCastException along with the call
+        int thrownCount = 0;
+        try {
+            log.debug("other: {}", other.nextId);
+        } catch (NullPointerException e) {
+            thrownCount++;
+        }
+        try {
+            log.debug("name: " + (String) name);
+        } catch (ClassCastException e) {
+            thrownCount++;
+        }
+        // field of 'this' - removed with the call, which leaves an empty try block
+        try {
+            log.debug("next: {}", nextId);
+        } catch (RuntimeException e) {
+            thrownCount += 10;
+        }
+        return thrownCount;
+    }
+
+    private int nextId() {
+        return ++nextId;
+    }
+
+    private String expensive() {
+        expensiveCount++;
+        return "expensive";
+    }
+}
@@ -0,0 +1,173 @@
+package com.jp.androidlogger.strip.fixture;
+
+import com.jp.androidlogger.strip.LogCallStripper;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * strips StripFixture (min level INFO), then checks the result two ways:
+ * - bytecode: no trace/debug calls or guards are left; info/warn/error calls are all still there
+ * - behavior: the stripped class passes the JVM verifier, only info/warn/error reach the logger, arguments with side
+ * effects are still evaluated (including ones that throw) and guarded code is skipped
+ * - run by ./gradlew :android-logger-strip:verifyStrip (part of check)
+ */
+public class StripVerifier {
+    private static final String FIXTURE = StripFixture.class.getName();
+
+    private static final List<String> errors = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        byte[] original = readClass();
+        LogCallStripper stripper = new LogCallStripper("INFO");
+        byte[] stripped = stripper.strip(original);
+
+        Map<String, Integer> originalCalls = getLoggerCalls(original);
+        Map<String, Integer> strippedCalls = getLoggerCalls(stripped);
+        System.out.println(stripper);
+        System.out.println("class size: " + original.length + " -> " + stripped.length + " bytes");
+        System.out.println("logger calls: " + originalCalls + " -> " + strippedCalls);
+        for (String name : originalCalls.keySet()) {
+            boolean isKept = name.equals("info") || name.equals("warn") || name.equals("error");
+            int expected = isKept ? originalCalls.get(name) : 0;
+            Integer count = strippedCalls.get(name);
+            check("calls to " + name, expected, count != null ? count : 0);
+        }
+
+        run(original, false);
+        run(stripped, true);
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println("FAILED: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * unstripped: everything is logged (the recording logger has every level enabled)
+     * stripped: only INFO and up; nextId() is still called 3 times, expensive() never; the null field + bad cast still
+     * throw
+     */
+    private static void run(byte[] classBytes, boolean isStripped) throws Exception {
+        List<String> calls = new ArrayList<>();
+        Logger logger = newRecordingLogger(calls);
+        Class<?> fixtureClass = new FixtureLoader(classBytes).loadFixture();
+        Field logField = fixtureClass.getDeclaredField("log");
+        logField.setAccessible(true);
+        logField.set(null, logger);
+        Object fixture = fixtureClass.getConstructor(Logger.class).newInstance(logger);
+
+        String tag = isStripped ? "stripped " : "original ";
+        invoke(fixture, "boxing", new Class[]{int.class, long.class, double.class}, 3, 4L, 0.5);
+        check(tag + "boxing", isStripped ? Arrays.asList("info") : Arrays.asList("debug", "trace", "info"), calls);
+        invoke(fixture, "concatenation", new Class[]{String.class, int.class}, "name", 5);
+        check(tag + "concatenation", isStripped ? Arrays.asList("warn") : Arrays.asList("debug", "debug", "warn"), calls);
+        check(tag + "sideEffect result", 3, invoke(fixture, "sideEffect", new Class[0]));
+        check(tag + "sideEffect", isStripped ? Arrays.<String>asList() : Arrays.asList("debug", "debug"), calls);
+        check(tag + "guarded result", isStripped ? 0 : 2, invoke(fixture, "guarded", new Class[0]));
+        check(tag + "guarded", isStripped ? Arrays.asList("error") : Arrays.asList("isDebugEnabled", "debug", "isTraceEnabled", "error"), calls);
+        invoke(fixture, "branches", new Class[]{boolean.class, Exception.class}, true, new Exception("test"));
+        check(tag + "branches", isStripped ? Arrays.asList("error") : Arrays.asList("debug", "trace", "trace", "trace", "debug", "error"), calls);
+        check(tag + "exceptions result", 2, invoke(fixture, "exceptions", new Class[]{fixtureClass, Object.class}, null, 42));
+        check(tag + "exceptions", isStripped ? Arrays.<String>asList() : Arrays.asList("debug"), calls);
+    }
+
+    private static int invoke(Object fixture, String name, Class<?>[] types, Object... args) throws Exception {
+        Method method = fixture.getClass().getMethod(name, types);
+        return (Integer) method.invoke(fixture, args);
+    }
+
+    private static void check(String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            errors.add(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    private static void check(String what, List<String> expected, List<String> calls) {
+        check(what, (Object) new ArrayList<>(expected), new ArrayList<>(calls));
+        calls.clear();
+    }
+
+    /**
+     * @return logger that records the name of every method called; every level is enabled
+     */
+    private static Logger newRecordingLogger(final List<String> calls) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[]{Logger.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName());
+                return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+            }
+        });
+    }
+
+    /**
+     * @return number of calls to each Logger method
+     */
+    private static Map<String, Integer> getLoggerCalls(byte[] classBytes) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, 0);
+        Map<String, Integer> calls = new TreeMap<>();
+        for (MethodNode method : classNode.methods) {
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn instanceof MethodInsnNode && ((MethodInsnNode) insn).owner.equals("org/slf4j/Logger")) {
+                    String name = ((MethodInsnNode) insn).name;
+                    Integer count = calls.get(name);
+                    calls.put(name, count != null ? count + 1 : 1);
+                }
+            }
+        }
+        return calls;
+    }
+
+    private static byte[] readClass() throws IOException {
+        InputStream in = StripFixture.class.getResourceAsStream(StripFixture.class.getSimpleName() + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * defines its own copy of StripFixture from the given bytes
+     */
+    private static class FixtureLoader extends ClassLoader {
+        private final byte[] classBytes;
+
+        FixtureLoader(byte[] classBytes) {
+            super(StripVerifier.class.getClassLoader());
+            this.classBytes = classBytes;
+        }
+
+        Class<?> loadFixture() {
+            return defineClass(FIXTURE, classBytes, 0, classBytes.length);
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.jp.androidlogger.strip;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * removes slf4j log calls below a min level from compiled classes
+ * - log.trace()/debug().. calls on org.slf4j.Logger (including Lombok's @Slf4j "log") and AndroidLogger are removed
+ * - the code that loads the logger and builds the arguments is removed with the call when it's straight-line and
+ * side-effect free: constants, locals, static fields, fields of 'this', boxing (Integer.valueOf..), varargs arrays and
+ * StringBuilder concatenation of strings/primitives
+ * - anything else is still evaluated - only the log call itself is removed; that includes code that can throw (a method
+ * call, a field of another object - NullPointerException, a cast - ClassCastException), so stripping doesn't change
+ * which exceptions are thrown
+ * - isTraceEnabled()/isDebugEnabled().. guards become false, so guarded blocks are skipped
+ * - classes of the logger itself (com.jp.androidlogger) are left alone
+ * - used by the Gradle plugin (LogStripPlugin) or standalone:
+ * java -cp android-logger-strip.jar:asm.jar:asm-tree.jar com.jp.androidlogger.strip.LogCallStripper INFO build/classes
+ */
+public class LogCallStripper {
+
+    public static final List<String> LEVELS = Arrays.asList("TRACE", "DEBUG", "INFO", "WARN", "ERROR");
+
+    private static final String[] LOGGER_CLASSES = {"org/slf4j/Logger", "com/jp/androidlogger/AndroidLogger"};
+    private static final String LOGGER_PACKAGE = "com/jp/androidlogger/";
+    private static final String[] BOXED_CLASSES = {"java/lang/Boolean", "java/lang/Byte", "java/lang/Character", "java/lang/Short",
+            "java/lang/Integer", "java/lang/Long", "java/lang/Float", "java/lang/Double"};
+    private static final String STRING_BUILDER = "java/lang/StringBuilder";
+    private static final Set<String> PURE_APPENDS = new HashSet<>(Arrays.asList("(Ljava/lang/String;)", "(Z)", "(C)", "(I)", "(J)", "(F)", "(D)"));
+
+    // getCallType()
+    private static final int NOT_STRIPPED = 0;
+    private static final int LOG_CALL = 1;
+    private static final int GUARD = 2;
+
+    private final int minLevel;
+
+    private int classCount;
+    private int changedClassCount;
+    // calls removed with the code building their arguments
+    private int removedCallCount;
+    // calls removed but arguments still evaluated (may have side effects)
+    private int removedCallOnlyCount;
+    private int guardCount;
+
+    /**
+     * @param minLevel calls below this level are removed: TRACE, DEBUG, INFO, WARN or ERROR (ie: "INFO" removes trace
+     *                 and debug)
+     */
+    public LogCallStripper(String minLevel) {
+        this.minLevel = LEVELS.indexOf(minLevel.toUpperCase(Locale.US));
+        if (this.minLevel < 0) {
+            throw new IllegalArgumentException("unknown level: " + minLevel + ", expected one of " + LEVELS);
+        }
+    }
+
+    /**
+     * @return class with calls removed; the same array if there was nothing to remove
+     */
+    public byte[] strip(byte[] classBytes) {
+        classCount++;
+        if (minLevel == 0) {
+            return classBytes;
+        }
+        ClassReader reader = new ClassReader(classBytes);
+        if (reader.getClassName().startsWith(LOGGER_PACKAGE) && reader.getClassName().indexOf('/', LOGGER_PACKAGE.length()) < 0) {
+            return classBytes;
+        }
+        ClassNode classNode = new ClassNode();
+        reader.accept(classNode, 0);
+        boolean isChanged = false;
+        for (MethodNode method : classNode.methods) {
+            isChanged |= stripMethod(method);
+        }
+        if (!isChanged) {
+            return classBytes;
+        }
+        changedClassCount++;
+        // only straight-line code is removed and the stack is left as it was, so existing frames are still valid
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classNode.accept(writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * strip every .class file under inDir into outDir (other files are copied); inDir == outDir to strip in place
+     */
+    public void stripDirectory(File inDir, File outDir) throws IOException {
+        File[] files = inDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            File outFile = new File(outDir, file.getName());
+            if (file.isDirectory()) {
+                stripDirectory(file, outFile);
+                continue;
+            }
+            byte[] bytes = readFully(new FileInputStream(file));
+            byte[] stripped = file.getName().endsWith(".class") ? strip(bytes) : bytes;
+            if (stripped != bytes || !file.equals(outFile)) {
+                if (!outDir.isDirectory() && !outDir.mkdirs()) {
+                    throw new IOException("unable to create: " + outDir.getAbsolutePath());
+                }
+                OutputStream out = new FileOutputStream(outFile);
+                try {
+                    out.write(stripped);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * strip every .class entry of inJar into outJar (other entries are copied)
+     */
+    public void stripJar(File inJar, File outJar) throws IOException {
+        File parent = outJar.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("unable to create: " + parent.getAbsolutePath());
+        }
+        ZipInputStream in = new ZipInputStream(new FileInputStream(inJar));
+        try {
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(outJar));
+            try {
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    out.putNextEntry(new ZipEntry(entry.getName()));
+                    if (!entry.isDirectory()) {
+                        byte[] bytes = readAll(in);
+                        out.write(entry.getName().endsWith(".class") ? strip(bytes) : bytes);
+                    }
+                    out.closeEntry();
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public int getRemovedCallCount() {
+        return removedCallCount + removedCallOnlyCount;
+    }
+
+    /**
+     * @return removed calls whose arguments are still evaluated (they could have side effects)
+     */
+    public int getRemovedCallOnlyCount() {
+        return removedCallOnlyCount;
+    }
+
+    public int getGuardCount() {
+        return guardCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "below %s: %d classes, %d changed, %d calls removed (%d with arguments still evaluated), %d guards set to false",
+                LEVELS.get(minLevel), classCount, changedClassCount, getRemovedCallCount(), removedCallOnlyCount, guardCount);
+    }
+
+    private boolean stripMethod(MethodNode method) {
+        if (method.instructions.size() == 0) {
+            return false;
+        }
+        Set<LabelNode> jumpTargets = null;
+        boolean isChanged = false;
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; ) {
+            AbstractInsnNode next = insn.getNext();
+            if (insn instanceof MethodInsnNode) {
+                MethodInsnNode call = (MethodInsnNode) insn;
+                int type = getCallType(call);
+                if (type != NOT_STRIPPED) {
+                    if (jumpTargets == null) {
+                        jumpTargets = getJumpTargets(method);
+                    }
+                    removeCall(method, call, type == GUARD, jumpTargets);
+                    isChanged = true;
+                }
+            }
+            insn = next;
+        }
+        if (isChanged) {
+            removeEmptyTryBlocks(method);
+        }
+        return isChanged;
+    }
+
+    /**
+     * a try block that only had a removed call in it is empty now - not allowed in a class file (its handler is left as
+     * unreachable code)
+     */
+    private static void removeEmptyTryBlocks(MethodNode method) {
+        if (method.tryCatchBlocks == null) {
+            return;
+        }
+        Iterator<TryCatchBlockNode> iterator = method.tryCatchBlocks.iterator();
+        while (iterator.hasNext()) {
+            TryCatchBlockNode block = iterator.next();
+            boolean isEmpty = true;
+            for (AbstractInsnNode insn = block.start; insn != null && insn != block.end; insn = insn.getNext()) {
+                if (insn.getOpcode() >= 0) {
+                    isEmpty = false;
+                    break;
+                }
+            }
+            if (isEmpty) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return LOG_CALL for log.debug(..), GUARD for log.isDebugEnabled(..) below minLevel; NOT_STRIPPED otherwise
+     */
+    private int getCallType(MethodInsnNode call) {
+        if (call.getOpcode() != Opcodes.INVOKEINTERFACE && call.getOpcode() != Opcodes.INVOKEVIRTUAL) {
+            return NOT_STRIPPED;
+        }
+        if (!call.owner.equals(LOGGER_CLASSES[0]) && !call.owner.equals(LOGGER_CLASSES[1])) {
+            return NOT_STRIPPED;
+        }
+        String name = call.name;
+        boolean isGuard = name.startsWith("is") && name.endsWith("Enabled");
+        if (isGuard) {
+            name = name.substring(2, name.length() - "Enabled".length());
+        }
+        int level = LEVELS.indexOf(name.toUpperCase(Locale.US));
+        if (level < 0 || level >= minLevel) {
+            return NOT_STRIPPED;
+        }
+        Type returnType = Type.getReturnType(call.desc);
+        if (isGuard) {
+            return returnType == Type.BOOLEAN_TYPE ? GUARD : NOT_STRIPPED;
+        }
+        return returnType == Type.VOID_TYPE ? LOG_CALL : NOT_STRIPPED;
+    }
+
+    /**
+     * remove call along with the code loading its receiver + arguments if possible; otherwise pop them
+     * - a guard is replaced with false
+     */
+    private void removeCall(MethodNode method, MethodInsnNode call, boolean isGuard, Set<LabelNode> jumpTargets) {
+        InsnList instructions = method.instructions;
+        Type[] argumentTypes = Type.getArgumentTypes(call.desc);
+        int slots = 1;
+        for (Type argumentType : argumentTypes) {
+            slots += argumentType.getSize();
+        }
+        boolean isInstanceMethod = (method.access & Opcodes.ACC_STATIC) == 0;
+        AbstractInsnNode start = findArgumentStart(call, slots, isInstanceMethod, jumpTargets);
+        if (start != null) {
+            // labels and line numbers are kept (local variable ranges, debugging)
+            for (AbstractInsnNode insn = start; insn != call; ) {
+                AbstractInsnNode next = insn.getNext();
+                if (insn.getOpcode() >= 0) {
+                    instructions.remove(insn);
+                }
+                insn = next;
+            }
+            if (!isGuard) {
+                removedCallCount++;
+            }
+        } else {
+            for (int i = argumentTypes.length - 1; i >= 0; i--) {
+                instructions.insertBefore(call, new InsnNode(argumentTypes[i].getSize() == 2 ? Opcodes.POP2 : Opcodes.POP));
+            }
+            instructions.insertBefore(call, new InsnNode(Opcodes.POP));
+            if (!isGuard) {
+                removedCallOnlyCount++;
+            }
+        }
+        if (isGuard) {
+            instructions.insertBefore(call, new InsnNode(Opcodes.ICONST_0));
+            guardCount++;
+        }
+        instructions.remove(call);
+    }
+
+    /**
+     * walk back from call to the instruction where its receiver + arguments start being built
+     *
+     * @param slots            stack slots the call consumes
+     * @param isInstanceMethod true if local 0 is 'this'
+     * @return first instruction; null if that code isn't straight-line or might have side effects
+     */
+    private static AbstractInsnNode findArgumentStart(MethodInsnNode call, int slots, boolean isInstanceMethod, Set<LabelNode> jumpTargets) {
+        // slots still to be pushed by earlier instructions
+        int need = slots;
+        for (AbstractInsnNode insn = call.getPrevious(); insn != null; insn = insn.getPrevious()) {
+            if (insn.getOpcode() < 0) {
+                if (insn instanceof LineNumberNode || (insn instanceof LabelNode && !jumpTargets.contains(insn))) {
+                    continue;
+                }
+                // jump target or frame - code can be reached another way
+                return null;
+            }
+            int[] effect = getStackEffect(insn, isInstanceMethod);
+            // code pushing more than the call uses belongs to something else
+            if (effect == null || effect[1] > need) {
+                return null;
+            }
+            need = need - effect[1] + effect[0];
+            if (need == 0) {
+                return insn;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {slots popped, slots pushed} for side-effect free instructions (that can't throw either); null for anything
+     * else
+     */
+    private static int[] getStackEffect(AbstractInsnNode insn, boolean isInstanceMethod) {
+        int opcode = insn.getOpcode();
+        switch (opcode) {
+            case Opcodes.ACONST_NULL:
+            case Opcodes.ICONST_M1:
+            case Opcodes.ICONST_0:
+            case Opcodes.ICONST_1:
+            case Opcodes.ICONST_2:
+            case Opcodes.ICONST_3:
+            case Opcodes.ICONST_4:
+            case Opcodes.ICONST_5:
+            case Opcodes.FCONST_0:
+            case Opcodes.FCONST_1:
+            case Opcodes.FCONST_2:
+            case Opcodes.BIPUSH:
+            case Opcodes.SIPUSH:
+            case Opcodes.ILOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.ALOAD:
+                return new int[]{0, 1};
+            case Opcodes.LCONST_0:
+            case Opcodes.LCONST_1:
+            case Opcodes.DCONST_0:
+            case Opcodes.DCONST_1:
+            case Opcodes.LLOAD:
+            case Opcodes.DLOAD:
+                return new int[]{0, 2};
+            case Opcodes.LDC:
+                Object constant = ((LdcInsnNode) insn).cst;
+                return new int[]{0, constant instanceof Long || constant instanceof Double ? 2 : 1};
+            case Opcodes.GETSTATIC:
+                return new int[]{0, Type.getType(((FieldInsnNode) insn).desc).getSize()};
+            case Opcodes.GETFIELD:
+                // NullPointerException unless it's a field of 'this' (never null)
+                return isInstanceMethod && isLoadThis(insn.getPrevious()) ? new int[]{1, Type.getType(((FieldInsnNode) insn).desc).getSize()} : null;
+            case Opcodes.DUP:
+                return new int[]{1, 2};
+            case Opcodes.ANEWARRAY:
+            case Opcodes.NEWARRAY:
+                return new int[]{1, 1};
+            case Opcodes.AASTORE:
+                return new int[]{3, 0};
+            case Opcodes.NEW:
+                return STRING_BUILDER.equals(((TypeInsnNode) insn).desc) ? new int[]{0, 1} : null;
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKEVIRTUAL:
+                return getCallStackEffect((MethodInsnNode) insn);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true for 'aload 0' (javac never stores to local 0 in an instance method, so it's always 'this')
+     */
+    private static boolean isLoadThis(AbstractInsnNode insn) {
+        return insn instanceof VarInsnNode && insn.getOpcode() == Opcodes.ALOAD && ((VarInsnNode) insn).var == 0;
+    }
+
+    /**
+     * boxing (Integer.valueOf(int)..) and StringBuilder concatenation of strings/primitives are side-effect free
+     */
+    private static int[] getCallStackEffect(MethodInsnNode call) {
+        Type[] argumentTypes = Type.getArgumentTypes(call.desc);
+        if (call.getOpcode() == Opcodes.INVOKESTATIC) {
+            if (call.name.equals("valueOf") && argumentTypes.length == 1 && argumentTypes[0].getSort() != Type.OBJECT
+                    && Arrays.asList(BOXED_CLASSES).contains(call.owner) && call.desc.endsWith(")L" + call.owner + ";")) {
+                return new int[]{argumentTypes[0].getSize(), 1};
+            }
+            return null;
+        }
+        if (!STRING_BUILDER.equals(call.owner)) {
+            return null;
+        }
+        String arguments = call.desc.substring(0, call.desc.indexOf(')') + 1);
+        if (call.getOpcode() == Opcodes.INVOKESPECIAL) {
+            if (call.name.equals("<init>") && (arguments.equals("()") || arguments.equals("(Ljava/lang/String;)"))) {
+                return new int[]{1 + argumentTypes.length, 0};
+            }
+        } else if (call.name.equals("append") && PURE_APPENDS.contains(arguments)) {
+            return new int[]{1 + argumentTypes[0].getSize(), 1};
+        } else if (call.name.equals("toString") && arguments.equals("()")) {
+            return new int[]{1, 1};
+        }
+        return null;
+    }
+
+    /**
+     * @return labels that code jumps to (branches, switches, exception handlers + ranges)
+     */
+    private static Set<LabelNode> getJumpTargets(MethodNode method) {
+        Set<LabelNode> targets = new HashSet<>();
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof JumpInsnNode) {
+                targets.add(((JumpInsnNode) insn).label);
+            } else if (insn instanceof TableSwitchInsnNode) {
+                targets.add(((TableSwitchInsnNode) insn).dflt);
+                targets.addAll(((TableSwitchInsnNode) insn).labels);
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                targets.add(((LookupSwitchInsnNode) insn).dflt);
+                targets.addAll(((LookupSwitchInsnNode) insn).labels);
+            }
+        }
+        if (method.tryCatchBlocks != null) {
+            for (TryCatchBlockNode block : method.tryCatchBlocks) {
+                targets.add(block.start);
+                targets.add(block.end);
+                targets.add(block.handler);
+            }
+        }
+        return targets;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * strip class files in place: LogCallStripper <min level> <classes dir or .jar>...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: LogCallStripper <TRACE|DEBUG|INFO|WARN|ERROR> <classes dir or .jar>...");
+            System.exit(1);
+        }
+        LogCallStripper stripper = new LogCallStripper(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            if (file.isDirectory()) {
+                stripper.stripDirectory(file, file);
+            } else if (file.getName().endsWith(".jar")) {
+                File tempFile = new File(file.getPath() + ".tmp");
+                stripper.stripJar(file, tempFile);
+                if (!file.delete() || !tempFile.renameTo(file)) {
+                    throw new IOException("unable to replace: " + file.getAbsolutePath());
+                }
+            } else {
+                System.err.println("skipping: " + file);
+            }
+        }
+        System.out.println(stripper);
+    }
+}
@@ -0,0 +1,40 @@
+package com.jp.androidlogger.strip;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * androidLoggerStrip { .. } block in the app's build.gradle
+ */
+public class LogStripExtension {
+    private String minLevel = "INFO";
+    private List<String> buildTypes = Collections.singletonList("release");
+
+    public String getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * calls below this level are removed: TRACE, DEBUG, INFO, WARN or ERROR
+     * - defaults to INFO (trace + debug calls are removed)
+     * - removed calls can't be turned back on at runtime: they never reach AndroidLoggerFactory.setCrashBuffer()'s
+     * buffer (which keeps lines below the debug level) and marker levels can't let them through
+     * (setMarkerLevel("PERF", Log.DEBUG) does nothing for a stripped log.debug(PERF, ..)) - set this to the lowest level
+     * either needs ("TRACE" keeps everything)
+     */
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    public List<String> getBuildTypes() {
+        return buildTypes;
+    }
+
+    /**
+     * build types to strip; other variants are left alone (ie: debug builds keep every log call)
+     * - defaults to ["release"]
+     */
+    public void setBuildTypes(List<String> buildTypes) {
+        this.buildTypes = buildTypes;
+    }
+}
@@ -0,0 +1,25 @@
+package com.jp.androidlogger.strip;
+
+import com.android.build.gradle.AppExtension;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+
+/**
+ * apply plugin: 'com.jp.androidlogger.strip' (after 'com.android.application')
+ * - removes log calls below androidLoggerStrip.minLevel from the app's classes (and its library modules) in the
+ * configured build types - see {@link LogCallStripper}
+ */
+public class LogStripPlugin implements Plugin<Project> {
+
+    @Override
+    public void apply(Project project) {
+        LogStripExtension extension = project.getExtensions().create("androidLoggerStrip", LogStripExtension.class);
+        AppExtension android = project.getExtensions().findByType(AppExtension.class);
+        if (android == null) {
+            throw new GradleException("com.jp.androidlogger.strip: apply plugin 'com.android.application' first");
+        }
+        android.registerTransform(new LogStripTransform(project, extension));
+    }
+}
@@ -0,0 +1,103 @@
+package com.jp.androidlogger.strip;
+
+import com.android.build.api.transform.DirectoryInput;
+import com.android.build.api.transform.Format;
+import com.android.build.api.transform.JarInput;
+import com.android.build.api.transform.QualifiedContent;
+import com.android.build.api.transform.Transform;
+import com.android.build.api.transform.TransformException;
+import com.android.build.api.transform.TransformInput;
+import com.android.build.api.transform.TransformInvocation;
+import com.android.build.api.transform.TransformOutputProvider;
+
+import org.gradle.api.Project;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * runs {@link LogCallStripper} over the app's + library modules' classes before they're dexed
+ * - variants whose build type isn't in androidLoggerStrip.buildTypes are copied as-is
+ * - not incremental: every class is rewritten on each build of a stripped variant
+ */
+class LogStripTransform extends Transform {
+    private final Project project;
+    private final LogStripExtension extension;
+
+    LogStripTransform(Project project, LogStripExtension extension) {
+        this.project = project;
+        this.extension = extension;
+    }
+
+    @Override
+    public String getName() {
+        return "androidLoggerStrip";
+    }
+
+    @Override
+    public Set<QualifiedContent.ContentType> getInputTypes() {
+        return Collections.<QualifiedContent.ContentType>singleton(QualifiedContent.DefaultContentType.CLASSES);
+    }
+
+    @Override
+    public Set<? super QualifiedContent.Scope> getScopes() {
+        return EnumSet.of(QualifiedContent.Scope.PROJECT, QualifiedContent.Scope.SUB_PROJECTS);
+    }
+
+    @Override
+    public Map<String, Object> getParameterInputs() {
+        // re-run when the settings change
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put("minLevel", extension.getMinLevel());
+        inputs.put("buildTypes", String.valueOf(extension.getBuildTypes()));
+        return inputs;
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return false;
+    }
+
+    @Override
+    public void transform(TransformInvocation invocation) throws TransformException, InterruptedException, IOException {
+        String variantName = invocation.getContext().getVariantName();
+        boolean isStripped = isStripped(variantName);
+        // nothing is below TRACE - classes are just copied
+        LogCallStripper stripper = new LogCallStripper(isStripped ? extension.getMinLevel() : "TRACE");
+        TransformOutputProvider outputProvider = invocation.getOutputProvider();
+        outputProvider.deleteAll();
+        for (TransformInput input : invocation.getInputs()) {
+            for (DirectoryInput directoryInput : input.getDirectoryInputs()) {
+                File outDir = outputProvider.getContentLocation(directoryInput.getName(), directoryInput.getContentTypes(), directoryInput.getScopes(),
+                        Format.DIRECTORY);
+                stripper.stripDirectory(directoryInput.getFile(), outDir);
+            }
+            for (JarInput jarInput : input.getJarInputs()) {
+                File outJar = outputProvider.getContentLocation(jarInput.getName(), jarInput.getContentTypes(), jarInput.getScopes(), Format.JAR);
+                stripper.stripJar(jarInput.getFile(), outJar);
+            }
+        }
+        if (isStripped) {
+            project.getLogger().lifecycle(getName() + " " + variantName + ": " + stripper);
+        }
+    }
+
+    /**
+     * @return true if variant (ie: "freeRelease") is one of the configured build types
+     */
+    private boolean isStripped(String variantName) {
+        String name = variantName.toLowerCase(Locale.US);
+        for (String buildType : extension.getBuildTypes()) {
+            if (name.endsWith(buildType.toLowerCase(Locale.US))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,23 +2,260 @@ package com.jp.androidlogger;
 
 import android.util.Log;
 
-import org.slf4j.helpers.FormattingTuple;
-import org.slf4j.helpers.MarkerIgnoringBase;
-import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
 
-public class AndroidLogger extends MarkerIgnoringBase {
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * slf4j {@link Logger} which sends output to logcat (and any other sinks set on {@link AndroidLoggerFactory})
+ * - markers are honored: see {@link AndroidLoggerFactory#setMarkerLevel(String, int)} and
+ * {@link AndroidLoggerFactory#addMarkerSink(String, LogSink, boolean)}
+ */
+public class AndroidLogger implements Logger, Serializable {
 
     private static final long serialVersionUID = -1227274521521287937L;
 
-    private AndroidLoggerFactory androidLoggerFactory;
+    // levelCache layout: [generation: 23 bits][sampled: 1 bit][sink level: 4 bits][capture level: 4 bits]
+    private static final int LEVEL_BITS = 4;
+    private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+    private static final int SAMPLED_BIT = 1 << (LEVEL_BITS * 2);
+    private static final int GENERATION_SHIFT = LEVEL_BITS * 2 + 1;
+    private static final int GENERATION_MASK = -1 >>> GENERATION_SHIFT;
+
+    // TAG + the factory's tag prefix it was built for; rebuilt on first use after the prefix changes
+    private transient Tag tag;
+    private transient AndroidLoggerFactory androidLoggerFactory;
+    private final String loggerName;
+
+    // resolved levels + factory level generation they were resolved for (see layout above)
+    // - sink level: min level sent to logcat/file/etc (what isDebugEnabled() etc report); capture level: min level copied
+    //   to the crash buffer without being formatted when it's below the sink level
+    // - a single int so it can never be read half updated; no need for volatile since a stale value just
+    //   fails the generation check and gets resolved again
+    private int levelCache;
+    // only resolved once a call with a marker is made
+    private MarkerLevels markerLevels;
+    // sampler per clamped level (see AndroidLoggerFactory.setSampler()); resolved with levelCache - null if not sampled
+    private LogSampler[] samplers;
+    // records per level - only looked up once metrics are enabled
+    private transient StripedCounter recordCounter;
 
     protected AndroidLogger(String name, AndroidLoggerFactory androidLoggerFactory) {
-        this.name = name;
+        this(name, name, androidLoggerFactory);
+    }
+
+    /**
+     * @param name       TAG used for logcat/file output (until the tag prefix changes); null to build it from loggerName
+     *                   the first time it's needed
+     * @param loggerName full logger name (usually the class name) - used to look up per logger levels
+     */
+    protected AndroidLogger(String name, String loggerName, AndroidLoggerFactory androidLoggerFactory) {
+        this.loggerName = loggerName;
         this.androidLoggerFactory = androidLoggerFactory;
+        if (name != null) {
+            tag = new Tag(androidLoggerFactory.getTagPrefix(), name);
+        }
+        resolveLevel(androidLoggerFactory.getLevelGeneration());
+    }
+
+    /**
+     * @return TAG used for logcat/file output
+     */
+    @Override
+    public String getName() {
+        return getTag();
+    }
+
+    /**
+     * costs a volatile read of the factory's tag prefix + compare; the tag is only built again after a prefix change
+     */
+    private String getTag() {
+        String prefix = androidLoggerFactory.getTagPrefix();
+        Tag tag = this.tag;
+        if (tag == null || tag.prefix != prefix) {
+            // (reference compare is enough - the factory only swaps in a new prefix when it's different)
+            tag = new Tag(prefix, androidLoggerFactory.getTag(loggerName, prefix));
+            this.tag = tag;
+        }
+        return tag.name;
+    }
+
+    /**
+     * return the logger from the factory instead of a detached copy when de-serialized
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        return LoggerFactory.getLogger(loggerName);
+    }
+
+    /**
+     * @return true if logLevel is at or above this logger's min level
+     * - costs a volatile read of the factory's level generation + compare; level is only resolved again after a
+     * level change
+     */
+    private boolean isLevelEnabled(int logLevel) {
+        int generation = androidLoggerFactory.getLevelGeneration();
+        int cache = levelCache;
+        if ((cache >>> GENERATION_SHIFT) != (generation & GENERATION_MASK)) {
+            cache = resolveLevel(generation);
+        }
+        return logLevel >= ((cache >>> LEVEL_BITS) & LEVEL_MASK);
+    }
+
+    /**
+     * marker filter chain - evaluated before anything is formatted:
+     * 1) a marker with a level above logLevel drops the call
+     * 2) a marker with a level at or below logLevel logs the call (even if below the logger's level)
+     * 3) otherwise the logger's level decides
+     *
+     * @param markerMask marker bits from {@link AndroidLoggerFactory#getMarkerMask(Marker)}; 0 if none
+     */
+    private boolean isLevelEnabled(int logLevel, long markerMask) {
+        if (markerMask == 0) {
+            return isLevelEnabled(logLevel);
+        }
+        MarkerLevels levels = getMarkerLevels();
+        int level = clampLevel(logLevel);
+        if (levels.isDenied(level, markerMask)) {
+            return false;
+        }
+        return levels.isAccepted(level, markerMask) || isLevelEnabled(logLevel);
+    }
+
+    /**
+     * level check for log calls: a call below the logger's level is copied to the crash buffer (if it's on) without
+     * being formatted - nothing else happens for it
+     *
+     * @param markerMask marker bits; 0 if none
+     * @return true if the call should be logged
+     */
+    private boolean isLogged(int logLevel, long markerMask, String format, Object arg) {
+        if (isLevelEnabled(logLevel, markerMask)) {
+            return true;
+        } else if (isCaptured(logLevel, markerMask)) {
+            androidLoggerFactory.capture(logLevel, getTag(), format, 1, arg, null, null);
+        }
+        return false;
+    }
+
+    private boolean isLogged(int logLevel, long markerMask, String format, Object arg1, Object arg2) {
+        if (isLevelEnabled(logLevel, markerMask)) {
+            return true;
+        } else if (isCaptured(logLevel, markerMask)) {
+            androidLoggerFactory.capture(logLevel, getTag(), format, 2, arg1, arg2, null);
+        }
+        return false;
+    }
+
+    private boolean isLogged(int logLevel, long markerMask, String format, Object[] arguments) {
+        if (isLevelEnabled(logLevel, markerMask)) {
+            return true;
+        } else if (isCaptured(logLevel, markerMask)) {
+            androidLoggerFactory.capture(logLevel, getTag(), format, arguments != null ? arguments.length : 0, null, null, arguments);
+        }
+        return false;
+    }
+
+    /**
+     * @param t throwable logged with message; null if none
+     */
+    private boolean isMessageLogged(int logLevel, long markerMask, String message, Throwable t) {
+        if (isLevelEnabled(logLevel, markerMask)) {
+            return true;
+        } else if (isCaptured(logLevel, markerMask)) {
+            androidLoggerFactory.capture(logLevel, getTag(), message, t);
+        }
+        return false;
+    }
+
+    /**
+     * called after the level check failed (levelCache is resolved)
+     *
+     * @return true if a call below the logger's level goes to the crash buffer - a marker denying it keeps it out
+     */
+    private boolean isCaptured(int logLevel, long markerMask) {
+        if (logLevel < (levelCache & LEVEL_MASK)) {
+            return false;
+        }
+        return markerMask == 0 || !getMarkerLevels().isDenied(clampLevel(logLevel), markerMask);
+    }
+
+    /**
+     * sampling + rate limit - checked after the level check, before anything is formatted
+     *
+     * @param format format string (or message) - identifies the log statement (with this logger)
+     * @return true if this call should be dropped
+     */
+    private boolean isDropped(int logLevel, String format) {
+        return isSampledOut(logLevel) || isRateLimited(logLevel, format);
+    }
+
+    /**
+     * sampling (see {@link AndroidLoggerFactory#setSampler(String, int, LogSampler)}) - just a bit test if this logger
+     * isn't sampled
+     * - uses levelCache as resolved by the level check just before this
+     *
+     * @return true if this call should be dropped
+     */
+    private boolean isSampledOut(int logLevel) {
+        if ((levelCache & SAMPLED_BIT) == 0) {
+            return false;
+        }
+        LogSampler[] samplers = this.samplers;
+        if (samplers == null) {
+            return false;
+        }
+        LogSampler sampler = samplers[clampLevel(logLevel)];
+        return sampler != null && !sampler.isSampled();
+    }
+
+    /**
+     * rate limit per log statement (see {@link AndroidLoggerFactory#setRateLimit(int, int)}) - checked before formatting
+     * - first call allowed after a run of suppressed calls logs how many were suppressed
+     *
+     * @param format format string (or message) - identifies the log statement (with this logger)
+     * @return true if this call should be dropped
+     */
+    private boolean isRateLimited(int logLevel, String format) {
+        RateLimiter rateLimiter = androidLoggerFactory.getRateLimiter();
+        if (rateLimiter == null) {
+            return false;
+        }
+        long suppressedCount = rateLimiter.acquire(androidLoggerFactory, format, loggerName, logLevel, getTag());
+        if (suppressedCount < 0) {
+            return true;
+        } else if (suppressedCount > 0) {
+            log(logLevel, RateLimiter.getSuppressedMessage(suppressedCount, format), null);
+        }
+        return false;
+    }
+
+    private MarkerLevels getMarkerLevels() {
+        int generation = androidLoggerFactory.getLevelGeneration();
+        MarkerLevels levels = markerLevels;
+        if (levels == null || levels.generation != generation) {
+            levels = androidLoggerFactory.resolveMarkerLevels(loggerName, generation);
+            markerLevels = levels;
+        }
+        return levels;
+    }
+
+    private int resolveLevel(int generation) {
+        // generation must be read before the level so a change made in between is picked up next time
+        int sinkLevel = clampLevel(androidLoggerFactory.getLevel(loggerName));
+        int captureLevel = clampLevel(androidLoggerFactory.getCaptureLevel());
+        LogSampler[] samplers = androidLoggerFactory.getSamplers(loggerName);
+        this.samplers = samplers;
+        int cache = ((generation & GENERATION_MASK) << GENERATION_SHIFT) | (samplers != null ? SAMPLED_BIT : 0) | (sinkLevel << LEVEL_BITS) | captureLevel;
+        levelCache = cache;
+        return cache;
     }
 
-    void setName(String tagName) {
-        this.name = tagName;
+    private static int clampLevel(int level) {
+        // Log levels are 2..7 - anything higher just means "off"
+        return Math.max(0, Math.min(level, LEVEL_MASK));
     }
 
     /**
@@ -28,37 +265,77 @@ public class AndroidLogger extends MarkerIgnoringBase {
      */
     @Override
     public boolean isTraceEnabled() {
-        return androidLoggerFactory.isEnabled(Log.VERBOSE);
+        return isLevelEnabled(Log.VERBOSE);
     }
 
     @Override
     public void trace(final String msg) {
-        if (!isTraceEnabled()) return;
+        if (!isMessageLogged(Log.VERBOSE, 0, msg, null) || isDropped(Log.VERBOSE, msg)) return;
         log(Log.VERBOSE, msg, null);
     }
 
     @Override
     public void trace(final String format, final Object arg) {
-        if (!isTraceEnabled()) return;
-        logVerbose(MessageFormatter.format(format, arg));
+        if (!isLogged(Log.VERBOSE, 0, format, arg) || isDropped(Log.VERBOSE, format)) return;
+        log(Log.VERBOSE, LogFormatter.obtain().format(format, arg));
     }
 
     @Override
     public void trace(final String format, final Object arg1, final Object arg2) {
-        if (!isTraceEnabled()) return;
-        logVerbose(MessageFormatter.format(format, arg1, arg2));
+        if (!isLogged(Log.VERBOSE, 0, format, arg1, arg2) || isDropped(Log.VERBOSE, format)) return;
+        log(Log.VERBOSE, LogFormatter.obtain().format(format, arg1, arg2));
     }
 
     @Override
     public void trace(final String format, final Object... arguments) {
-        if (!isTraceEnabled()) return;
-        logVerbose(MessageFormatter.arrayFormat(format, arguments));
+        if (!isLogged(Log.VERBOSE, 0, format, arguments) || isDropped(Log.VERBOSE, format)) return;
+        log(Log.VERBOSE, LogFormatter.obtain().format(format, arguments));
     }
 
     @Override
     public void trace(final String msg, final Throwable t) {
-        if (!isTraceEnabled()) return;
-        Log.v(this.name, msg, t);
+        if (!isMessageLogged(Log.VERBOSE, 0, msg, t) || isDropped(Log.VERBOSE, msg)) return;
+        log(Log.VERBOSE, msg, t);
+    }
+
+    @Override
+    public boolean isTraceEnabled(final Marker marker) {
+        return isLevelEnabled(Log.VERBOSE, androidLoggerFactory.getMarkerMask(marker));
+    }
+
+    @Override
+    public void trace(final Marker marker, final String msg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.VERBOSE, markerMask, msg, null) || isDropped(Log.VERBOSE, msg)) return;
+        log(Log.VERBOSE, marker, markerMask, msg, null);
+    }
+
+    @Override
+    public void trace(final Marker marker, final String format, final Object arg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.VERBOSE, markerMask, format, arg) || isDropped(Log.VERBOSE, format)) return;
+        log(Log.VERBOSE, marker, markerMask, LogFormatter.obtain().format(format, arg));
+    }
+
+    @Override
+    public void trace(final Marker marker, final String format, final Object arg1, final Object arg2) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.VERBOSE, markerMask, format, arg1, arg2) || isDropped(Log.VERBOSE, format)) return;
+        log(Log.VERBOSE, marker, markerMask, LogFormatter.obtain().format(format, arg1, arg2));
+    }
+
+    @Override
+    public void trace(final Marker marker, final String format, final Object... arguments) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.VERBOSE, markerMask, format, arguments) || isDropped(Log.VERBOSE, format)) return;
+        log(Log.VERBOSE, marker, markerMask, LogFormatter.obtain().format(format, arguments));
+    }
+
+    @Override
+    public void trace(final Marker marker, final String msg, final Throwable t) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.VERBOSE, markerMask, msg, t) || isDropped(Log.VERBOSE, msg)) return;
+        log(Log.VERBOSE, marker, markerMask, msg, t);
     }
 
     /**
@@ -68,210 +345,451 @@ public class AndroidLogger extends MarkerIgnoringBase {
      */
     @Override
     public boolean isDebugEnabled() {
-        return androidLoggerFactory.isEnabled(Log.DEBUG);
+        return isLevelEnabled(Log.DEBUG);
     }
 
     @Override
     public void debug(final String msg) {
-        if (!isDebugEnabled()) return;
+        if (!isMessageLogged(Log.DEBUG, 0, msg, null) || isDropped(Log.DEBUG, msg)) return;
         log(Log.DEBUG, msg, null);
     }
 
     @Override
     public void debug(final String format, final Object arg) {
-        if (!isDebugEnabled()) return;
-        logDebug(MessageFormatter.format(format, arg));
+        if (!isLogged(Log.DEBUG, 0, format, arg) || isDropped(Log.DEBUG, format)) return;
+        log(Log.DEBUG, LogFormatter.obtain().format(format, arg));
     }
 
     @Override
     public void debug(final String format, final Object arg1, final Object arg2) {
-        if (!isDebugEnabled()) return;
-        logDebug(MessageFormatter.format(format, arg1, arg2));
+        if (!isLogged(Log.DEBUG, 0, format, arg1, arg2) || isDropped(Log.DEBUG, format)) return;
+        log(Log.DEBUG, LogFormatter.obtain().format(format, arg1, arg2));
     }
 
     @Override
     public void debug(final String format, final Object... arguments) {
-        if (!isDebugEnabled()) return;
-        logDebug(MessageFormatter.arrayFormat(format, arguments));
+        if (!isLogged(Log.DEBUG, 0, format, arguments) || isDropped(Log.DEBUG, format)) return;
+        log(Log.DEBUG, LogFormatter.obtain().format(format, arguments));
     }
 
     @Override
     public void debug(final String msg, final Throwable t) {
-        if (!isDebugEnabled()) return;
-        Log.d(this.name, msg, t);
+        if (!isMessageLogged(Log.DEBUG, 0, msg, t) || isDropped(Log.DEBUG, msg)) return;
+        log(Log.DEBUG, msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled(final Marker marker) {
+        return isLevelEnabled(Log.DEBUG, androidLoggerFactory.getMarkerMask(marker));
+    }
+
+    @Override
+    public void debug(final Marker marker, final String msg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.DEBUG, markerMask, msg, null) || isDropped(Log.DEBUG, msg)) return;
+        log(Log.DEBUG, marker, markerMask, msg, null);
+    }
+
+    @Override
+    public void debug(final Marker marker, final String format, final Object arg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.DEBUG, markerMask, format, arg) || isDropped(Log.DEBUG, format)) return;
+        log(Log.DEBUG, marker, markerMask, LogFormatter.obtain().format(format, arg));
+    }
+
+    @Override
+    public void debug(final Marker marker, final String format, final Object arg1, final Object arg2) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.DEBUG, markerMask, format, arg1, arg2) || isDropped(Log.DEBUG, format)) return;
+        log(Log.DEBUG, marker, markerMask, LogFormatter.obtain().format(format, arg1, arg2));
+    }
+
+    @Override
+    public void debug(final Marker marker, final String format, final Object... arguments) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.DEBUG, markerMask, format, arguments) || isDropped(Log.DEBUG, format)) return;
+        log(Log.DEBUG, marker, markerMask, LogFormatter.obtain().format(format, arguments));
+    }
+
+    @Override
+    public void debug(final Marker marker, final String msg, final Throwable t) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.DEBUG, markerMask, msg, t) || isDropped(Log.DEBUG, msg)) return;
+        log(Log.DEBUG, marker, markerMask, msg, t);
     }
 
     @Override
     public boolean isInfoEnabled() {
-        return androidLoggerFactory.isEnabled(Log.INFO);
+        return isLevelEnabled(Log.INFO);
     }
 
     @Override
     public void info(final String msg) {
-        if (!isInfoEnabled()) return;
+        if (!isMessageLogged(Log.INFO, 0, msg, null) || isDropped(Log.INFO, msg)) return;
         log(Log.INFO, msg, null);
     }
 
     @Override
     public void info(final String format, final Object arg) {
-        if (!isInfoEnabled()) return;
-        logInfo(MessageFormatter.format(format, arg));
+        if (!isLogged(Log.INFO, 0, format, arg) || isDropped(Log.INFO, format)) return;
+        log(Log.INFO, LogFormatter.obtain().format(format, arg));
     }
 
     @Override
     public void info(final String format, final Object arg1, final Object arg2) {
-        if (!isInfoEnabled()) return;
-        logInfo(MessageFormatter.format(format, arg1, arg2));
+        if (!isLogged(Log.INFO, 0, format, arg1, arg2) || isDropped(Log.INFO, format)) return;
+        log(Log.INFO, LogFormatter.obtain().format(format, arg1, arg2));
     }
 
     @Override
     public void info(final String format, final Object... arguments) {
-        if (!isInfoEnabled()) return;
-        logInfo(MessageFormatter.arrayFormat(format, arguments));
+        if (!isLogged(Log.INFO, 0, format, arguments) || isDropped(Log.INFO, format)) return;
+        log(Log.INFO, LogFormatter.obtain().format(format, arguments));
     }
 
     @Override
     public void info(final String msg, final Throwable t) {
-        if (!isInfoEnabled()) return;
+        if (!isMessageLogged(Log.INFO, 0, msg, t) || isDropped(Log.INFO, msg)) return;
         log(Log.INFO, msg, t);
     }
 
+    @Override
+    public boolean isInfoEnabled(final Marker marker) {
+        return isLevelEnabled(Log.INFO, androidLoggerFactory.getMarkerMask(marker));
+    }
+
+    @Override
+    public void info(final Marker marker, final String msg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.INFO, markerMask, msg, null) || isDropped(Log.INFO, msg)) return;
+        log(Log.INFO, marker, markerMask, msg, null);
+    }
+
+    @Override
+    public void info(final Marker marker, final String format, final Object arg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.INFO, markerMask, format, arg) || isDropped(Log.INFO, format)) return;
+        log(Log.INFO, marker, markerMask, LogFormatter.obtain().format(format, arg));
+    }
+
+    @Override
+    public void info(final Marker marker, final String format, final Object arg1, final Object arg2) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.INFO, markerMask, format, arg1, arg2) || isDropped(Log.INFO, format)) return;
+        log(Log.INFO, marker, markerMask, LogFormatter.obtain().format(format, arg1, arg2));
+    }
+
+    @Override
+    public void info(final Marker marker, final String format, final Object... arguments) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.INFO, markerMask, format, arguments) || isDropped(Log.INFO, format)) return;
+        log(Log.INFO, marker, markerMask, LogFormatter.obtain().format(format, arguments));
+    }
+
+    @Override
+    public void info(final Marker marker, final String msg, final Throwable t) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.INFO, markerMask, msg, t) || isDropped(Log.INFO, msg)) return;
+        log(Log.INFO, marker, markerMask, msg, t);
+    }
+
     @Override
     public boolean isWarnEnabled() {
-        return androidLoggerFactory.isEnabled(Log.WARN);
+        return isLevelEnabled(Log.WARN);
     }
 
     @Override
     public void warn(final String msg) {
-        if (!isWarnEnabled()) return;
+        if (!isMessageLogged(Log.WARN, 0, msg, null) || isDropped(Log.WARN, msg)) return;
         log(Log.WARN, msg, null);
     }
 
     @Override
     public void warn(final String format, final Object arg) {
-        if (!isWarnEnabled()) return;
-        logWarning(MessageFormatter.format(format, arg));
+        if (!isLogged(Log.WARN, 0, format, arg) || isDropped(Log.WARN, format)) return;
+        log(Log.WARN, LogFormatter.obtain().format(format, arg));
     }
 
     @Override
     public void warn(final String format, final Object arg1, final Object arg2) {
-        if (!isWarnEnabled()) return;
-        logWarning(MessageFormatter.format(format, arg1, arg2));
+        if (!isLogged(Log.WARN, 0, format, arg1, arg2) || isDropped(Log.WARN, format)) return;
+        log(Log.WARN, LogFormatter.obtain().format(format, arg1, arg2));
     }
 
     @Override
     public void warn(final String format, final Object... arguments) {
-        if (!isWarnEnabled()) return;
-        logWarning(MessageFormatter.arrayFormat(format, arguments));
+        if (!isLogged(Log.WARN, 0, format, arguments) || isDropped(Log.WARN, format)) return;
+        log(Log.WARN, LogFormatter.obtain().format(format, arguments));
     }
 
     @Override
     public void warn(final String msg, final Throwable t) {
-        if (!isWarnEnabled()) return;
-        Log.w(this.name, msg, t);
+        if (!isMessageLogged(Log.WARN, 0, msg, t) || isDropped(Log.WARN, msg)) return;
+        log(Log.WARN, msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled(final Marker marker) {
+        return isLevelEnabled(Log.WARN, androidLoggerFactory.getMarkerMask(marker));
+    }
+
+    @Override
+    public void warn(final Marker marker, final String msg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.WARN, markerMask, msg, null) || isDropped(Log.WARN, msg)) return;
+        log(Log.WARN, marker, markerMask, msg, null);
+    }
+
+    @Override
+    public void warn(final Marker marker, final String format, final Object arg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.WARN, markerMask, format, arg) || isDropped(Log.WARN, format)) return;
+        log(Log.WARN, marker, markerMask, LogFormatter.obtain().format(format, arg));
+    }
+
+    @Override
+    public void warn(final Marker marker, final String format, final Object arg1, final Object arg2) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.WARN, markerMask, format, arg1, arg2) || isDropped(Log.WARN, format)) return;
+        log(Log.WARN, marker, markerMask, LogFormatter.obtain().format(format, arg1, arg2));
+    }
+
+    @Override
+    public void warn(final Marker marker, final String format, final Object... arguments) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.WARN, markerMask, format, arguments) || isDropped(Log.WARN, format)) return;
+        log(Log.WARN, marker, markerMask, LogFormatter.obtain().format(format, arguments));
+    }
+
+    @Override
+    public void warn(final Marker marker, final String msg, final Throwable t) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.WARN, markerMask, msg, t) || isDropped(Log.WARN, msg)) return;
+        log(Log.WARN, marker, markerMask, msg, t);
     }
 
     @Override
     public boolean isErrorEnabled() {
-        return androidLoggerFactory.isEnabled(Log.ERROR);
+        return isLevelEnabled(Log.ERROR);
     }
 
     @Override
     public void error(final String msg) {
-        if (!isErrorEnabled()) return;
+        if (!isMessageLogged(Log.ERROR, 0, msg, null) || isDropped(Log.ERROR, msg)) return;
         log(Log.ERROR, msg, null);
     }
 
     @Override
     public void error(final String format, final Object arg) {
-        if (!isErrorEnabled()) return;
-        logError(MessageFormatter.format(format, arg));
+        if (!isLogged(Log.ERROR, 0, format, arg) || isDropped(Log.ERROR, format)) return;
+        log(Log.ERROR, LogFormatter.obtain().format(format, arg));
     }
 
     @Override
     public void error(final String format, final Object arg1, final Object arg2) {
-        if (!isErrorEnabled()) return;
-        logError(MessageFormatter.format(format, arg1, arg2));
+        if (!isLogged(Log.ERROR, 0, format, arg1, arg2) || isDropped(Log.ERROR, format)) return;
+        log(Log.ERROR, LogFormatter.obtain().format(format, arg1, arg2));
     }
 
     @Override
     public void error(final String format, final Object... arguments) {
-        if (!isErrorEnabled()) return;
-        logError(MessageFormatter.arrayFormat(format, arguments));
+        if (!isLogged(Log.ERROR, 0, format, arguments) || isDropped(Log.ERROR, format)) return;
+        log(Log.ERROR, LogFormatter.obtain().format(format, arguments));
     }
 
     @Override
     public void error(final String msg, final Throwable t) {
-        if (!isErrorEnabled()) return;
-        Log.e(this.name, msg, t);
+        if (!isMessageLogged(Log.ERROR, 0, msg, t) || isDropped(Log.ERROR, msg)) return;
+        log(Log.ERROR, msg, t);
     }
 
-    private void logVerbose(FormattingTuple ft) {
-        log(Log.VERBOSE, ft.getMessage(), ft.getThrowable());
+    @Override
+    public boolean isErrorEnabled(final Marker marker) {
+        return isLevelEnabled(Log.ERROR, androidLoggerFactory.getMarkerMask(marker));
     }
 
-    private void logDebug(FormattingTuple ft) {
-        log(Log.DEBUG, ft.getMessage(), ft.getThrowable());
+    @Override
+    public void error(final Marker marker, final String msg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.ERROR, markerMask, msg, null) || isDropped(Log.ERROR, msg)) return;
+        log(Log.ERROR, marker, markerMask, msg, null);
     }
 
-    private void logInfo(FormattingTuple ft) {
-        log(Log.INFO, ft.getMessage(), ft.getThrowable());
+    @Override
+    public void error(final Marker marker, final String format, final Object arg) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.ERROR, markerMask, format, arg) || isDropped(Log.ERROR, format)) return;
+        log(Log.ERROR, marker, markerMask, LogFormatter.obtain().format(format, arg));
     }
 
-    private void logWarning(FormattingTuple ft) {
-        log(Log.WARN, ft.getMessage(), ft.getThrowable());
+    @Override
+    public void error(final Marker marker, final String format, final Object arg1, final Object arg2) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.ERROR, markerMask, format, arg1, arg2) || isDropped(Log.ERROR, format)) return;
+        log(Log.ERROR, marker, markerMask, LogFormatter.obtain().format(format, arg1, arg2));
     }
 
-    private void logError(FormattingTuple ft) {
-        log(Log.ERROR, ft.getMessage(), ft.getThrowable());
+    @Override
+    public void error(final Marker marker, final String format, final Object... arguments) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isLogged(Log.ERROR, markerMask, format, arguments) || isDropped(Log.ERROR, format)) return;
+        log(Log.ERROR, marker, markerMask, LogFormatter.obtain().format(format, arguments));
     }
 
-    private void log(int logLevel, String message, Throwable tr) {
-        log(logLevel, message, tr, 1);
+    @Override
+    public void error(final Marker marker, final String msg, final Throwable t) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (!isMessageLogged(Log.ERROR, markerMask, msg, t) || isDropped(Log.ERROR, msg)) return;
+        log(Log.ERROR, marker, markerMask, msg, t);
     }
 
     /**
-     * handle everything log() method:
-     * - logs to file if enabled
-     * - logs LONG output to multiple lines if enabled
+     * start a fluent log call - ie: log.atDebug().addArgument(() -> model.toString()).log("loaded: {}")
+     * - the level is checked here: if it's disabled a shared no-op builder is returned (nothing is allocated and
+     * suppliers are never called)
+     * NOTE: a marker added to the builder can drop the line but can't enable a level below the logger's level - use
+     * the slf4j Marker methods for that
+     *
+     * @param logLevel Log.LEVEL
+     */
+    public LoggingEventBuilder atLevel(int logLevel) {
+        if (!isLevelEnabled(logLevel) || isSampledOut(logLevel)) {
+            return NoOpLoggingEventBuilder.INSTANCE;
+        }
+        return new DefaultLoggingEventBuilder(this, logLevel);
+    }
+
+    public LoggingEventBuilder atTrace() {
+        return atLevel(Log.VERBOSE);
+    }
+
+    public LoggingEventBuilder atDebug() {
+        return atLevel(Log.DEBUG);
+    }
+
+    public LoggingEventBuilder atInfo() {
+        return atLevel(Log.INFO);
+    }
+
+    public LoggingEventBuilder atWarn() {
+        return atLevel(Log.WARN);
+    }
+
+    public LoggingEventBuilder atError() {
+        return atLevel(Log.ERROR);
+    }
+
+    /**
+     * called by {@link DefaultLoggingEventBuilder} - level was already checked by {@link #atLevel(int)}
+     * - suppliers (message or arguments) are only called once the marker and rate limit checks pass
+     *
+     * @param format          message with "{}" placeholders; null if messageSupplier is set
+     * @param messageSupplier whole message; null if format is set
+     * @param keyValues       key, value, key, value..; null if none
      */
-    private void log(int logLevel, String message, Throwable tr, int line) {
+    void log(int logLevel, Marker marker, String format, Supplier<String> messageSupplier, Object[] arguments, Throwable cause, Object[] keyValues) {
+        long markerMask = androidLoggerFactory.getMarkerMask(marker);
+        if (markerMask != 0 && !isLevelEnabled(logLevel, markerMask)) return;
+        // a supplied message has no format to identify the log statement - it isn't rate limited
+        if (isRateLimited(logLevel, format)) return;
+
+        // call suppliers before taking the formatter (a supplier could throw or log something itself)
+        String message = messageSupplier != null ? messageSupplier.get() : null;
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof Supplier) {
+                arguments[i] = ((Supplier<?>) arguments[i]).get();
+            }
+        }
+        if (keyValues != null) {
+            for (int i = 1; i < keyValues.length; i += 2) {
+                if (keyValues[i] instanceof Supplier) {
+                    keyValues[i] = ((Supplier<?>) keyValues[i]).get();
+                }
+            }
+        }
+
+        LogFormatter formatter = LogFormatter.obtain();
+        if (messageSupplier != null) {
+            formatter.append(message);
+        } else {
+            formatter.format(format, arguments);
+        }
+        if (cause != null) {
+            formatter.setThrowable(cause);
+        }
+        log(logLevel, marker, markerMask, formatter, keyValues);
+    }
+
+    private void log(int logLevel, String message, Throwable tr) {
+        log(logLevel, null, 0, message, tr);
+    }
+
+    private void log(int logLevel, LogFormatter formatter) {
+        log(logLevel, null, 0, formatter);
+    }
+
+    private void log(int logLevel, Marker marker, long markerMask, String message, Throwable tr) {
         if (tr != null) {
             // append throwable if set
-            message += '\n' + Log.getStackTraceString(tr);
+            log(logLevel, marker, markerMask, LogFormatter.obtain().append(message).setThrowable(tr).setCallSite(message));
+            return;
         }
+        log(logLevel, marker, markerMask, message);
+    }
 
-        String origMessage = null;
-        if (androidLoggerFactory.isLongLoggingEnabled() && message.length() > androidLoggerFactory.getMaxCharactersPerLine() && (androidLoggerFactory.getMaxWrapLines() <= 0 || line < androidLoggerFactory.getMaxWrapLines())) {
-            origMessage = message;
-            message = message.substring(0, androidLoggerFactory.getMaxCharactersPerLine());
-        }
+    private void log(int logLevel, Marker marker, long markerMask, LogFormatter formatter) {
+        log(logLevel, marker, markerMask, formatter, null);
+    }
 
-        switch (logLevel) {
-            case Log.VERBOSE:
-                Log.v(name, message);
-                break;
-            case Log.DEBUG:
-                Log.d(name, message);
-                break;
-            case Log.INFO:
-                Log.i(name, message);
-                break;
-            case Log.WARN:
-                Log.w(name, message);
-                break;
-            case Log.ERROR:
-                Log.e(name, message);
-                break;
+    private void log(int logLevel, Marker marker, long markerMask, LogFormatter formatter, Object[] keyValues) {
+        long startNanos = formatter.getStartNanos();
+        StackTraceCache.Trace stackTrace = formatter.getStackTrace();
+        String callSite = formatter.getCallSite();
+        String message = formatter.finish();
+        if (startNanos != 0) {
+            MetricsRecorder metrics = androidLoggerFactory.getMetricsRecorder();
+            if (metrics != null) {
+                metrics.onFormat(System.nanoTime() - startNanos);
+            }
         }
+        logToSinks(logLevel, marker, markerMask, callSite, message, keyValues, stackTrace);
+    }
 
-        // log to file if set
-        androidLoggerFactory.logToFile(logLevel, name, message);
+    private void log(int logLevel, Marker marker, long markerMask, String message) {
+        logToSinks(logLevel, marker, markerMask, message, message, null, null);
+    }
 
-        if (origMessage != null) {
-            // recursive call to log remaining message
-            log(logLevel, origMessage.substring(androidLoggerFactory.getMaxCharactersPerLine()), null, ++line);
+    /**
+     * hand formatted message off to the factory's sinks (logcat, file, ..) - the level check already passed
+     *
+     * @param callSite   format string (or message) identifying the log statement; null if not known
+     * @param keyValues  key, value, key, value..; null if none
+     * @param stackTrace stack trace at the end of message; null if none
+     */
+    private void logToSinks(int logLevel, Marker marker, long markerMask, String callSite, String message, Object[] keyValues,
+                            StackTraceCache.Trace stackTrace) {
+        MetricsRecorder metrics = androidLoggerFactory.getMetricsRecorder();
+        if (metrics != null) {
+            if (recordCounter == null) {
+                recordCounter = metrics.getLoggerCounter(loggerName);
+            }
+            metrics.onRecord(recordCounter, logLevel);
         }
+        CallerLocator locator = androidLoggerFactory.getCallerLocator();
+        CallerLocator.Location callerLocation = locator != null ? locator.locate(callSite, loggerName) : null;
+        androidLoggerFactory.log(logLevel, getTag(), loggerName, marker, markerMask, message, keyValues, stackTrace, callerLocation);
     }
 
+    /**
+     * immutable so a logging thread never sees a tag paired with the wrong prefix
+     */
+    private static class Tag {
+        final String prefix;
+        final String name;
+
+        Tag(String prefix, String name) {
+            this.prefix = prefix;
+            this.name = name;
+        }
+    }
 }
@@ -4,15 +4,29 @@ import android.util.Log;
 
 import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
+import org.slf4j.Marker;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * An implementation of {@link ILoggerFactory} which always returns {@link AndroidLogger} instances.
@@ -22,18 +36,85 @@ public class AndroidLoggerFactory implements ILoggerFactory {
     private static final String TAG = "AndroidLoggerFactory";
 
     private static final int TAG_MAX_LENGTH = 23;
-    private String tagPrefix;
-    private int logLevel = Log.VERBOSE;
-    private boolean isMultilineLoggingEnabled;
-    private int maxCharactersPerLine = 4000;
-    private int maxWrapLines = 0;
+    // loggers compare this to the prefix their tag was built for (see AndroidLogger.getTag())
+    private volatile String tagPrefix;
+    private volatile int logLevel = Log.VERBOSE;
+    // per logger/package overrides of logLevel; key is a logger name or package prefix ("com.foo.net")
+    private final ConcurrentHashMap<String, Integer> loggerLevelMap = new ConcurrentHashMap<>();
+    // bumped on every level change so loggers know to re-resolve their cached level
+    private final AtomicInteger levelGeneration = new AtomicInteger();
+    private static final String ROOT_LOGGER = "root";
+
+    // -- markers --
+    // every marker name used in a marker level or marker sink gets a bit; log calls carry the bits of their marker
+    private static final int MAX_MARKERS = 64;
+    private final ConcurrentHashMap<String, Long> markerBitMap = new ConcurrentHashMap<>();
+    // Marker instance -> resolved bits; direct mapped by identity, entries from an older level generation are resolved again
+    private static final int MARKER_CACHE_SIZE = 64;
+    private final AtomicReferenceArray<MarkerMask> markerMaskCache = new AtomicReferenceArray<>(MARKER_CACHE_SIZE);
+    // marker name -> (logger name or package prefix -> level)
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> markerLevelMap = new ConcurrentHashMap<>();
+
+    // -- sinks (logcat, file, ..) --
+    // copy-on-write: swapped as a whole so logging threads never see a half-updated list
+    private volatile SinkEntry[] sinkEntries = new SinkEntry[0];
+    // max time replaceSink() waits for writes in progress before closing the old sink anyway
+    private static final long SINK_REMOVE_TIMEOUT_MS = 2000;
+    // closing sinks replaced by a setting change (see replaceSinkInBackground()) - shutdown() waits for them
+    private final List<Thread> closeThreads = new ArrayList<>();
+    private final LogcatSink logcatSink = new LogcatSink();
+    // logcatSink wrapped for setAsyncLogcatEnabled(); null when logcat is written on the calling thread
+    private AsyncSink asyncLogcatSink;
+    private boolean isAsyncLogcatEnabled;
+    private Thread shutdownHook;
 
     // -- for logging to file --
-    private static final String DEFAULT_DATE_FORMAT = "MM-dd HH:mm:ss";
     private File logFile;
-    private SimpleDateFormat simpleDateFormat;
+    private volatile TimestampFormatter timestampFormatter = new TimestampFormatter(TimestampFormatter.DEFAULT);
+    private long maxFileSize = 0;
+    private boolean isRollDaily;
+    private int maxArchiveFiles = 5;
+    private boolean isCompressArchives = true;
+    private LogFileFormat fileFormat = LogFileFormat.TEXT;
+    private boolean isFileIndexEnabled;
+    private boolean isStackTraceDedupEnabled;
+    private static final int DEFAULT_STACK_TRACE_CACHE_SIZE = 32;
+    // FileSink, or an AsyncSink wrapping one when isAsyncFileLoggingEnabled
+    private LogSink fileSink;
+    private boolean isAsyncFileLoggingEnabled;
+    private int asyncQueueSize = 1024;
+    private OverflowPolicy asyncOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private final AtomicLong droppedRecordCount = new AtomicLong();
+    private MappedLogStore mappedLogStore;
+
+    // -- sampling --
+    // logger name or package prefix -> sampler
+    private final ConcurrentHashMap<String, SamplerRule> samplerMap = new ConcurrentHashMap<>();
+
+    // -- rate limiting --
+    private volatile RateLimiter rateLimiter;
+    // suppressed counts of previous rate limiters
+    private final AtomicLong suppressedRecordCount = new AtomicLong();
+
+    // -- caller location --
+    private volatile CallerLocator callerLocator;
+
+    // -- metrics --
+    private final MetricsRecorder metricsRecorder = new MetricsRecorder();
+    private volatile boolean isMetricsEnabled;
+    private ScheduledExecutorService metricsDumpExecutor;
+
+    // -- crash buffer --
+    private volatile CrashBuffer crashBuffer;
+    private CrashBuffer.CrashHandler crashHandler;
+
     private final ConcurrentHashMap<String, AndroidLogger> nameToLogMap = new ConcurrentHashMap<>();
 
+    public AndroidLoggerFactory() {
+        addSink(logcatSink);
+        LogFormatter.setStackTraceCache(new StackTraceCache(DEFAULT_STACK_TRACE_CACHE_SIZE));
+    }
+
     /**
      * set a short prefix string to the TAG field
      * NOTE: total tag length is only 23 characters so you'll want to make this VERY short
@@ -47,16 +128,13 @@ public class AndroidLoggerFactory implements ILoggerFactory {
             // no change
             return;
         }
+        // existing loggers pick up the new prefix the next time they log
         tagPrefix = prefix;
+        if (EXTRA_LOGGING) Log.v(TAG, "setTagPrefix: " + prefix);
+    }
 
-        // update name for any existing loggers
-        for (Map.Entry<String, AndroidLogger> entry : nameToLogMap.entrySet()) {
-            String name = entry.getKey();
-            AndroidLogger logger = entry.getValue();
-            String tag = getTag(name);
-            if (EXTRA_LOGGING) Log.v(TAG, "setTagPrefix: updating: " + name + " from: " + logger.getName() + " to: " + tag);
-            logger.setName(tag);
-        }
+    String getTagPrefix() {
+        return tagPrefix;
     }
 
     /**
@@ -70,9 +148,153 @@ public class AndroidLoggerFactory implements ILoggerFactory {
      */
     public void setDebugLevel(int level) {
         logLevel = level;
+        onLevelsChanged();
         if (EXTRA_LOGGING) Log.v(TAG, "setDebugLevel: " + level);
     }
 
+    /**
+     * set min debug level for a single logger or everything under a package; overrides {@link #setDebugLevel(int)}
+     * - most specific name wins; ie: "com.foo.net" applies to "com.foo.net.Client" unless "com.foo.net.Client" is also set
+     * - use the full logger name (usually the class name), not the shortened TAG
+     *
+     * @param loggerName logger name or package prefix
+     * @param level      Log.LEVEL to use
+     */
+    public void setDebugLevel(String loggerName, int level) {
+        if (loggerName == null || ROOT_LOGGER.equals(loggerName)) {
+            setDebugLevel(level);
+            return;
+        }
+        loggerLevelMap.put(loggerName, level);
+        onLevelsChanged();
+        if (EXTRA_LOGGING) Log.v(TAG, "setDebugLevel: " + loggerName + " = " + level);
+    }
+
+    /**
+     * remove level set with {@link #setDebugLevel(String, int)}
+     *
+     * @param loggerName logger name or package prefix
+     */
+    public void clearDebugLevel(String loggerName) {
+        if (loggerName != null && loggerLevelMap.remove(loggerName) != null) {
+            onLevelsChanged();
+            if (EXTRA_LOGGING) Log.v(TAG, "clearDebugLevel: " + loggerName);
+        }
+    }
+
+    /**
+     * set min level for log calls with this marker (ie: log.debug(PERF, ..)) - replaces the logger's level for those calls
+     * - higher than the logger's level: marked calls below it are dropped (ie: mute a noisy marker)
+     * - lower than the logger's level: marked calls are logged even though the logger is quieter (ie: keep PERF lines
+     * in a release build)
+     * - a marker also matches calls made with a marker that references it (Marker.add())
+     * - if a call has more than one matching marker, a marker that drops it wins
+     * - checked before the message is formatted
+     *
+     * @param markerName marker name (Marker.getName())
+     * @param level      Log.LEVEL to use; Integer.MAX_VALUE to drop all calls with this marker
+     */
+    public void setMarkerLevel(String markerName, int level) {
+        setMarkerLevel(ROOT_LOGGER, markerName, level);
+    }
+
+    /**
+     * same as {@link #setMarkerLevel(String, int)} but only for a single logger or everything under a package
+     * - most specific name wins (same as {@link #setDebugLevel(String, int)})
+     *
+     * @param loggerName logger name or package prefix; null or "root" for all loggers
+     * @param markerName marker name (Marker.getName())
+     * @param level      Log.LEVEL to use; Integer.MAX_VALUE to drop all calls with this marker
+     */
+    public void setMarkerLevel(String loggerName, String markerName, int level) {
+        if (markerName == null || getMarkerBit(markerName) == 0) {
+            return;
+        }
+        if (loggerName == null) {
+            loggerName = ROOT_LOGGER;
+        }
+        ConcurrentHashMap<String, Integer> levelMap = markerLevelMap.get(markerName);
+        if (levelMap == null) {
+            levelMap = new ConcurrentHashMap<>();
+            ConcurrentHashMap<String, Integer> existingMap = markerLevelMap.putIfAbsent(markerName, levelMap);
+            if (existingMap != null) {
+                levelMap = existingMap;
+            }
+        }
+        levelMap.put(loggerName, level);
+        onLevelsChanged();
+        if (EXTRA_LOGGING) Log.v(TAG, "setMarkerLevel: " + loggerName + ", " + markerName + " = " + level);
+    }
+
+    /**
+     * remove level set with {@link #setMarkerLevel(String, String, int)}
+     *
+     * @param loggerName logger name or package prefix; null or "root" for all loggers
+     * @param markerName marker name (Marker.getName())
+     */
+    public void clearMarkerLevel(String loggerName, String markerName) {
+        ConcurrentHashMap<String, Integer> levelMap = markerName != null ? markerLevelMap.get(markerName) : null;
+        if (levelMap != null && levelMap.remove(loggerName != null ? loggerName : ROOT_LOGGER) != null) {
+            onLevelsChanged();
+            if (EXTRA_LOGGING) Log.v(TAG, "clearMarkerLevel: " + loggerName + ", " + markerName);
+        }
+    }
+
+    /**
+     * set several levels at once from a config string (ie: from a remote config or debug menu)
+     * Example: "root=INFO, com.foo.net=WARN, com.foo.ui.MainActivity=VERBOSE"
+     * - entries are separated by commas, semicolons or newlines
+     * - levels are VERBOSE, DEBUG, INFO, WARN, ERROR (or the Log.LEVEL number)
+     * - invalid entries are skipped
+     *
+     * @param config list of name=LEVEL entries
+     */
+    public void setDebugLevels(String config) {
+        if (config == null) {
+            return;
+        }
+        for (String entry : config.split("[,;\\n]")) {
+            int index = entry.indexOf('=');
+            if (index <= 0) {
+                continue;
+            }
+            String loggerName = entry.substring(0, index).trim();
+            int level = parseLevel(entry.substring(index + 1).trim());
+            if (loggerName.isEmpty() || level < 0) {
+                Log.w(TAG, "setDebugLevels: invalid entry: " + entry);
+                continue;
+            }
+            setDebugLevel(loggerName, level);
+        }
+    }
+
+    private static int parseLevel(String level) {
+        switch (level.toUpperCase(Locale.US)) {
+            case "VERBOSE":
+            case "TRACE":
+                return Log.VERBOSE;
+            case "DEBUG":
+                return Log.DEBUG;
+            case "INFO":
+                return Log.INFO;
+            case "WARN":
+                return Log.WARN;
+            case "ERROR":
+                return Log.ERROR;
+            default:
+                try {
+                    return Integer.parseInt(level);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+        }
+    }
+
+    private void onLevelsChanged() {
+        // volatile write - publishes the new levels to every logger's next level check
+        levelGeneration.incrementAndGet();
+    }
+
     /**
      * android's Log.XX() methods will only log ~4000 characters
      * set this to true if you want to log everything
@@ -81,7 +303,7 @@ public class AndroidLoggerFactory implements ILoggerFactory {
      * @param isEnabled true to log entire output to multiple lines if necessary
      */
     public void setMultilineLoggingEnabled(boolean isEnabled) {
-        isMultilineLoggingEnabled = isEnabled;
+        logcatSink.setMultilineLoggingEnabled(isEnabled);
         if (EXTRA_LOGGING) Log.v(TAG, "setMultilineLoggingEnabled: " + isEnabled);
     }
 
@@ -94,20 +316,45 @@ public class AndroidLoggerFactory implements ILoggerFactory {
      * @param maxCharactersPerLine max characters to log per line
      */
     public void setMaxCharactersPerLine(int maxCharactersPerLine) {
-        this.maxCharactersPerLine = maxCharactersPerLine;
+        logcatSink.setMaxCharactersPerLine(maxCharactersPerLine);
         if (EXTRA_LOGGING) Log.v(TAG, "setMaxCharactersPerLine: " + maxCharactersPerLine);
     }
 
     /**
      * if {@link #setMultilineLoggingEnabled(boolean)} is true - you can also set a max number of lines to log for a single log statement
+     * - the last line ends with "... [N more characters]" if the message didn't fit (within maxCharactersPerLine)
      *
      * @param maxWrapLines - max number of lines to log for a single log statement; 0 for unlimited lines to wrap to
      */
     public void setMaxWrapLines(int maxWrapLines) {
-        this.maxWrapLines = maxWrapLines;
+        logcatSink.setMaxWrapLines(maxWrapLines);
         if (EXTRA_LOGGING) Log.v(TAG, "setMaxWrapLines: " + maxWrapLines);
     }
 
+    /**
+     * if {@link #setMultilineLoggingEnabled(boolean)} is true - prefer to split long messages at a newline instead
+     * of in the middle of a line (the newline itself isn't logged)
+     * - defaults to false
+     *
+     * @param isEnabled true to split long messages on newline boundaries when possible
+     */
+    public void setSplitOnNewlinesEnabled(boolean isEnabled) {
+        logcatSink.setSplitOnNewlinesEnabled(isEnabled);
+        if (EXTRA_LOGGING) Log.v(TAG, "setSplitOnNewlinesEnabled: " + isEnabled);
+    }
+
+    /**
+     * include MDC context (ie: MDC.put("requestId", id)) in logcat output as "[requestId=123] message"
+     * - context is always included in file output
+     * - defaults to false
+     *
+     * @param isEnabled true to prefix logcat messages with MDC context
+     */
+    public void setMdcInLogcatEnabled(boolean isEnabled) {
+        logcatSink.setMdcEnabled(isEnabled);
+        if (EXTRA_LOGGING) Log.v(TAG, "setMdcInLogcatEnabled: " + isEnabled);
+    }
+
     /**
      * log to file
      *
@@ -118,17 +365,795 @@ public class AndroidLoggerFactory implements ILoggerFactory {
         this.logFile = logFile;
         if (!append) {
             logFile.delete();
+            LogFileIndex.getIndexFile(logFile).delete();
         }
         if (EXTRA_LOGGING) Log.v(TAG, "logging to: " + logFile.getAbsolutePath() + ", append:" + append);
+        restartFileLogging();
+    }
+
+    /**
+     * timestamp format used at the start of each line in log files (and crash buffer dumps)
+     * - any SimpleDateFormat pattern, {@link TimestampFormatter#ISO_8601} or {@link TimestampFormatter#EPOCH_MILLIS}
+     * - defaults to {@link TimestampFormatter#DEFAULT} ("MM-dd HH:mm:ss")
+     *
+     * @param pattern timestamp pattern
+     */
+    public void setFileTimestampFormat(String pattern) {
+        if (pattern == null || pattern.equals(timestampFormatter.getPattern())) {
+            return;
+        }
+        try {
+            timestampFormatter = new TimestampFormatter(pattern);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "setFileTimestampFormat: invalid pattern: " + pattern, e);
+            return;
+        }
+        if (EXTRA_LOGGING) Log.v(TAG, "setFileTimestampFormat: " + pattern);
+        restartFileLogging();
+    }
+
+    /**
+     * write log files as text lines, compact binary records or JSON lines
+     * - binary files are ~30% smaller (tags are written once per file, times as deltas) and are converted back to text
+     * with {@link BinaryLogDecoder} (also runs as a command line tool on a desktop JVM)
+     * - JSON files have every field of the record (logger, thread, MDC, key-value pairs) for a backend to ingest; they
+     * aren't indexed (see {@link #setFileIndexEnabled(boolean)})
+     * - use a new file (or logToFile(file, false)) when switching formats
+     * - defaults to {@link LogFileFormat#TEXT}
+     *
+     * @param format file format
+     */
+    public void setFileFormat(LogFileFormat format) {
+        if (format == null || format == fileFormat) {
+            return;
+        }
+        fileFormat = format;
+        if (EXTRA_LOGGING) Log.v(TAG, "setFileFormat: " + format);
+        restartFileLogging();
+    }
+
+    /**
+     * keep a small index next to the log file ("app.log.idx") so {@link LogFileQuery} can jump straight to a time
+     * range, level or tag instead of reading the whole file
+     * - indexes move with the file when it's rolled over ("app.log.1.idx")
+     * - files written before indexing was enabled can be indexed with {@link LogFileIndex#rebuild(File)}
+     * - defaults to false
+     *
+     * @param isEnabled true to write an index
+     */
+    public void setFileIndexEnabled(boolean isEnabled) {
+        if (isEnabled == isFileIndexEnabled) {
+            return;
+        }
+        isFileIndexEnabled = isEnabled;
+        if (EXTRA_LOGGING) Log.v(TAG, "setFileIndexEnabled: " + isEnabled);
+        restartFileLogging();
+    }
+
+    /**
+     * write each stack trace to the log file once - repeats are written as a one line reference ("{trace 1f #12}")
+     * - the full trace is written again in each new file (after a roll over)
+     * - expand references with {@link StackTraceDecoder} (text files; also runs as a command line tool on a desktop JVM);
+     * {@link BinaryLogDecoder} expands them on its own
+     * - only for text and binary files; logcat and JSON files always get the full trace
+     * - defaults to false
+     *
+     * @param isEnabled true to write repeated stack traces as a reference
+     */
+    public void setStackTraceDedupEnabled(boolean isEnabled) {
+        if (isEnabled == isStackTraceDedupEnabled) {
+            return;
+        }
+        isStackTraceDedupEnabled = isEnabled;
+        if (EXTRA_LOGGING) Log.v(TAG, "setStackTraceDedupEnabled: " + isEnabled);
+        restartFileLogging();
+    }
+
+    /**
+     * number of distinct stack traces to keep rendered - logging the same exception again (same class, message and
+     * frames) re-uses the text instead of calling Log.getStackTraceString()
+     * - the least recently logged trace is dropped when the cache is full
+     * - also needed for {@link #setStackTraceDedupEnabled(boolean)}
+     * - defaults to {@value #DEFAULT_STACK_TRACE_CACHE_SIZE}
+     *
+     * @param size max number of traces; 0 to render every stack trace
+     */
+    public void setStackTraceCacheSize(int size) {
+        LogFormatter.setStackTraceCache(size > 0 ? new StackTraceCache(size) : null);
+        if (EXTRA_LOGGING) Log.v(TAG, "setStackTraceCacheSize: " + size);
+    }
+
+    /**
+     * roll over to a new log file once the current one reaches this size
+     * - previous file is kept as "file.1" (see {@link #setMaxArchiveFiles(int)})
+     * - defaults to 0 (no limit)
+     *
+     * @param maxFileSize max file size in bytes; 0 for no limit
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        if (EXTRA_LOGGING) Log.v(TAG, "setMaxFileSize: " + maxFileSize);
+        restartFileLogging();
+    }
+
+    /**
+     * roll over to a new log file when the day changes
+     * - defaults to false
+     *
+     * @param isRollDaily true to start a new log file every day
+     */
+    public void setRollDaily(boolean isRollDaily) {
+        this.isRollDaily = isRollDaily;
+        if (EXTRA_LOGGING) Log.v(TAG, "setRollDaily: " + isRollDaily);
+        restartFileLogging();
+    }
+
+    /**
+     * number of rolled over log files to keep ("file.1" is the newest, "file.N" the oldest)
+     * - defaults to 5
+     *
+     * @param maxArchiveFiles number of old log files to keep; 0 to keep none
+     */
+    public void setMaxArchiveFiles(int maxArchiveFiles) {
+        this.maxArchiveFiles = maxArchiveFiles;
+        if (EXTRA_LOGGING) Log.v(TAG, "setMaxArchiveFiles: " + maxArchiveFiles);
+        restartFileLogging();
+    }
+
+    /**
+     * gzip rolled over log files ("file.1.gz") - done on a background thread
+     * - defaults to true
+     *
+     * @param isCompressArchives true to compress old log files
+     */
+    public void setCompressArchives(boolean isCompressArchives) {
+        this.isCompressArchives = isCompressArchives;
+        if (EXTRA_LOGGING) Log.v(TAG, "setCompressArchives: " + isCompressArchives);
+        restartFileLogging();
+    }
+
+    /**
+     * log to a memory-mapped binary file instead of (or in addition to) {@link #logToFile(File, boolean)}
+     * - writing a line is just a memory copy - no file I/O on the calling thread
+     * - lines survive an app crash since the OS owns the mapped memory
+     * - file is a fixed size; once full the oldest lines are overwritten
+     * - use {@link #exportMappedLogFile(File, File)} to convert it to a regular text log
+     *
+     * @param file      file to log to; contents from a previous run are kept if the size hasn't changed
+     * @param sizeBytes file size in bytes; null file to stop logging to a mapped file
+     */
+    public synchronized void logToMappedFile(File file, int sizeBytes) {
+        MappedLogStore store = null;
+        if (file != null) {
+            try {
+                store = MappedLogStore.open(file, sizeBytes);
+                if (EXTRA_LOGGING) Log.v(TAG, "logToMappedFile: " + file.getAbsolutePath() + ", size:" + sizeBytes);
+            } catch (IOException e) {
+                Log.e(TAG, "logToMappedFile: unable to map: " + file.getAbsolutePath(), e);
+            }
+        }
+        replaceSinkInBackground(mappedLogStore, store);
+        mappedLogStore = store;
+    }
+
+    /**
+     * convert a file written by {@link #logToMappedFile(File, int)} to the regular text format (oldest line first)
+     *
+     * @param mappedFile mapped log file
+     * @param textFile   text file to write (overwritten)
+     * @return number of lines exported
+     * @throws IOException if mappedFile can't be read or isn't a mapped log file
+     */
+    public static int exportMappedLogFile(File mappedFile, File textFile) throws IOException {
+        return MappedLogStore.export(mappedFile, textFile);
+    }
+
+    /**
+     * keep the most recent log lines at ALL levels in memory - even ones below {@link #setDebugLevel(int)} - and
+     * write them to a file if the app crashes
+     * - useful for release builds logging at INFO: the crash report still has the VERBOSE/DEBUG lines leading up to it
+     * - memory is allocated once up front (~370 bytes per line); capturing a line is just a copy into that memory
+     * - lines below the debug level aren't formatted unless the buffer is dumped: the format string is copied and
+     * its arguments are kept (Strings, boxed primitives and Throwables as-is; any other object is rendered with
+     * toString() when it's captured)
+     * NOTE: isDebugEnabled() etc still report the debug level - code guarded by them isn't run (or captured), and
+     * neither are fluent calls (log.atDebug()..) below the debug level
+     *
+     * @param maxLines number of lines to keep; 0 to turn off
+     * @param dumpFile file to write buffered lines to on a crash (overwritten); null to only dump with {@link #dumpCrashBuffer(File)}
+     */
+    public synchronized void setCrashBuffer(int maxLines, File dumpFile) {
+        crashBuffer = maxLines > 0 ? new CrashBuffer(maxLines) : null;
+
+        if (crashHandler != null && Thread.getDefaultUncaughtExceptionHandler() == crashHandler) {
+            Thread.setDefaultUncaughtExceptionHandler(crashHandler.getPreviousHandler());
+        }
+        crashHandler = null;
+        if (crashBuffer != null && dumpFile != null) {
+            crashHandler = new CrashBuffer.CrashHandler(this, dumpFile, Thread.getDefaultUncaughtExceptionHandler());
+            Thread.setDefaultUncaughtExceptionHandler(crashHandler);
+        }
+
+        // loggers need to start capturing levels below the debug level now (or stop)
+        onLevelsChanged();
+        if (EXTRA_LOGGING) Log.v(TAG, "setCrashBuffer: maxLines:" + maxLines + ", dumpFile:" + dumpFile);
+    }
+
+    /**
+     * write lines currently in the crash buffer to a file (oldest first)
+     *
+     * @param file file to write (overwritten)
+     * @return number of lines written; 0 if {@link #setCrashBuffer(int, File)} isn't set
+     * @throws IOException if file can't be written
+     */
+    public int dumpCrashBuffer(File file) throws IOException {
+        CrashBuffer buffer = crashBuffer;
+        if (buffer == null) {
+            return 0;
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("unable to delete: " + file.getAbsolutePath());
+        }
+        return buffer.dump(file, timestampFormatter);
+    }
+
+    /**
+     * called from the crash handler - add the crash itself to the buffer, dump it and flush all sinks
+     */
+    void onCrash(Thread thread, Throwable throwable, File dumpFile) throws IOException {
+        CrashBuffer buffer = crashBuffer;
+        if (buffer != null) {
+            buffer.write(System.currentTimeMillis(), Log.ERROR, TAG, "FATAL EXCEPTION: " + thread.getName() + '\n' + Log.getStackTraceString(throwable));
+            dumpCrashBuffer(dumpFile);
+        }
+        shutdown();
+    }
+
+    /**
+     * write file output from a single background thread instead of the calling thread
+     * - log() calls only add the line to a queue; the file is kept open and written in batches
+     * - only used if {@link #logToFile(File, boolean)} is set
+     * - defaults to false
+     *
+     * @param isEnabled true to write file output on a background thread
+     */
+    public void setAsyncFileLoggingEnabled(boolean isEnabled) {
+        isAsyncFileLoggingEnabled = isEnabled;
+        if (EXTRA_LOGGING) Log.v(TAG, "setAsyncFileLoggingEnabled: " + isEnabled);
+        restartFileLogging();
+    }
+
+    /**
+     * max number of lines waiting to be written when {@link #setAsyncFileLoggingEnabled(boolean)} or
+     * {@link #setAsyncLogcatEnabled(boolean)} is true (each has its own queue)
+     * - defaults to 1024 lines
+     *
+     * @param queueSize max number of queued lines
+     */
+    public void setAsyncQueueSize(int queueSize) {
+        if (queueSize <= 0) {
+            Log.w(TAG, "setAsyncQueueSize: invalid size: " + queueSize);
+            return;
+        }
+        asyncQueueSize = queueSize;
+        if (EXTRA_LOGGING) Log.v(TAG, "setAsyncQueueSize: " + queueSize);
+        restartFileLogging();
+        restartAsyncLogcat();
+    }
+
+    /**
+     * what to do when the async queue is full (see {@link #setAsyncQueueSize(int)})
+     * - defaults to {@link OverflowPolicy#DROP_OLDEST}
+     *
+     * @param overflowPolicy policy to use
+     */
+    public void setAsyncOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null || overflowPolicy == asyncOverflowPolicy) {
+            return;
+        }
+        asyncOverflowPolicy = overflowPolicy;
+        if (EXTRA_LOGGING) Log.v(TAG, "setAsyncOverflowPolicy: " + overflowPolicy);
+        restartFileLogging();
+        restartAsyncLogcat();
+    }
+
+    /**
+     * write logcat output from a single background thread instead of the calling thread
+     * - log() calls only add the record to a queue (same size and overflow policy as async file logging); useful
+     * with {@link #setMultilineLoggingEnabled(boolean)} where one call can be many Log.x() calls
+     * - lines are written in the order they were logged; logcat's own timestamp is when the line is written
+     * - queued lines are written on {@link #shutdown()}, {@link #flush()}, a crash (see
+     * {@link #setCrashBuffer(int, File)}) and normal JVM exit
+     * - defaults to false
+     *
+     * @param isEnabled true to write logcat output on a background thread
+     */
+    public synchronized void setAsyncLogcatEnabled(boolean isEnabled) {
+        if (isEnabled == isAsyncLogcatEnabled) {
+            return;
+        }
+        isAsyncLogcatEnabled = isEnabled;
+        if (EXTRA_LOGGING) Log.v(TAG, "setAsyncLogcatEnabled: " + isEnabled);
+        restartAsyncLogcat();
+    }
+
+    private synchronized void restartAsyncLogcat() {
+        LogSink oldSink = asyncLogcatSink != null ? asyncLogcatSink : logcatSink;
+        if (!isAsyncLogcatEnabled && asyncLogcatSink == null) {
+            return;
+        } else if (!hasSink(oldSink)) {
+            // logcat was removed with removeSink(); nothing to swap
+            asyncLogcatSink = null;
+            return;
+        }
+
+        AsyncSink sink = null;
+        if (isAsyncLogcatEnabled) {
+            sink = new AsyncSink(logcatSink, asyncQueueSize, asyncOverflowPolicy, droppedRecordCount);
+            sink.start("AndroidLogger-logcat");
+            addShutdownHook();
+        }
+        // write what's queued first so lines aren't logged out of order across the swap
+        oldSink.flush();
+        replaceSinkInBackground(oldSink, sink != null ? sink : logcatSink);
+        asyncLogcatSink = sink;
+    }
+
+    private boolean hasSink(LogSink sink) {
+        for (SinkEntry entry : sinkEntries) {
+            if (entry.sink == sink) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * write queued lines when the JVM exits normally (daemon writer threads would just be stopped)
+     */
+    private synchronized void addShutdownHook() {
+        if (shutdownHook != null) {
+            return;
+        }
+        shutdownHook = new Thread("AndroidLogger-shutdown") {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        };
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down
+        }
+    }
+
+    /**
+     * @return number of lines that were not written (to file or logcat) because the async queue was full, or because
+     * writing to the file failed
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.get();
+    }
+
+    /**
+     * only log some of the calls from a chatty logger (ie: sensor callbacks, scroll handlers) - see {@link LogSampler}
+     * Example: setSampler("com.foo.sensors", Log.DEBUG, LogSampler.oneIn(100))
+     * - applies to calls at logLevel and below; calls above it are all logged
+     * - most specific name wins (like {@link #setDebugLevel(String, int)}); "root" for every logger
+     * - checked after the level check and before the message is formatted, so dropped calls cost almost nothing
+     * - defaults to no sampling
+     *
+     * @param loggerName logger name or package prefix ("com.foo.sensors")
+     * @param logLevel   highest Log.LEVEL to sample (ie: Log.DEBUG samples VERBOSE + DEBUG)
+     * @param sampler    decides which calls are kept; null to log every call again
+     */
+    public void setSampler(String loggerName, int logLevel, LogSampler sampler) {
+        if (loggerName == null) {
+            loggerName = ROOT_LOGGER;
+        }
+        if (sampler == null) {
+            samplerMap.remove(loggerName);
+        } else {
+            samplerMap.put(loggerName, new SamplerRule(logLevel, sampler));
+        }
+        if (EXTRA_LOGGING) Log.v(TAG, "setSampler: " + loggerName + ", level:" + logLevel + ", " + sampler);
+        // loggers pick up their sampler with their level
+        onLevelsChanged();
+    }
+
+    /**
+     * limit how often a single log statement can log - ie: a retry loop logging the same warning thousands of times
+     * a second
+     * - a log statement is identified by its format string (log.warn("retry failed: {}", e) - "retry failed: {}") and
+     * logger; the same format logged by 2 loggers is limited separately for each
+     * - checked before the message is formatted, so suppressed calls cost almost nothing
+     * - the next call that's allowed first logs "suppressed N messages like: retry failed: {}"
+     * - messages built at runtime (log.warn("retry failed: " + e)) are a new String every call, so they can't be told
+     * apart - they share one limit and are reported as "suppressed N messages without a rate limit of their own"
+     * - defaults to 0 (no limit)
+     *
+     * @param maxPerSecond sustained rate allowed per log statement; 0 for no limit
+     * @param burst        number of calls allowed back to back before limiting starts
+     */
+    public synchronized void setRateLimit(int maxPerSecond, int burst) {
+        RateLimiter oldRateLimiter = rateLimiter;
+        rateLimiter = maxPerSecond > 0 ? new RateLimiter(maxPerSecond, burst) : null;
+        if (oldRateLimiter != null) {
+            suppressedRecordCount.addAndGet(oldRateLimiter.getSuppressedCount());
+        }
+        if (EXTRA_LOGGING) Log.v(TAG, "setRateLimit: " + maxPerSecond + "/s, burst:" + burst);
+    }
+
+    /**
+     * @return number of log calls dropped by {@link #setRateLimit(int, int)}
+     */
+    public long getSuppressedRecordCount() {
+        RateLimiter limiter = rateLimiter;
+        return suppressedRecordCount.get() + (limiter != null ? limiter.getSuppressedCount() : 0);
+    }
+
+    /**
+     * capture the class, method and line that logged each record (tags are shortened and drop the package, so they don't
+     * say where a line came from)
+     * - written before the MDC context in text/binary files ("com.foo.Bar.run(Bar.java:12) message") and as "caller" in
+     * JSON files; also available from {@link LogRecord#getCallerLocation()}
+     * - a log statement's location is cached once a few stack walks (~5us each on a desktop JVM) found its format string
+     * on the same line; it's still checked against the stack every 64 calls. Messages built at runtime, and a format
+     * string that turned up on 2 lines of one logger ("done"), walk the stack on every call
+     * - only records that are logged pay for it (not disabled, sampled out or rate limited ones)
+     * - defaults to false
+     */
+    public void setCallerLocationEnabled(boolean isEnabled) {
+        if (isEnabled == (callerLocator != null)) {
+            return;
+        }
+        callerLocator = isEnabled ? new CallerLocator() : null;
+        if (EXTRA_LOGGING) Log.v(TAG, "setCallerLocationEnabled: " + isEnabled);
+    }
+
+    public boolean isCallerLocationEnabled() {
+        return callerLocator != null;
+    }
+
+    /**
+     * keep track of what logging costs: records per logger and level, time spent formatting messages and in each sink
+     * - counters are striped per thread so they don't slow down logging from many threads at once
+     * - file bytes/roll overs, queue sizes and dropped/suppressed counts are always available
+     * - defaults to false
+     *
+     * @param isEnabled true to count records and time formatting and sinks
+     * @see #getMetrics()
+     */
+    public void setMetricsEnabled(boolean isEnabled) {
+        isMetricsEnabled = isEnabled;
+        LogFormatter.setTimingEnabled(isEnabled);
+        if (EXTRA_LOGGING) Log.v(TAG, "setMetricsEnabled: " + isEnabled);
+    }
+
+    /**
+     * @return snapshot of logging metrics (see {@link #setMetricsEnabled(boolean)})
+     */
+    public LogMetrics getMetrics() {
+        LogSink fileSink;
+        AsyncSink logcatSink;
+        synchronized (this) {
+            fileSink = this.fileSink;
+            logcatSink = this.asyncLogcatSink;
+        }
+        return metricsRecorder.getSnapshot(fileSink instanceof AsyncSink ? ((AsyncSink) fileSink).getQueueSize() : 0, logcatSink != null ? logcatSink.getQueueSize() : 0,
+                getDroppedRecordCount(), getSuppressedRecordCount());
+    }
+
+    /**
+     * append a metrics snapshot to a file every intervalMs (ie: to line up logging cost with jank reports)
+     * - written on a background thread
+     *
+     * @param file       file to append to; null to stop
+     * @param intervalMs time between snapshots; 0 to stop
+     */
+    public synchronized void setMetricsDump(final File file, long intervalMs) {
+        if (metricsDumpExecutor != null) {
+            metricsDumpExecutor.shutdown();
+            metricsDumpExecutor = null;
+        }
+        if (file == null || intervalMs <= 0) {
+            return;
+        }
+        metricsDumpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AndroidLogger-metrics");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        metricsDumpExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dumpMetrics(file);
+                } catch (IOException e) {
+                    Log.e(TAG, "setMetricsDump: unable to write: " + file.getAbsolutePath(), e);
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        if (EXTRA_LOGGING) Log.v(TAG, "setMetricsDump: " + file + ", intervalMs:" + intervalMs);
+    }
+
+    /**
+     * append current metrics to a file (with a timestamp header line)
+     *
+     * @throws IOException if file can't be written
+     */
+    public void dumpMetrics(File file) throws IOException {
+        LogMetrics metrics = getMetrics();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+        try {
+            out.write("--- " + timestampFormatter.format(metrics.getTimeMs()) + " (" + metrics.getTimeMs() + ")\n");
+            out.write(metrics.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return metrics recorder if {@link #setMetricsEnabled(boolean)} is set; otherwise null
+     */
+    MetricsRecorder getMetricsRecorder() {
+        return isMetricsEnabled ? metricsRecorder : null;
+    }
+
+    /**
+     * the default logcat sink - remove it with {@link #removeSink(LogSink)} to stop logging to logcat
+     */
+    public LogcatSink getLogcatSink() {
+        return logcatSink;
+    }
+
+    /**
+     * send all log records to this sink (in addition to logcat, file, etc)
+     * - sink is called on the thread that logged
+     *
+     * @param sink sink to add
+     */
+    public void addSink(LogSink sink) {
+        addSink(sink, Log.VERBOSE, null);
+    }
+
+    /**
+     * send log records at or above minLevel to this sink (in addition to logcat, file, etc)
+     * - sinks can be added and removed at any time; records being logged at the time go to the old or new set of
+     * sinks but are never lost
+     * NOTE: minLevel only filters further - records below the logger's level (see {@link #setDebugLevel(int)}) are
+     * never created
+     *
+     * @param sink     sink to add
+     * @param minLevel min Log.LEVEL for this sink
+     * @param executor executor to call the sink on (ie: a single thread executor for a slow sink); null to call the
+     *                 sink on the thread that logged
+     */
+    public void addSink(LogSink sink, int minLevel, Executor executor) {
+        addSink(new SinkEntry(sink, minLevel, executor, 0, false));
+    }
+
+    /**
+     * send log records with this marker (or a marker that references it) to a dedicated sink; ie: PERF lines to their
+     * own file
+     * NOTE: marked calls still have to pass the logger's level - see {@link #setMarkerLevel(String, int)}
+     *
+     * @param markerName  marker name (Marker.getName())
+     * @param sink        sink to add
+     * @param isExclusive true to ONLY send these records to this sink (and other sinks for the same marker); false to
+     *                    send them to the regular sinks too
+     */
+    public void addMarkerSink(String markerName, LogSink sink, boolean isExclusive) {
+        addMarkerSink(markerName, sink, Log.VERBOSE, null, isExclusive);
+    }
+
+    /**
+     * same as {@link #addMarkerSink(String, LogSink, boolean)} with a min level and executor (see
+     * {@link #addSink(LogSink, int, Executor)})
+     */
+    public void addMarkerSink(String markerName, LogSink sink, int minLevel, Executor executor, boolean isExclusive) {
+        long markerBit = markerName != null ? getMarkerBit(markerName) : 0;
+        if (markerBit == 0) {
+            return;
+        }
+        addSink(new SinkEntry(sink, minLevel, executor, markerBit, isExclusive));
+    }
+
+    private synchronized void addSink(SinkEntry entry) {
+        if (entry.sink == null) {
+            return;
+        }
+        SinkEntry[] entries = sinkEntries;
+        SinkEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+        newEntries[entries.length] = entry;
+        sinkEntries = newEntries;
+        if (EXTRA_LOGGING) Log.v(TAG, "addSink: " + entry.sink.getClass().getName() + ", minLevel:" + entry.minLevel);
+    }
+
+    /**
+     * @return markers whose records only go to their own marker sinks
+     */
+    private static long getExclusiveMarkerMask(SinkEntry[] entries) {
+        long exclusiveMask = 0;
+        for (SinkEntry entry : entries) {
+            if (entry.isExclusive) {
+                exclusiveMask |= entry.markerMask;
+            }
+        }
+        return exclusiveMask;
+    }
+
+    /**
+     * stop sending log records to this sink and close it
+     *
+     * @param sink sink to remove
+     */
+    public void removeSink(LogSink sink) {
+        replaceSink(sink, null);
+    }
+
+    /**
+     * swap oldSink for newSink (same min level and executor as oldSink) in a single step
+     * - oldSink is closed after the swap, once writes already in progress (or queued to its executor) have finished;
+     * records from threads that were about to write to it go to newSink instead
+     * - waits for that on the calling thread (up to 2 seconds for a sink that's stuck), without holding up other
+     * changes to the logger
+     *
+     * @param oldSink sink to replace; if null newSink is added
+     * @param newSink sink to replace it with; if null oldSink is removed
+     */
+    public void replaceSink(LogSink oldSink, LogSink newSink) {
+        Runnable closeOldSink = swapSink(oldSink, newSink);
+        if (closeOldSink != null) {
+            closeOldSink.run();
+        }
+    }
+
+    /**
+     * {@link #replaceSink(LogSink, LogSink)} for callers holding the lock (ie: a setting that restarts file logging) -
+     * the old sink is closed on a background thread so the lock isn't held while its writes finish
+     */
+    private synchronized void replaceSinkInBackground(LogSink oldSink, LogSink newSink) {
+        Runnable closeOldSink = swapSink(oldSink, newSink);
+        if (closeOldSink == null) {
+            return;
+        }
+        for (Iterator<Thread> it = closeThreads.iterator(); it.hasNext(); ) {
+            if (!it.next().isAlive()) {
+                it.remove();
+            }
+        }
+        // not a daemon: a JVM exiting right after a settings change still waits for the old sink's queue
+        Thread thread = new Thread(closeOldSink, "AndroidLogger-close");
+        thread.start();
+        closeThreads.add(thread);
+    }
+
+    /**
+     * swap the sink list - the only part of replacing a sink done under the lock
+     *
+     * @return closes the old sink once writes in progress have finished; null if oldSink wasn't found
+     */
+    private synchronized Runnable swapSink(LogSink oldSink, LogSink newSink) {
+        SinkEntry[] entries = sinkEntries;
+        List<SinkEntry> newEntries = new ArrayList<>(entries.length + 1);
+        LogSink foundSink = null;
+        // replaced entry -> entry taking over its records (null if removed)
+        final Map<SinkEntry, SinkEntry> replacedEntries = new LinkedHashMap<>();
+        for (SinkEntry entry : entries) {
+            if (oldSink != null && (entry.sink == oldSink || (entry.sink instanceof AsyncSink && ((AsyncSink) entry.sink).getSink() == oldSink))) {
+                // (an AsyncSink matches the sink it wraps so removeSink(getLogcatSink()) works in async mode)
+                foundSink = entry.sink;
+                SinkEntry newEntry = null;
+                if (newSink != null) {
+                    newEntry = new SinkEntry(newSink, entry.minLevel, entry.executor, entry.markerMask, entry.isExclusive);
+                    newEntries.add(newEntry);
+                }
+                replacedEntries.put(entry, newEntry);
+            } else {
+                newEntries.add(entry);
+            }
+        }
+        if (foundSink == null && newSink != null) {
+            newEntries.add(new SinkEntry(newSink, Log.VERBOSE, null, 0, false));
+        }
+        sinkEntries = newEntries.toArray(new SinkEntry[newEntries.size()]);
+        if (foundSink == null) {
+            return null;
+        }
+        if (foundSink == asyncLogcatSink) {
+            asyncLogcatSink = null;
+        }
+        // threads that read the old list send their records to the replacement from here on
+        for (Map.Entry<SinkEntry, SinkEntry> replaced : replacedEntries.entrySet()) {
+            replaced.getKey().setReplacement(replaced.getValue());
+        }
+
+        final LogSink closedSink = foundSink;
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (SinkEntry entry : replacedEntries.keySet()) {
+                    if (!entry.awaitWrites(SINK_REMOVE_TIMEOUT_MS)) {
+                        Log.w(TAG, "replaceSink: " + closedSink.getClass().getName() + " still being written to after " + SINK_REMOVE_TIMEOUT_MS + "ms; closing it");
+                    }
+                }
+                closedSink.close();
+            }
+        };
+    }
+
+    /**
+     * write anything buffered by the sinks without closing them (waits for the async logcat/file queues to be written)
+     */
+    public void flush() {
+        for (SinkEntry entry : sinkEntries) {
+            try {
+                entry.sink.flush();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "flush: " + entry.sink.getClass().getName() + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * write any queued lines and close all sinks (stops the background file and logcat writers if running)
+     * - also called on normal JVM exit once async logging is enabled
+     * - call before the process goes away to make sure nothing is lost
+     */
+    public synchronized void shutdown() {
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            // don't lose the count of a storm that hasn't been reported yet
+            limiter.logPending(this);
+        }
+        for (SinkEntry entry : sinkEntries) {
+            entry.sink.close();
+        }
+        // sinks replaced by a setting change just before this
+        for (Thread thread : closeThreads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        closeThreads.clear();
+    }
+
+    private synchronized void restartFileLogging() {
+        // file sink is tied to the current file settings - swap in a new one and close the old one
+        LogSink sink = null;
+        if (logFile != null) {
+            LogFileWriter fileWriter = new LogFileWriter(logFile, maxFileSize, isRollDaily, maxArchiveFiles, isCompressArchives, timestampFormatter, fileFormat,
+                    isFileIndexEnabled, isStackTraceDedupEnabled);
+            fileWriter.setMetricsRecorder(metricsRecorder);
+            if (isAsyncFileLoggingEnabled) {
+                AsyncSink asyncSink = new AsyncSink(new FileSink(fileWriter, false, droppedRecordCount), asyncQueueSize, asyncOverflowPolicy, droppedRecordCount);
+                asyncSink.start("AndroidLogger-file");
+                addShutdownHook();
+                sink = asyncSink;
+            } else {
+                sink = new FileSink(fileWriter, true, droppedRecordCount);
+            }
+        }
+        replaceSinkInBackground(fileSink, sink);
+        fileSink = sink;
     }
 
     @Override
     public Logger getLogger(final String name) {
         AndroidLogger logger = this.nameToLogMap.get(name);
         if (logger == null) {
-            String tag = getTag(name);
-            logger = new AndroidLogger(tag, this);
-            if (EXTRA_LOGGING) Log.v(TAG, "getLogger: name:" + name + ", tag: " + tag);
+            // tag is built the first time the logger is used - many loggers never log anything
+            logger = new AndroidLogger(null, name, this);
+            if (EXTRA_LOGGING) Log.v(TAG, "getLogger: name:" + name);
 
             AndroidLogger existingLogger = this.nameToLogMap.putIfAbsent(name, logger);
             if (existingLogger != null) {
@@ -139,7 +1164,11 @@ public class AndroidLoggerFactory implements ILoggerFactory {
         return logger;
     }
 
-    private String getTag(final String name) {
+    /**
+     * @param tagPrefix prefix from {@link #setTagPrefix(String)}; null for none
+     * @return TAG for this logger name
+     */
+    String getTag(final String name, String tagPrefix) {
         if (name == null) {
             Log.w(TAG, "getTag: name is NULL!");
             return "";
@@ -150,81 +1179,275 @@ public class AndroidLoggerFactory implements ILoggerFactory {
         int indexOfLastDot = name.lastIndexOf('.');
         //dot must not be the first or last character
         if (indexOfLastDot > 0 && indexOfLastDot < name.length() - 2) {
-            String prefix = tagPrefix != null ? (tagPrefix + "_") : "";
-            tag = prefix + name.substring(indexOfLastDot + 1);
-
-            if (tag.length() > TAG_MAX_LENGTH) {
-                tag = tag.substring(0, TAG_MAX_LENGTH);
+            int start = indexOfLastDot + 1;
+            if (tagPrefix == null) {
+                tag = name.substring(start, Math.min(name.length(), start + TAG_MAX_LENGTH));
+            } else {
+                // build the (max 23 character) tag in one go instead of concatenating + cutting it down
+                StringBuilder sb = new StringBuilder(TAG_MAX_LENGTH);
+                sb.append(tagPrefix).append('_');
+                sb.append(name, start, Math.min(name.length(), start + Math.max(0, TAG_MAX_LENGTH - sb.length())));
+                if (sb.length() > TAG_MAX_LENGTH) {
+                    sb.setLength(TAG_MAX_LENGTH);
+                }
+                tag = sb.toString();
             }
         }
 
         return tag;
     }
 
+    int getLevelGeneration() {
+        return levelGeneration.get();
+    }
+
     /**
-     * @return true if app should log this logLevel
+     * @return min level for this logger: most specific override from {@link #setDebugLevel(String, int)}, or the
+     * level from {@link #setDebugLevel(int)}
      */
-    boolean isEnabled(int logLevel) {
-        return this.logLevel <= logLevel;
+    int getLevel(String loggerName) {
+        if (loggerName != null && !loggerLevelMap.isEmpty()) {
+            String name = loggerName;
+            while (true) {
+                Integer level = loggerLevelMap.get(name);
+                if (level != null) {
+                    return level;
+                }
+                int index = name.lastIndexOf('.');
+                if (index <= 0) {
+                    break;
+                }
+                name = name.substring(0, index);
+            }
+        }
+        return logLevel;
     }
 
-    int getMaxCharactersPerLine() {
-        return maxCharactersPerLine;
+    /**
+     * @return bit for this marker name (assigned on first use); 0 if all marker bits are used up
+     */
+    private synchronized long getMarkerBit(String markerName) {
+        Long bit = markerBitMap.get(markerName);
+        if (bit == null) {
+            if (markerBitMap.size() >= MAX_MARKERS) {
+                Log.w(TAG, "getMarkerBit: too many markers (max " + MAX_MARKERS + "); ignoring: " + markerName);
+                return 0;
+            }
+            bit = 1L << markerBitMap.size();
+            markerBitMap.put(markerName, bit);
+            // masks cached by getMarkerMask() don't have this bit yet
+            onLevelsChanged();
+        }
+        return bit;
     }
 
-    int getMaxWrapLines() {
-        return maxWrapLines;
+    /**
+     * @return bits of every configured marker matched by marker (itself + references); 0 if none
+     * - resolved once per Marker instance and level generation, so a marked call is an identity check + array read
+     * - references added to a marker after it's been logged with are picked up on the next level/marker change
+     */
+    long getMarkerMask(Marker marker) {
+        if (marker == null || markerBitMap.isEmpty()) {
+            return 0;
+        }
+        // read before resolving - a change made while resolving leaves an entry that's already out of date
+        int generation = levelGeneration.get();
+        int index = System.identityHashCode(marker) & (MARKER_CACHE_SIZE - 1);
+        MarkerMask cached = markerMaskCache.get(index);
+        if (cached != null && cached.marker == marker && cached.generation == generation) {
+            return cached.mask;
+        }
+        long mask = resolveMarkerMask(marker);
+        // a marker that collides with another just replaces it
+        markerMaskCache.set(index, new MarkerMask(marker, generation, mask));
+        return mask;
+    }
+
+    private long resolveMarkerMask(Marker marker) {
+        Long bit = markerBitMap.get(marker.getName());
+        long mask = bit != null ? bit : 0;
+        if (marker.hasReferences()) {
+            Iterator<Marker> iterator = marker.iterator();
+            while (iterator.hasNext()) {
+                mask |= resolveMarkerMask(iterator.next());
+            }
+        }
+        return mask;
     }
 
     /**
-     * @return true if app should split LONG log lines up so ENTIRE message is logged
+     * getMarkerMask() cache entry - immutable, replaced as a whole
      */
-    boolean isLongLoggingEnabled() {
-        return isMultilineLoggingEnabled;
+    private static class MarkerMask {
+        final Marker marker;
+        final int generation;
+        final long mask;
+
+        MarkerMask(Marker marker, int generation, long mask) {
+            this.marker = marker;
+            this.generation = generation;
+            this.mask = mask;
+        }
     }
 
-    void logToFile(int logLevel, String name, String message) {
-        // ignore if not logging to file
-        if (logFile == null) {
-            return;
+    /**
+     * resolve marker levels for a logger into per-level bitsets (see {@link MarkerLevels})
+     */
+    MarkerLevels resolveMarkerLevels(String loggerName, int generation) {
+        // index = clamped log level (0..15)
+        long[] denyMasks = new long[16];
+        long[] acceptMasks = new long[16];
+        for (Map.Entry<String, ConcurrentHashMap<String, Integer>> entry : markerLevelMap.entrySet()) {
+            Long bit = markerBitMap.get(entry.getKey());
+            Integer markerLevel = getMarkerLevel(entry.getValue(), loggerName);
+            if (bit == null || markerLevel == null) {
+                continue;
+            }
+            for (int level = 0; level < denyMasks.length; level++) {
+                if (level >= markerLevel) {
+                    acceptMasks[level] |= bit;
+                } else {
+                    denyMasks[level] |= bit;
+                }
+            }
         }
+        return new MarkerLevels(generation, denyMasks, acceptMasks);
+    }
 
-        if (simpleDateFormat == null) {
-            // TODO - SimpleDateFormat is not thread-safe
-            simpleDateFormat = new SimpleDateFormat(DEFAULT_DATE_FORMAT, Locale.US);
+    /**
+     * @return most specific level in levelMap for this logger; null if none applies
+     */
+    private static Integer getMarkerLevel(Map<String, Integer> levelMap, String loggerName) {
+        String name = loggerName;
+        while (name != null) {
+            Integer level = levelMap.get(name);
+            if (level != null) {
+                return level;
+            }
+            int index = name.lastIndexOf('.');
+            name = index > 0 ? name.substring(0, index) : null;
         }
+        return levelMap.get(ROOT_LOGGER);
+    }
 
-        char level;
-        switch (logLevel) {
-            case Log.DEBUG:
-                level = 'D';
-                break;
-            case Log.VERBOSE:
-                level = 'V';
-                break;
-            case Log.INFO:
-                level = 'I';
-                break;
-            case Log.ERROR:
-                level = 'E';
-                break;
-            default:
-                level = Character.forDigit(logLevel, 10);
-                break;
+    /**
+     * @return sampler per clamped log level (null entries aren't sampled) from the most specific
+     * {@link #setSampler(String, int, LogSampler)}; null if this logger isn't sampled
+     */
+    LogSampler[] getSamplers(String loggerName) {
+        if (samplerMap.isEmpty()) {
+            return null;
         }
+        SamplerRule rule = null;
+        String name = loggerName;
+        while (name != null && rule == null) {
+            rule = samplerMap.get(name);
+            int index = name.lastIndexOf('.');
+            name = index > 0 ? name.substring(0, index) : null;
+        }
+        if (rule == null) {
+            rule = samplerMap.get(ROOT_LOGGER);
+            if (rule == null) {
+                return null;
+            }
+        }
+        // index = clamped log level (0..15)
+        LogSampler[] samplers = new LogSampler[16];
+        for (int level = 0; level <= Math.min(rule.logLevel, samplers.length - 1); level++) {
+            samplers[level] = rule.sampler;
+        }
+        return samplers;
+    }
 
-        FileWriter logWriter;
-        try {
-            logWriter = new FileWriter(logFile, true);
-            BufferedWriter out = new BufferedWriter(logWriter);
-            out.write(simpleDateFormat.format(new Date()));
-            out.write(" " + level + " " + " " + name + " ");
-            out.write(message);
-            out.newLine();
-            out.flush();
-            out.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * @return null if rate limiting is off
+     */
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return null if caller location is off
+     */
+    CallerLocator getCallerLocator() {
+        return callerLocator;
+    }
+
+    /**
+     * @return min level captured by the crash buffer (if set)
+     */
+    int getCaptureLevel() {
+        return crashBuffer != null ? Log.VERBOSE : Integer.MAX_VALUE;
+    }
+
+    /**
+     * send record to every sink
+     */
+    void log(int logLevel, String tag, String message) {
+        log(logLevel, tag, null, 0, message);
+    }
+
+    /**
+     * send record to every sink (marked records: see {@link #addMarkerSink(String, LogSink, boolean)})
+     */
+    void log(int logLevel, String tag, Marker marker, long markerMask, String message) {
+        log(logLevel, tag, null, marker, markerMask, message, null, null, null);
+    }
+
+    /**
+     * @param loggerName     full logger name; null if not known
+     * @param keyValues      key, value, key, value.. (see {@link LoggingEventBuilder#addKeyValue(String, Object)}); null
+     *                       if none
+     * @param stackTrace     stack trace at the end of message; null if none
+     * @param callerLocation code that called the logger; null if not captured
+     */
+    void log(int logLevel, String tag, String loggerName, Marker marker, long markerMask, String message, Object[] keyValues,
+             StackTraceCache.Trace stackTrace, CallerLocator.Location callerLocation) {
+        LogRecord record = new LogRecord(System.currentTimeMillis(), logLevel, tag, message, AndroidMDCAdapter.getSnapshot(), marker, markerMask, loggerName,
+                Thread.currentThread().getName(), keyValues, stackTrace, callerLocation);
+        CrashBuffer buffer = crashBuffer;
+        if (buffer != null) {
+            buffer.write(record.timeMs, logLevel, tag, message);
+        }
+        // same set of sinks for the exclusive check and the writes, even if sinks are being changed
+        SinkEntry[] entries = sinkEntries;
+        long exclusiveMask = markerMask != 0 ? getExclusiveMarkerMask(entries) : 0;
+        MetricsRecorder metrics = getMetricsRecorder();
+        for (SinkEntry entry : entries) {
+            entry.write(record, exclusiveMask, metrics);
+        }
+    }
+
+    /**
+     * call is below the sink level - only goes to the crash buffer (without being formatted)
+     *
+     * @see CrashBuffer#writeFormat(long, int, String, String, int, Object, Object, Object[])
+     */
+    void capture(int logLevel, String tag, String format, int argumentCount, Object arg1, Object arg2, Object[] arguments) {
+        CrashBuffer buffer = crashBuffer;
+        if (buffer != null) {
+            buffer.writeFormat(System.currentTimeMillis(), logLevel, tag, format, argumentCount, arg1, arg2, arguments);
+        }
+    }
+
+    /**
+     * @param throwable logged with message; null if none
+     */
+    void capture(int logLevel, String tag, String message, Throwable throwable) {
+        CrashBuffer buffer = crashBuffer;
+        if (buffer != null) {
+            buffer.write(System.currentTimeMillis(), logLevel, tag, message, throwable);
+        }
+    }
+
+    private static class SamplerRule {
+        // highest level sampled
+        final int logLevel;
+        final LogSampler sampler;
+
+        SamplerRule(int logLevel, LogSampler sampler) {
+            this.logLevel = logLevel;
+            this.sampler = sampler;
         }
     }
 }
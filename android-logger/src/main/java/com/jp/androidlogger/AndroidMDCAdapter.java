@@ -0,0 +1,128 @@
+package com.jp.androidlogger;
+
+import org.slf4j.MDC;
+import org.slf4j.spi.MDCAdapter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link MDCAdapter} used by {@link MDC} - ie: MDC.put("requestId", id) to tag every log line on this thread
+ * - each thread holds an immutable snapshot which is replaced on every change (copy-on-write); logging just grabs
+ * the current snapshot - no copying or locking
+ * - context is included in file output and optionally in logcat (see {@link AndroidLoggerFactory#setMdcInLogcatEnabled(boolean)})
+ * - context is per thread; use {@link #wrap(Runnable)} / {@link #wrap(Executor)} to carry it over to another thread
+ * (ie: Executor or Handler.post())
+ */
+public class AndroidMDCAdapter implements MDCAdapter {
+
+    private static final AndroidMDCAdapter INSTANCE = new AndroidMDCAdapter();
+
+    private static final ThreadLocal<MdcSnapshot> threadContext = new ThreadLocal<MdcSnapshot>() {
+        @Override
+        protected MdcSnapshot initialValue() {
+            return MdcSnapshot.EMPTY;
+        }
+    };
+
+    private AndroidMDCAdapter() {
+    }
+
+    public static AndroidMDCAdapter getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void put(String key, String val) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        threadContext.set(threadContext.get().with(key, val));
+    }
+
+    @Override
+    public String get(String key) {
+        return threadContext.get().map.get(key);
+    }
+
+    @Override
+    public void remove(String key) {
+        threadContext.set(threadContext.get().without(key));
+    }
+
+    @Override
+    public void clear() {
+        threadContext.set(MdcSnapshot.EMPTY);
+    }
+
+    @Override
+    public Map<String, String> getCopyOfContextMap() {
+        MdcSnapshot snapshot = threadContext.get();
+        return snapshot.isEmpty() ? null : new HashMap<>(snapshot.map);
+    }
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void setContextMap(Map contextMap) {
+        threadContext.set(MdcSnapshot.of(contextMap));
+    }
+
+    /**
+     * @return current thread's context (never null)
+     */
+    static MdcSnapshot getSnapshot() {
+        return threadContext.get();
+    }
+
+    /**
+     * @return runnable which runs with the calling thread's current MDC context (ie: for Handler.post())
+     */
+    public static Runnable wrap(final Runnable runnable) {
+        final MdcSnapshot snapshot = threadContext.get();
+        return new Runnable() {
+            @Override
+            public void run() {
+                MdcSnapshot previous = threadContext.get();
+                threadContext.set(snapshot);
+                try {
+                    runnable.run();
+                } finally {
+                    threadContext.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return callable which runs with the calling thread's current MDC context
+     */
+    public static <T> Callable<T> wrap(final Callable<T> callable) {
+        final MdcSnapshot snapshot = threadContext.get();
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                MdcSnapshot previous = threadContext.get();
+                threadContext.set(snapshot);
+                try {
+                    return callable.call();
+                } finally {
+                    threadContext.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return executor which runs each task with the MDC context of the thread that called execute()
+     */
+    public static Executor wrap(final Executor executor) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executor.execute(wrap(command));
+            }
+        };
+    }
+}
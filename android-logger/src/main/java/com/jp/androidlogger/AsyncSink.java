@@ -0,0 +1,209 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * calls another {@link LogSink} from a single background thread
+ * - write() only adds the record to a bounded queue; the drainer thread writes them in batches
+ * - one queue + one thread: records are written in the order they were queued (so in order per calling thread)
+ * - used for logcat by {@link AndroidLoggerFactory#setAsyncLogcatEnabled(boolean)} and for the log file (wrapping a
+ * {@link FileSink}) by {@link AndroidLoggerFactory#setAsyncFileLoggingEnabled(boolean)}
+ */
+class AsyncSink implements LogSink, Runnable {
+    private static final String TAG = "AsyncSink";
+
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long POLL_TIMEOUT_MS = 500;
+    private static final long FLUSH_TIMEOUT_MS = 2000;
+
+    private final LogSink sink;
+    private final ArrayBlockingQueue<LogRecord> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedCount;
+
+    // records added to the queue / taken off it (written or dropped) - flush() waits for these to meet
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong doneCount = new AtomicLong();
+    private final Object doneLock = new Object();
+
+    private volatile boolean isRunning;
+    private Thread thread;
+
+    /**
+     * @param sink         sink to call from the background thread (closed with this one)
+     * @param droppedCount incremented for each record that's thrown away because the queue is full
+     */
+    AsyncSink(LogSink sink, int queueSize, OverflowPolicy overflowPolicy, AtomicLong droppedCount) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.overflowPolicy = overflowPolicy;
+        this.droppedCount = droppedCount;
+    }
+
+    /**
+     * @param threadName name of the drainer thread
+     */
+    void start(String threadName) {
+        isRunning = true;
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * @return sink being called from the background thread
+     */
+    LogSink getSink() {
+        return sink;
+    }
+
+    /**
+     * @return number of records waiting to be written
+     */
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * add record to queue; what happens if the queue is full depends on {@link OverflowPolicy}
+     */
+    @Override
+    public void write(LogRecord record) {
+        if (!isRunning) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(record);
+                } catch (InterruptedException e) {
+                    droppedCount.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(record)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                        onDone(1);
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(record)) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                break;
+        }
+        queuedCount.incrementAndGet();
+    }
+
+    /**
+     * wait (up to a couple of seconds) for everything queued so far to be written, then flush the sink
+     */
+    @Override
+    public void flush() {
+        if (Thread.currentThread() == thread) {
+            // sink logged something itself - can't wait for our own queue
+            return;
+        }
+        long target = queuedCount.get();
+        long endTime = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        synchronized (doneLock) {
+            while (isRunning && doneCount.get() < target) {
+                long waitMs = endTime - System.currentTimeMillis();
+                if (waitMs <= 0) {
+                    Log.w(TAG, "flush: timed out with " + (target - doneCount.get()) + " records queued");
+                    break;
+                }
+                try {
+                    doneLock.wait(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        // drainer thread flushes the sink when it catches up; this is for anything written outside of it
+        sink.flush();
+    }
+
+    /**
+     * stop drainer thread once everything already queued has been written and close the sink
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join(FLUSH_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sink.close();
+    }
+
+    @Override
+    public void run() {
+        List<LogRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (isRunning) {
+            LogRecord record;
+            try {
+                record = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // close() - write whatever is left below
+                break;
+            }
+            if (record == null) {
+                continue;
+            }
+            batch.add(record);
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            writeBatch(batch);
+
+            // only flush once the queue has caught up
+            if (queue.isEmpty()) {
+                sink.flush();
+            }
+        }
+
+        // write anything still queued
+        while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+            writeBatch(batch);
+        }
+        sink.flush();
+    }
+
+    private void writeBatch(List<LogRecord> batch) {
+        for (LogRecord record : batch) {
+            try {
+                sink.write(record);
+            } catch (RuntimeException e) {
+                // a broken sink shouldn't stop the drainer thread
+                Log.e(TAG, "write: " + sink.getClass().getName() + " failed", e);
+            }
+        }
+        onDone(batch.size());
+        batch.clear();
+    }
+
+    private void onDone(int count) {
+        doneCount.addAndGet(count);
+        synchronized (doneLock) {
+            doneLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.jp.androidlogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * reads {@link LogFileFormat#BINARY} log files (see {@link BinaryLogEncoder} for the format)
+ * - records can be filtered by time range, min level and tag; a filtered out record's message is skipped, not decoded
+ * - message/context are only decoded when asked for
+ * - stack trace references are expanded (see {@link StackTraceDecoder}) - unless the full trace was in a record that
+ * was filtered out
+ * - doesn't use any Android classes: also runs as a command line tool on a desktop JVM (see {@link #main(String[])})
+ * <p>
+ * usage:
+ * <pre>
+ * BinaryLogDecoder decoder = new BinaryLogDecoder(in);
+ * decoder.setMinLevel(Log.WARN);
+ * while (decoder.next()) {
+ *     decoder.getTimeMs(), decoder.getTag(), decoder.getMessage() ..
+ * }
+ * </pre>
+ */
+public class BinaryLogDecoder implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream in;
+    private final CountingInputStream counter;
+    private long segmentOffset;
+
+    // -- filters --
+    private long fromTimeMs = Long.MIN_VALUE;
+    private long toTimeMs = Long.MAX_VALUE;
+    private int minLevel;
+    private String filterTag;
+    // id of filterTag in the current segment; -1 until it's defined
+    private int filterTagId = -1;
+
+    // -- current segment --
+    private boolean isInSegment;
+    private final List<String> tags = new ArrayList<>();
+    private long previousTimeMs;
+
+    // -- current record --
+    private long timeMs;
+    private int logLevel;
+    private int tagId;
+    private int contextLength;
+    private String context;
+    private int messageLength;
+    private String message;
+    private byte[] stringBytes = new byte[256];
+    private final StackTraceDecoder stackTraceDecoder = new StackTraceDecoder();
+
+    public BinaryLogDecoder(InputStream in) {
+        counter = new CountingInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, BUFFER_SIZE));
+        this.in = new DataInputStream(counter);
+    }
+
+    /**
+     * @return decoder for a log file; archives ending with ".gz" are decompressed
+     */
+    public static BinaryLogDecoder open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BinaryLogDecoder(in);
+    }
+
+    /**
+     * only return records logged between fromTimeMs and toTimeMs (inclusive)
+     */
+    public void setTimeRange(long fromTimeMs, long toTimeMs) {
+        this.fromTimeMs = fromTimeMs;
+        this.toTimeMs = toTimeMs;
+    }
+
+    /**
+     * only return records at or above this Log.LEVEL
+     */
+    public void setMinLevel(int minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    /**
+     * only return records with this tag; null for all
+     */
+    public void setTag(String tag) {
+        this.filterTag = tag;
+        this.filterTagId = tag != null ? tags.indexOf(tag) : -1;
+    }
+
+    /**
+     * move to the next record that passes the filters
+     *
+     * @return false at the end of the file
+     * @throws IOException if the file can't be read or isn't a binary log file
+     */
+    public boolean next() throws IOException {
+        skipUnread();
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return false;
+            }
+            switch (type & BinaryLogEncoder.TYPE_MASK) {
+                case BinaryLogEncoder.TYPE_SEGMENT:
+                    segmentOffset = counter.count - 1;
+                    readSegmentHeader();
+                    break;
+                case BinaryLogEncoder.TYPE_TAG:
+                    checkSegment();
+                    readTag();
+                    break;
+                case BinaryLogEncoder.TYPE_LOG:
+                case BinaryLogEncoder.TYPE_LOG_CONTEXT:
+                    checkSegment();
+                    readRecordHeader(type);
+                    if (isMatch()) {
+                        return true;
+                    }
+                    skipUnread();
+                    break;
+                default:
+                    throw new IOException("not a binary log file (or corrupt): unknown record type: " + type);
+            }
+        }
+    }
+
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    /**
+     * @return Log.LEVEL
+     */
+    public int getLogLevel() {
+        return logLevel;
+    }
+
+    public String getTag() {
+        return tags.get(tagId);
+    }
+
+    /**
+     * @return MDC context ("[key=value]"); null if the record has none
+     */
+    public String getContext() throws IOException {
+        if (context == null && contextLength > 0) {
+            context = readString(contextLength);
+            contextLength = 0;
+        }
+        return context;
+    }
+
+    public String getMessage() throws IOException {
+        if (message == null) {
+            // context comes first in the stream
+            getContext();
+            message = stackTraceDecoder.decode(readString(messageLength));
+            messageLength = 0;
+        }
+        return message;
+    }
+
+    /**
+     * write every (matching) record as a text line - same format as a {@link LogFileFormat#TEXT} file
+     *
+     * @return number of lines written
+     */
+    public long writeText(Writer out, TimestampFormatter timestampFormatter) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        long count = 0;
+        while (next()) {
+            line.setLength(0);
+            LogFileWriter.appendLine(line, timestampFormatter, timeMs, logLevel, getTag(), getContext(), getMessage());
+            out.append(line);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return bytes read so far
+     */
+    long getPosition() {
+        return counter.count;
+    }
+
+    /**
+     * @return offset (from the start of the stream) of the current record's segment
+     */
+    long getSegmentOffset() {
+        return segmentOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readSegmentHeader() throws IOException {
+        byte[] magic = new byte[BinaryLogEncoder.MAGIC.length];
+        in.readFully(magic);
+        int version = in.read();
+        if (!Arrays.equals(magic, BinaryLogEncoder.MAGIC) || version != BinaryLogEncoder.VERSION) {
+            throw new IOException("not a binary log file (or unsupported version: " + version + ")");
+        }
+        previousTimeMs = in.readLong();
+        tags.clear();
+        filterTagId = -1;
+        isInSegment = true;
+    }
+
+    private void checkSegment() throws IOException {
+        if (!isInSegment) {
+            throw new IOException("not a binary log file: missing header");
+        }
+    }
+
+    private void readTag() throws IOException {
+        int id = (int) readVarint();
+        String tag = readString((int) readVarint());
+        if (id != tags.size()) {
+            throw new IOException("corrupt file: unexpected tag id: " + id);
+        }
+        tags.add(tag);
+        if (tag.equals(filterTag)) {
+            filterTagId = id;
+        }
+    }
+
+    private void readRecordHeader(int type) throws IOException {
+        logLevel = type & BinaryLogEncoder.LEVEL_MASK;
+        tagId = (int) readVarint();
+        if (tagId < 0 || tagId >= tags.size()) {
+            throw new IOException("corrupt file: unknown tag id: " + tagId);
+        }
+        long zigzag = readVarint();
+        timeMs = previousTimeMs + ((zigzag >>> 1) ^ -(zigzag & 1));
+        previousTimeMs = timeMs;
+        context = null;
+        message = null;
+        contextLength = (type & BinaryLogEncoder.TYPE_MASK) == BinaryLogEncoder.TYPE_LOG_CONTEXT ? (int) readVarint() : 0;
+        // message length follows the context - read once the context is read or skipped
+        messageLength = -1;
+    }
+
+    private boolean isMatch() {
+        return logLevel >= minLevel
+                && timeMs >= fromTimeMs && timeMs <= toTimeMs
+                && (filterTag == null || tagId == filterTagId);
+    }
+
+    /**
+     * skip whatever is left of the current record
+     */
+    private void skipUnread() throws IOException {
+        if (contextLength > 0) {
+            skipFully(contextLength);
+            contextLength = 0;
+        }
+        if (messageLength < 0) {
+            messageLength = (int) readVarint();
+        }
+        if (messageLength > 0) {
+            skipFully(messageLength);
+        }
+        messageLength = 0;
+    }
+
+    private String readString(int length) throws IOException {
+        if (length == -1) {
+            // message length
+            length = (int) readVarint();
+        }
+        if (stringBytes.length < length) {
+            stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+        }
+        in.readFully(stringBytes, 0, length);
+        return new String(stringBytes, 0, length, UTF_8);
+    }
+
+    private void skipFully(int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("corrupt file: bad varint");
+    }
+
+    /**
+     * convert binary log files to text
+     * <pre>
+     * java -cp android-logger.jar com.jp.androidlogger.BinaryLogDecoder [options] file [file..]
+     *   -from TIME      only records at/after TIME (epoch ms or yyyy-MM-dd'T'HH:mm:ss, local time)
+     *   -to TIME        only records at/before TIME
+     *   -level LEVEL    min level: V, D, I, W, E
+     *   -tag TAG        only records with this tag
+     *   -timestamp PAT  timestamp format (SimpleDateFormat pattern, "epoch"); default: MM-dd HH:mm:ss
+     * </pre>
+     * files are decoded in the order given (ie: log.2.gz log.1.gz log)
+     */
+    public static void main(String[] args) throws IOException {
+        long fromTimeMs = Long.MIN_VALUE;
+        long toTimeMs = Long.MAX_VALUE;
+        int minLevel = 0;
+        String tag = null;
+        String timestampPattern = TimestampFormatter.DEFAULT;
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("-")) {
+                    files.add(new File(arg));
+                } else if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + arg);
+                } else if ("-from".equals(arg)) {
+                    fromTimeMs = parseTime(args[++i]);
+                } else if ("-to".equals(arg)) {
+                    toTimeMs = parseTime(args[++i]);
+                } else if ("-level".equals(arg)) {
+                    minLevel = parseLevel(args[++i]);
+                } else if ("-tag".equals(arg)) {
+                    tag = args[++i];
+                } else if ("-timestamp".equals(arg)) {
+                    timestampPattern = args[++i];
+                } else {
+                    throw new IllegalArgumentException("unknown option: " + arg);
+                }
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("no files");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: BinaryLogDecoder [-from TIME] [-to TIME] [-level V|D|I|W|E] [-tag TAG] [-timestamp PATTERN] file [file..]");
+            System.exit(1);
+            return;
+        }
+
+        TimestampFormatter timestampFormatter = new TimestampFormatter(timestampPattern);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), BUFFER_SIZE);
+        try {
+            for (File file : files) {
+                BinaryLogDecoder decoder = open(file);
+                try {
+                    decoder.setTimeRange(fromTimeMs, toTimeMs);
+                    decoder.setMinLevel(minLevel);
+                    decoder.setTag(tag);
+                    decoder.writeText(out, timestampFormatter);
+                } catch (IOException e) {
+                    System.err.println(file + ": " + e.getMessage());
+                } finally {
+                    decoder.close();
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static long parseTime(String time) {
+        try {
+            return Long.parseLong(time);
+        } catch (NumberFormatException e) {
+            try {
+                return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US).parse(time).getTime();
+            } catch (ParseException e2) {
+                throw new IllegalArgumentException("invalid time: " + time);
+            }
+        }
+    }
+
+    private static int parseLevel(String level) {
+        // same values as android.util.Log (not referenced so this runs without Android classes)
+        switch (level.toUpperCase(Locale.US).charAt(0)) {
+            case 'V':
+            case 'T':
+                return 2;
+            case 'D':
+                return 3;
+            case 'I':
+                return 4;
+            case 'W':
+                return 5;
+            case 'E':
+                return 6;
+            default:
+                throw new IllegalArgumentException("invalid level: " + level);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
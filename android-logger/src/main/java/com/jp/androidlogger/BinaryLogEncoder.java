@@ -0,0 +1,149 @@
+package com.jp.androidlogger;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * encodes log records for {@link LogFileFormat#BINARY} files
+ * <p>
+ * a file is a list of segments; a new segment is started every time the file is opened (new file, append, roll over):
+ * <pre>
+ * SEGMENT  0x30 'A' 'L' 'B' version, base time (8 bytes, big endian ms)
+ * TAG      0x20 varint(tag id) varint(length) utf8 tag                  - written before the first record using a tag
+ * LOG      0x1L varint(tag id) varint(time delta) varint(length) utf8 message
+ * LOG+MDC  0x4L varint(tag id) varint(time delta) varint(length) utf8 context varint(length) utf8 message
+ * </pre>
+ * - L (low nibble) is the Log.LEVEL
+ * - time delta is ms since the previous record in the segment (base time for the first), zigzag encoded since the
+ * clock can go backwards
+ * - tag ids start at 0 in each segment
+ */
+class BinaryLogEncoder {
+    static final int TYPE_MASK = 0xF0;
+    static final int LEVEL_MASK = 0x0F;
+    static final int TYPE_LOG = 0x10;
+    static final int TYPE_TAG = 0x20;
+    static final int TYPE_SEGMENT = 0x30;
+    static final int TYPE_LOG_CONTEXT = 0x40;
+    static final byte[] MAGIC = {'A', 'L', 'B'};
+    static final int VERSION = 1;
+
+    // tag -> id; reset every segment
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private long previousTimeMs;
+    private ByteBuffer buffer = ByteBuffer.allocate(512);
+
+    /**
+     * reset tag dictionary and time base
+     *
+     * @return segment header; only valid until the next call
+     */
+    ByteBuffer startSegment(long timeMs) {
+        tagIds.clear();
+        previousTimeMs = timeMs;
+        buffer.clear();
+        buffer.put((byte) TYPE_SEGMENT).put(MAGIC).put((byte) VERSION).putLong(timeMs);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param context MDC context; null or empty for none
+     * @return encoded record (with a TAG record first if this tag is new); only valid until the next call
+     */
+    ByteBuffer encode(long timeMs, int logLevel, String tag, String context, String message) {
+        buffer.clear();
+        if (tag == null) {
+            tag = "";
+        }
+        Integer tagId = tagIds.get(tag);
+        if (tagId == null) {
+            tagId = tagIds.size();
+            tagIds.put(tag, tagId);
+            ensureCapacity(1 + 5);
+            buffer.put((byte) TYPE_TAG);
+            putVarint(tagId);
+            putString(tag);
+        }
+
+        boolean hasContext = context != null && !context.isEmpty();
+        ensureCapacity(1 + 5 + 10);
+        buffer.put((byte) ((hasContext ? TYPE_LOG_CONTEXT : TYPE_LOG) | (logLevel & LEVEL_MASK)));
+        putVarint(tagId);
+        long delta = timeMs - previousTimeMs;
+        putVarint((delta << 1) ^ (delta >> 63));
+        previousTimeMs = timeMs;
+        if (hasContext) {
+            putString(context);
+        }
+        putString(message != null ? message : "null");
+        buffer.flip();
+        return buffer;
+    }
+
+    private void putString(String s) {
+        int length = utf8Length(s);
+        ensureCapacity(5 + length);
+        putVarint(length);
+        // hand rolled UTF-8: no CharsetEncoder state or intermediate byte[]
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    // 2 chars -> 4 bytes
+                    length += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.jp.androidlogger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * finds the class, method and line that called the logger - see {@link AndroidLoggerFactory#setCallerLocationEnabled(boolean)}
+ * - Java 7 / Android have no API to walk just a few frames, so a lookup is new Throwable().getStackTrace() (~5us on a
+ * desktop JVM, more on a device)
+ * - a call site is a format string instance + logger (like {@link RateLimiter}) - but that doesn't always mean one log
+ * statement: "done" or "{}" can be logged from many lines of a class. So a call site's location is only cached once
+ * VERIFY_COUNT lookups in a row found it on the same line; after that the stack is still walked every CHECK_INTERVAL
+ * calls to check it
+ * - a call site found on a 2nd line is shared: it's looked up on every call from then on
+ * - messages built at runtime (not a literal) are a new instance every call - they're looked up every time
+ * - NOTE: a shared literal that's only seen on one line while it's verified (ie: a rare error path) is reported with
+ * that line's location until a check walks the stack on one of its own calls
+ * - table is fixed size and direct mapped; a slot is only taken from a call site that hasn't logged again since the
+ * last miss on it (so a built message can't keep pushing out a real call site)
+ */
+class CallerLocator {
+    private static final int TABLE_SIZE = 1024;
+    private static final String LOGGER_PACKAGE = "com.jp.androidlogger.";
+    // lookups that have to agree before a location is cached
+    private static final int VERIFY_COUNT = 4;
+    // a cached location is checked against the stack once per CHECK_INTERVAL calls (power of 2)
+    private static final int CHECK_INTERVAL = 64;
+
+    private final AtomicReferenceArray<CallSite> callSites = new AtomicReferenceArray<>(TABLE_SIZE);
+
+    /**
+     * @param format     format string (or message) - identifies the log statement; null if there isn't one (ie: supplied
+     *                   message)
+     * @param loggerName logger's name (same instance for every call)
+     * @return location of the code that called the logger; null if it couldn't be found
+     */
+    Location locate(String format, String loggerName) {
+        if (format == null) {
+            return lookup();
+        }
+        int index = getIndex(format, loggerName);
+        CallSite site = callSites.get(index);
+        if (site != null && site.format == format && site.loggerName == loggerName) {
+            if (!site.isUsed) {
+                site.isUsed = true;
+            }
+            return site.locate();
+        }
+
+        Location location = lookup();
+        if (location != null) {
+            if (site == null || !site.isUsed) {
+                callSites.set(index, new CallSite(format, loggerName, location));
+            } else {
+                // second chance: the slot goes to the next miss unless its call site logs again before then
+                site.isUsed = false;
+            }
+        }
+        return location;
+    }
+
+    private static int getIndex(String format, String loggerName) {
+        return (System.identityHashCode(format) * 31 + System.identityHashCode(loggerName)) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * @return first frame outside of the logger (AndroidLogger, DefaultLoggingEventBuilder..)
+     */
+    private static Location lookup() {
+        StackTraceElement[] frames = new Throwable().getStackTrace();
+        for (StackTraceElement frame : frames) {
+            if (!isLoggerClass(frame.getClassName())) {
+                return new Location(frame);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true for classes in com.jp.androidlogger (not sub-packages - ie: the sample app) and slf4j
+     */
+    private static boolean isLoggerClass(String className) {
+        if (className.startsWith(LOGGER_PACKAGE)) {
+            return className.indexOf('.', LOGGER_PACKAGE.length()) < 0;
+        }
+        return className.startsWith("org.slf4j.");
+    }
+
+    /**
+     * resolved caller + its text version (rendered once per call site)
+     */
+    static class Location {
+        final StackTraceElement element;
+        // "com.foo.MainActivity.onResume(MainActivity.java:42)"
+        final String text;
+
+        Location(StackTraceElement element) {
+            this.element = element;
+            this.text = element.toString();
+        }
+    }
+
+    private static class CallSite {
+        final String format;
+        final String loggerName;
+        // where the first lookup found it
+        final Location location;
+        // counts are hints (benign races) - at worst a lookup more or less before the location is trusted or checked
+        int matchCount = 1;
+        int callCount;
+        // found on more than one line - never trusted again
+        volatile boolean isShared;
+        // set on each hit, cleared by a miss on the same slot - benign race, it's only a hint
+        boolean isUsed;
+
+        CallSite(String format, String loggerName, Location location) {
+            this.format = format;
+            this.loggerName = loggerName;
+            this.location = location;
+        }
+
+        /**
+         * @return cached location once it's verified (and this isn't a check); otherwise a lookup
+         */
+        Location locate() {
+            if (isShared) {
+                return lookup();
+            } else if (matchCount >= VERIFY_COUNT && (++callCount & (CHECK_INTERVAL - 1)) != 0) {
+                return location;
+            }
+            Location found = lookup();
+            if (found == null || !found.element.equals(location.element)) {
+                // logged from more than one line
+                isShared = true;
+                return found;
+            }
+            if (matchCount < VERIFY_COUNT) {
+                matchCount++;
+            }
+            return location;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * fixed-size in-memory buffer of the most recent log lines at ALL levels (even ones below the logcat/file level)
+ * - everything is allocated up front: primitive arrays for time/level, a single char[] ring for message text and an
+ * Object[] ring for arguments
+ * - writing a line is a few array stores and a copy of the message chars; nothing is allocated
+ * - lock-free: a line claims its slot (and its space in the char/argument rings) from atomic counters, is written and
+ * then published with its sequence number in the slot's stamp; dump() skips slots that are still being written or were
+ * overwritten while it read them
+ * - lines below the logcat/file level are captured without being formatted: the format string is copied and the
+ * arguments are kept until the buffer is dumped (see {@link #writeFormat})
+ * - dump to a file on a crash (see {@link AndroidLoggerFactory#setCrashBuffer(int, File)}) or on demand
+ */
+class CrashBuffer {
+    private static final String TAG = "CrashBuffer";
+
+    // average space per line; lines longer than MAX_CHARS_PER_LINE are cut off
+    private static final int CHARS_PER_LINE = 160;
+    private static final int MAX_CHARS_PER_LINE = 2048;
+    // average arguments per line; arguments past MAX_ARGUMENTS_PER_LINE are left out
+    private static final int ARGUMENTS_PER_LINE = 2;
+    private static final int MAX_ARGUMENTS_PER_LINE = 8;
+
+    // text is the formatted message (+ an optional Throwable argument) or a format string and its arguments
+    private static final byte KIND_MESSAGE = 0;
+    private static final byte KIND_FORMAT = 1;
+
+    private static final long NOT_WRITTEN = -1;
+
+    private final long[] times;
+    private final byte[] levels;
+    private final byte[] kinds;
+    private final String[] tags;
+    // absolute position of each line's text in the (ever increasing) char stream
+    private final long[] charStarts;
+    private final int[] charLengths;
+    private final char[] chars;
+    // absolute position of each line's arguments in the (ever increasing) argument stream
+    private final long[] argumentStarts;
+    private final byte[] argumentCounts;
+    private final Object[] arguments;
+
+    // sequence number of the next line; its slot is sequence % maxLines
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong charPosition = new AtomicLong();
+    private final AtomicLong argumentPosition = new AtomicLong();
+    // sequence number of the line in each slot once it's written; NOT_WRITTEN while it's empty or being written
+    private final AtomicLongArray stamps;
+
+    /**
+     * @param maxLines number of lines to keep
+     */
+    CrashBuffer(int maxLines) {
+        maxLines = Math.max(maxLines, 1);
+        times = new long[maxLines];
+        levels = new byte[maxLines];
+        kinds = new byte[maxLines];
+        tags = new String[maxLines];
+        charStarts = new long[maxLines];
+        charLengths = new int[maxLines];
+        chars = new char[maxLines * CHARS_PER_LINE];
+        argumentStarts = new long[maxLines];
+        argumentCounts = new byte[maxLines];
+        arguments = new Object[maxLines * ARGUMENTS_PER_LINE];
+        long[] emptyStamps = new long[maxLines];
+        Arrays.fill(emptyStamps, NOT_WRITTEN);
+        stamps = new AtomicLongArray(emptyStamps);
+    }
+
+    /**
+     * add a formatted line
+     */
+    void write(long timeMs, int logLevel, String tag, String message) {
+        write(timeMs, logLevel, tag, KIND_MESSAGE, message, 0, null, null, null);
+    }
+
+    /**
+     * add a line that hasn't been formatted - message + throwable are only rendered if the buffer is dumped
+     */
+    void write(long timeMs, int logLevel, String tag, String message, Throwable throwable) {
+        write(timeMs, logLevel, tag, KIND_MESSAGE, message != null ? message : "null", throwable != null ? 1 : 0, throwable, null, null);
+    }
+
+    /**
+     * add a line that hasn't been formatted - format is copied and the arguments are kept as they are; it's only
+     * formatted if the buffer is dumped
+     * - Strings, boxed primitives and Throwables are immutable: they're kept by reference; anything else is
+     * rendered to a String here (it could change before the dump, or hold on to a lot of memory)
+     *
+     * @param argumentCount number of arguments: 1 (arg1), 2 (arg1, arg2) or arguments.length
+     * @param arguments     all arguments if there are more than 2; null otherwise
+     */
+    void writeFormat(long timeMs, int logLevel, String tag, String format, int argumentCount, Object arg1, Object arg2, Object[] arguments) {
+        if (format == null) {
+            format = "null";
+        }
+        argumentCount = Math.min(argumentCount, MAX_ARGUMENTS_PER_LINE);
+        // render before claiming a slot - toString() can take a while or log something itself
+        if (arguments != null) {
+            for (int i = 0; i < argumentCount; i++) {
+                if (!isKeptAsIs(arguments[i])) {
+                    arguments = Arrays.copyOf(arguments, argumentCount);
+                    for (int j = i; j < argumentCount; j++) {
+                        arguments[j] = toCapturedArgument(arguments[j]);
+                    }
+                    break;
+                }
+            }
+        } else {
+            arg1 = toCapturedArgument(arg1);
+            arg2 = toCapturedArgument(arg2);
+        }
+        write(timeMs, logLevel, tag, KIND_FORMAT, format, argumentCount, arg1, arg2, arguments);
+    }
+
+    private void write(long timeMs, int logLevel, String tag, byte kind, String text, int argumentCount, Object arg1, Object arg2, Object[] lineArguments) {
+        int length = Math.min(text.length(), Math.min(MAX_CHARS_PER_LINE, chars.length));
+        argumentCount = Math.min(argumentCount, arguments.length);
+        long lineSequence = sequence.getAndIncrement();
+        long charStart = charPosition.getAndAdd(length);
+        long argumentStart = argumentCount > 0 ? argumentPosition.getAndAdd(argumentCount) : 0;
+        int index = (int) (lineSequence % times.length);
+        // dump() skips the slot until it's published again below
+        stamps.getAndSet(index, NOT_WRITTEN);
+
+        times[index] = timeMs;
+        levels[index] = (byte) logLevel;
+        kinds[index] = kind;
+        // just a reference - tags are shared by every line from the same logger
+        tags[index] = tag;
+        charStarts[index] = charStart;
+        charLengths[index] = length;
+        argumentStarts[index] = argumentStart;
+        argumentCounts[index] = (byte) argumentCount;
+
+        // copy message into the char ring (in 2 parts if it wraps around the end)
+        int offset = (int) (charStart % chars.length);
+        int firstPart = Math.min(length, chars.length - offset);
+        text.getChars(0, firstPart, chars, offset);
+        if (firstPart < length) {
+            text.getChars(firstPart, length, chars, 0);
+        }
+
+        for (int i = 0; i < argumentCount; i++) {
+            Object argument = lineArguments != null ? lineArguments[i] : i == 0 ? arg1 : arg2;
+            arguments[(int) ((argumentStart + i) % arguments.length)] = argument;
+        }
+        // ordered after the writes above, no need for a full fence
+        stamps.lazySet(index, lineSequence);
+    }
+
+    /**
+     * write buffered lines to a text file (same format as {@link AndroidLoggerFactory#logToFile(File, boolean)}), oldest first
+     * - lines that were captured without formatting are formatted here
+     * - doesn't stop other threads from logging: lines that are being written or are overwritten while they're read are
+     * left out
+     *
+     * @return number of lines written
+     */
+    synchronized int dump(File file, TimestampFormatter timestampFormatter) throws IOException {
+        LogFileWriter out = new LogFileWriter(file, 0, false, 0, false, timestampFormatter);
+        int written = 0;
+        try {
+            long end = sequence.get();
+            for (long i = Math.max(0, end - times.length); i < end; i++) {
+                int index = (int) (i % times.length);
+                if (stamps.get(index) != i) {
+                    // still being written, or already replaced by a newer line
+                    continue;
+                }
+                long timeMs = times[index];
+                int logLevel = levels[index];
+                byte kind = kinds[index];
+                String tag = tags[index];
+                long charStart = charStarts[index];
+                String text = getText(charStart, charLengths[index]);
+                long argumentStart = argumentStarts[index];
+                Object[] lineArguments = getArguments(argumentStart, argumentCounts[index]);
+                // a CAS rather than get(): the reads above can't be moved after it (a volatile read doesn't stop that)
+                if (!stamps.compareAndSet(index, i, i) || charStart < charPosition.get() - chars.length) {
+                    // replaced while it was read, or its text was overwritten by newer lines
+                    continue;
+                }
+                if (argumentStart < argumentPosition.get() - arguments.length) {
+                    // arguments were overwritten by newer lines - the format (or message) alone is better than nothing
+                    lineArguments = null;
+                }
+                out.write(timeMs, logLevel, tag, getMessage(kind, text, lineArguments));
+                written++;
+            }
+        } finally {
+            out.close();
+        }
+        return written;
+    }
+
+    private Object[] getArguments(long argumentStart, int argumentCount) {
+        Object[] lineArguments = new Object[argumentCount];
+        for (int i = 0; i < argumentCount; i++) {
+            lineArguments[i] = arguments[(int) ((argumentStart + i) % arguments.length)];
+        }
+        return lineArguments;
+    }
+
+    /**
+     * @param lineArguments null if they were overwritten
+     * @return line's message - formatted now if it was captured as a format + arguments
+     */
+    private static String getMessage(byte kind, String text, Object[] lineArguments) {
+        if (lineArguments == null) {
+            return text;
+        } else if (kind == KIND_FORMAT) {
+            return LogFormatter.obtain().format(text, lineArguments).finish();
+        } else if (lineArguments.length > 0) {
+            return LogFormatter.obtain().append(text).setThrowable((Throwable) lineArguments[0]).finish();
+        }
+        return text;
+    }
+
+    private String getText(long charStart, int length) {
+        int offset = (int) (charStart % chars.length);
+        if (offset + length <= chars.length) {
+            return new String(chars, offset, length);
+        }
+        int firstPart = chars.length - offset;
+        return new StringBuilder(length)
+                .append(chars, offset, firstPart)
+                .append(chars, 0, length - firstPart)
+                .toString();
+    }
+
+    /**
+     * @return true for arguments that can't change before the buffer is dumped (and don't hold on to app objects)
+     */
+    private static boolean isKeptAsIs(Object o) {
+        return o == null || (o instanceof String && ((String) o).length() <= MAX_CHARS_PER_LINE) || o instanceof Integer || o instanceof Long
+                || o instanceof Double || o instanceof Float || o instanceof Boolean || o instanceof Character || o instanceof Short
+                || o instanceof Byte || o instanceof Throwable;
+    }
+
+    /**
+     * @return argument as it's kept in the buffer - rendered to a (max MAX_CHARS_PER_LINE) String unless it's
+     * immutable
+     */
+    private static Object toCapturedArgument(Object o) {
+        if (isKeptAsIs(o)) {
+            return o;
+        }
+        // same rendering as a formatted line (arrays, toString() failures..)
+        String text = LogFormatter.obtain().format("{}", o).finish();
+        return text.length() > MAX_CHARS_PER_LINE ? text.substring(0, MAX_CHARS_PER_LINE) : text;
+    }
+
+    /**
+     * dumps buffer to a file when the app crashes, then hands off to the previous handler
+     */
+    static class CrashHandler implements Thread.UncaughtExceptionHandler {
+        private final AndroidLoggerFactory factory;
+        private final File dumpFile;
+        private final Thread.UncaughtExceptionHandler previousHandler;
+
+        CrashHandler(AndroidLoggerFactory factory, File dumpFile, Thread.UncaughtExceptionHandler previousHandler) {
+            this.factory = factory;
+            this.dumpFile = dumpFile;
+            this.previousHandler = previousHandler;
+        }
+
+        Thread.UncaughtExceptionHandler getPreviousHandler() {
+            return previousHandler;
+        }
+
+        @Override
+        public void uncaughtException(Thread thread, Throwable throwable) {
+            try {
+                factory.onCrash(thread, throwable, dumpFile);
+            } catch (Throwable t) {
+                Log.e(TAG, "uncaughtException: unable to dump crash buffer", t);
+            }
+            if (previousHandler != null) {
+                previousHandler.uncaughtException(thread, throwable);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.jp.androidlogger;
+
+import org.slf4j.Marker;
+
+import java.util.Arrays;
+
+/**
+ * collects a single log call for an enabled level and hands it to {@link AndroidLogger} (which resolves suppliers only
+ * after the marker and rate limit checks)
+ */
+class DefaultLoggingEventBuilder implements LoggingEventBuilder {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final AndroidLogger logger;
+    private final int logLevel;
+    private Object[] arguments = NO_ARGUMENTS;
+    private int argumentCount;
+    // key, value, key, value..
+    private Object[] keyValues = NO_ARGUMENTS;
+    private int keyValueCount;
+    private Marker marker;
+    private Throwable cause;
+
+    DefaultLoggingEventBuilder(AndroidLogger logger, int logLevel) {
+        this.logger = logger;
+        this.logLevel = logLevel;
+    }
+
+    @Override
+    public LoggingEventBuilder addArgument(Object argument) {
+        if (argumentCount == arguments.length) {
+            arguments = Arrays.copyOf(arguments, Math.max(4, argumentCount * 2));
+        }
+        arguments[argumentCount++] = argument;
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder addArgument(Supplier<?> argument) {
+        // resolved in AndroidLogger.log() - once it's known the line will be logged
+        return addArgument((Object) argument);
+    }
+
+    @Override
+    public LoggingEventBuilder addKeyValue(String key, Object value) {
+        if (keyValueCount + 2 > keyValues.length) {
+            keyValues = Arrays.copyOf(keyValues, Math.max(8, keyValueCount * 2));
+        }
+        keyValues[keyValueCount++] = String.valueOf(key);
+        keyValues[keyValueCount++] = value;
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder addMarker(Marker marker) {
+        this.marker = marker;
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder setCause(Throwable cause) {
+        this.cause = cause;
+        return this;
+    }
+
+    @Override
+    public void log(String format) {
+        Object[] arguments = argumentCount == this.arguments.length ? this.arguments : Arrays.copyOf(this.arguments, argumentCount);
+        logger.log(logLevel, marker, format, null, arguments, cause, getKeyValues());
+    }
+
+    @Override
+    public void log(Supplier<String> message) {
+        logger.log(logLevel, marker, null, message, NO_ARGUMENTS, cause, getKeyValues());
+    }
+
+    /**
+     * @return key-value pairs trimmed to size; null if none
+     */
+    private Object[] getKeyValues() {
+        if (keyValueCount == 0) {
+            return null;
+        }
+        return keyValueCount == keyValues.length ? keyValues : Arrays.copyOf(keyValues, keyValueCount);
+    }
+}
@@ -0,0 +1,74 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * writes records to a text file through {@link LogFileWriter}
+ * - created by {@link AndroidLoggerFactory#logToFile(java.io.File, boolean)}; wrapped in an {@link AsyncSink} when
+ * async file logging is enabled
+ * - a record that can't be written is counted as dropped and logging carries on (the file is opened again on the next
+ * write); the error is reported once, not for every record, until a write works again
+ */
+class FileSink implements LogSink {
+    private static final String TAG = "FileSink";
+
+    private final LogFileWriter fileWriter;
+    private final boolean isFlushEachRecord;
+    private final AtomicLong droppedCount;
+
+    // writes have been failing since the last one that worked
+    private final AtomicBoolean isFailing = new AtomicBoolean();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * @param isFlushEachRecord true to flush after every record (calling thread); false to leave it to flush() (an
+     *                          AsyncSink flushes once its queue has caught up)
+     * @param droppedCount      incremented for each record that couldn't be written
+     */
+    FileSink(LogFileWriter fileWriter, boolean isFlushEachRecord, AtomicLong droppedCount) {
+        this.fileWriter = fileWriter;
+        this.isFlushEachRecord = isFlushEachRecord;
+        this.droppedCount = droppedCount;
+    }
+
+    @Override
+    public void write(LogRecord record) {
+        try {
+            fileWriter.write(record);
+            if (isFlushEachRecord) {
+                fileWriter.flush();
+            }
+        } catch (IOException e) {
+            droppedCount.incrementAndGet();
+            failedCount.incrementAndGet();
+            if (isFailing.compareAndSet(false, true)) {
+                Log.e(TAG, "write: error writing to: " + fileWriter.getFile().getAbsolutePath() + "; dropping records until it works again", e);
+            }
+            return;
+        }
+        if (isFailing.get() && isFailing.compareAndSet(true, false)) {
+            Log.w(TAG, "write: writing to " + fileWriter.getFile().getAbsolutePath() + " again after dropping " + failedCount.getAndSet(0) + " records");
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            fileWriter.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * close the file
+     */
+    @Override
+    public void close() {
+        fileWriter.close();
+    }
+}
@@ -0,0 +1,683 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ships log records to an HTTP collector - add with {@link AndroidLoggerFactory#addSink(LogSink)} (no executor needed)
+ * - write() only adds the record to a bounded queue (oldest record is dropped when it's full); batching, compression,
+ * sending and spooling all happen on one background thread
+ * - a batch is JSON lines (same as {@link LogFileFormat#JSON} files), gzipped and POSTed with
+ * "Content-Type: application/x-ndjson" + "Content-Encoding: gzip"
+ * - a batch is sent once it has maxBatchRecords records or maxBatchBytes (uncompressed) bytes, or maxBatchDelayMs after
+ * its first record
+ * - failed sends (network error, 5xx, 429) are retried with exponential backoff; meanwhile batches are spooled to disk
+ * (oldest deleted past maxSpoolBytes) and sent oldest first once the collector is back - also after an app restart
+ * - any other response drops the batch (it would never be accepted)
+ * - on close() the current batch is spooled, not sent (doesn't hold up shutdown waiting on the network)
+ * - see {@link #getStats()} for batch sizes, compression ratio and send latency
+ */
+public class HttpLogExporter implements LogSink, Runnable {
+    private static final String TAG = "HttpLogExporter";
+    private static final boolean EXTRA_LOGGING = false;
+
+    private static final String SPOOL_EXTENSION = ".ndjson.gz";
+    private static final int MAX_DRAIN_SIZE = 256;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+    // a kept-alive connection the server already closed fails faster than this
+    private static final long STALE_CONNECTION_MS = 1000;
+    // write() adds this to wake the thread up for flush()/close()
+    private static final LogRecord WAKE_UP = new LogRecord(0, 0, "", "");
+
+    private static final int SENT = 0;
+    private static final int RETRY = 1;
+    private static final int DROP = 2;
+
+    private final URL url;
+    private final File spoolDir;
+    private final ArrayBlockingQueue<LogRecord> queue;
+    private volatile Map<String, String> headers = Collections.emptyMap();
+
+    private volatile int maxBatchRecords = 500;
+    private volatile int maxBatchBytes = 256 * 1024;
+    private volatile long maxBatchDelayMs = 10 * 1000;
+    private volatile long maxSpoolBytes = 5 * 1024 * 1024;
+    private volatile int timeoutMs = 15 * 1000;
+
+    private volatile boolean isRunning;
+    private volatile boolean isFlushRequested;
+    private final Thread thread;
+
+    // -- background thread only --
+    private final JsonLogEncoder encoder = new JsonLogEncoder();
+    private final ByteArrayOutputStream batchBytes = new ByteArrayOutputStream(16 * 1024);
+    private GZIPOutputStream batchOut;
+    private int batchRecords;
+    private long batchRawBytes;
+    private long batchStartMs;
+    // spooled batches, oldest first
+    private final ArrayDeque<File> spoolFiles = new ArrayDeque<>();
+    private int spoolSequence;
+    private long backoffMs;
+    private long retryAtMs;
+    // last request succeeded - the next one may go out on its kept-alive connection
+    private boolean isKeptAlive;
+    private final Random random = new Random();
+
+    // -- stats --
+    private final AtomicLong droppedRecordCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong maxBatchRecordCount = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong failedSendCount = new AtomicLong();
+    private final AtomicLong spoolBytes = new AtomicLong();
+    private volatile int spoolFileCount;
+    private final LatencyHistogram sendTime = new LatencyHistogram();
+
+    /**
+     * @param url      collector endpoint
+     * @param spoolDir directory for batches that couldn't be sent yet (ie: new File(getCacheDir(), "log-spool")); null
+     *                 to drop them instead
+     */
+    public HttpLogExporter(URL url, File spoolDir) {
+        this(url, spoolDir, 2048);
+    }
+
+    /**
+     * @param queueSize max records waiting to be batched
+     */
+    public HttpLogExporter(URL url, File spoolDir, int queueSize) {
+        this.url = url;
+        this.spoolDir = spoolDir;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        isRunning = true;
+        thread = new Thread(this, "AndroidLogger-export");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * max records per batch
+     * - defaults to 500
+     */
+    public void setMaxBatchRecords(int maxBatchRecords) {
+        this.maxBatchRecords = Math.max(maxBatchRecords, 1);
+    }
+
+    /**
+     * max uncompressed bytes per batch (a batch can go over by one record)
+     * - defaults to 256KB
+     */
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = Math.max(maxBatchBytes, 1);
+    }
+
+    /**
+     * max time a record waits for its batch to fill up
+     * - defaults to 10 seconds
+     */
+    public void setMaxBatchDelayMs(long maxBatchDelayMs) {
+        this.maxBatchDelayMs = Math.max(maxBatchDelayMs, 0);
+    }
+
+    /**
+     * max bytes of spooled batches kept on disk; the oldest are deleted first
+     * - defaults to 5MB
+     */
+    public void setMaxSpoolBytes(long maxSpoolBytes) {
+        this.maxSpoolBytes = maxSpoolBytes;
+    }
+
+    /**
+     * connect + read timeout per request
+     * - defaults to 15 seconds
+     */
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * add a request header (ie: "Authorization")
+     */
+    public synchronized void setHeader(String name, String value) {
+        Map<String, String> newHeaders = new LinkedHashMap<>(headers);
+        if (value != null) {
+            newHeaders.put(name, value);
+        } else {
+            newHeaders.remove(name);
+        }
+        headers = Collections.unmodifiableMap(newHeaders);
+    }
+
+    /**
+     * queue record; never blocks
+     */
+    @Override
+    public void write(LogRecord record) {
+        if (!isRunning) {
+            droppedRecordCount.incrementAndGet();
+            return;
+        }
+        while (!queue.offer(record)) {
+            if (queue.poll() != null) {
+                droppedRecordCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * send whatever is batched so far without waiting for the batch to fill up (doesn't wait for the send)
+     */
+    @Override
+    public void flush() {
+        isFlushRequested = true;
+        queue.offer(WAKE_UP);
+    }
+
+    /**
+     * stop the background thread; records not sent yet are spooled to disk
+     */
+    @Override
+    public void close() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        queue.offer(WAKE_UP);
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join(CLOSE_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return counts + send latency so far
+     */
+    public Stats getStats() {
+        return new Stats(batchCount.get(), recordCount.get(), maxBatchRecordCount.get(), rawBytes.get(), compressedBytes.get(), sendTime.getSnapshot(),
+                failedSendCount.get(), droppedRecordCount.get(), spoolFileCount, spoolBytes.get(), queue.size());
+    }
+
+    @Override
+    public void run() {
+        loadSpoolFiles();
+        List<LogRecord> records = new ArrayList<>(MAX_DRAIN_SIZE);
+        while (isRunning) {
+            LogRecord record;
+            try {
+                record = queue.poll(getWaitMs(System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (record != null) {
+                records.add(record);
+                queue.drainTo(records, MAX_DRAIN_SIZE - 1);
+                addRecords(records);
+            }
+
+            long now = System.currentTimeMillis();
+            if (batchRecords > 0 && (isFlushRequested || now - batchStartMs >= maxBatchDelayMs)) {
+                endBatch(true);
+            }
+            isFlushRequested = false;
+            sendSpooled();
+        }
+
+        // closing - keep whatever is left for next time
+        while (queue.drainTo(records, MAX_DRAIN_SIZE) > 0) {
+            addRecords(records);
+        }
+        if (batchRecords > 0) {
+            endBatch(false);
+        }
+    }
+
+    /**
+     * @return how long to wait for the next record: until the current batch is due or it's time to retry
+     */
+    private long getWaitMs(long now) {
+        long waitMs = Long.MAX_VALUE;
+        if (batchRecords > 0) {
+            waitMs = batchStartMs + maxBatchDelayMs - now;
+        }
+        if (!spoolFiles.isEmpty()) {
+            waitMs = Math.min(waitMs, retryAtMs - now);
+        }
+        return Math.max(waitMs, 1);
+    }
+
+    private void addRecords(List<LogRecord> records) {
+        for (LogRecord record : records) {
+            if (record == WAKE_UP) {
+                continue;
+            }
+            if (batchRecords == 0) {
+                startBatch();
+            }
+            ByteBuffer line = encoder.encode(record);
+            try {
+                batchOut.write(line.array(), 0, line.limit());
+            } catch (IOException e) {
+                // ByteArrayOutputStream doesn't throw
+                Log.e(TAG, "addRecords: " + e.getMessage());
+                continue;
+            }
+            batchRecords++;
+            batchRawBytes += line.limit();
+            if (batchRecords >= maxBatchRecords || batchRawBytes >= maxBatchBytes) {
+                endBatch(isRunning);
+            }
+        }
+        records.clear();
+    }
+
+    private void startBatch() {
+        batchBytes.reset();
+        try {
+            batchOut = new GZIPOutputStream(batchBytes, 8 * 1024);
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+        batchStartMs = System.currentTimeMillis();
+    }
+
+    /**
+     * compress current batch and send it (or spool it if the collector isn't reachable, it's backing off after a failed
+     * send, or there are older batches to send first)
+     */
+    private void endBatch(boolean isSendAllowed) {
+        try {
+            batchOut.finish();
+        } catch (IOException e) {
+            Log.e(TAG, "endBatch: " + e.getMessage());
+        }
+        byte[] body = batchBytes.toByteArray();
+        int records = batchRecords;
+        long raw = batchRawBytes;
+        batchOut = null;
+        batchRecords = 0;
+        batchRawBytes = 0;
+
+        batchCount.incrementAndGet();
+        rawBytes.addAndGet(raw);
+        compressedBytes.addAndGet(body.length);
+        if (records > maxBatchRecordCount.get()) {
+            maxBatchRecordCount.set(records);
+        }
+
+        if (isSendAllowed && spoolFiles.isEmpty() && System.currentTimeMillis() >= retryAtMs) {
+            int result = send(body, records);
+            if (result == SENT) {
+                return;
+            } else if (result == DROP) {
+                droppedRecordCount.addAndGet(records);
+                return;
+            }
+        }
+        spool(body, records);
+    }
+
+    /**
+     * send spooled batches, oldest first, until one fails
+     */
+    private void sendSpooled() {
+        while (isRunning && !spoolFiles.isEmpty() && System.currentTimeMillis() >= retryAtMs) {
+            File file = spoolFiles.peekFirst();
+            byte[] body;
+            try {
+                body = readFile(file);
+            } catch (IOException e) {
+                Log.e(TAG, "sendSpooled: unable to read: " + file.getAbsolutePath(), e);
+                removeSpoolFile();
+                continue;
+            }
+            int result = send(body, getRecordCount(file));
+            if (result == RETRY) {
+                return;
+            }
+            if (result == DROP) {
+                droppedRecordCount.addAndGet(getRecordCount(file));
+            }
+            removeSpoolFile();
+        }
+    }
+
+    /**
+     * POST one batch
+     *
+     * @return SENT, RETRY (and backing off) or DROP
+     */
+    private int send(byte[] body, int records) {
+        long startNanos = System.nanoTime();
+        int responseCode;
+        try {
+            responseCode = post(body);
+        } catch (IOException e) {
+            // a kept-alive connection the server already closed fails right away - try once more on a new one
+            // - not after a timeout or when there was no connection to reuse; that would hold up the thread twice as long
+            if (!isKeptAlive || System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(STALE_CONNECTION_MS)) {
+                Log.w(TAG, "send: " + url + ": " + e);
+                return onSendFailed();
+            }
+            if (EXTRA_LOGGING) Log.v(TAG, "send: " + url + ": " + e + " - retrying");
+            startNanos = System.nanoTime();
+            try {
+                responseCode = post(body);
+            } catch (IOException e2) {
+                Log.w(TAG, "send: " + url + ": " + e2);
+                return onSendFailed();
+            }
+        }
+        sendTime.record(System.nanoTime() - startNanos);
+
+        isKeptAlive = true;
+        if (responseCode >= 200 && responseCode < 300) {
+            recordCount.addAndGet(records);
+            backoffMs = 0;
+            retryAtMs = 0;
+            return SENT;
+        } else if (responseCode == 429 || responseCode >= 500) {
+            Log.w(TAG, "send: " + url + ": HTTP " + responseCode);
+            return onSendFailed();
+        }
+        Log.e(TAG, "send: " + url + ": HTTP " + responseCode + " - dropping " + records + " records");
+        return DROP;
+    }
+
+    /**
+     * @return HTTP response code
+     */
+    private int post(byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/x-ndjson");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.close();
+            int responseCode = connection.getResponseCode();
+            // read the response to the end so the connection can be kept alive for the next batch
+            InputStream in = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) > 0) {
+                    // ignored
+                }
+                in.close();
+            }
+            return responseCode;
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private int onSendFailed() {
+        isKeptAlive = false;
+        failedSendCount.incrementAndGet();
+        backoffMs = backoffMs == 0 ? MIN_BACKOFF_MS : Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        // +/-20% so devices that lost the collector at the same time don't all come back at once
+        retryAtMs = System.currentTimeMillis() + (long) (backoffMs * (0.8 + random.nextDouble() * 0.4));
+        return RETRY;
+    }
+
+    /**
+     * write batch to the spool directory: "time-sequence-records.ndjson.gz"
+     */
+    private void spool(byte[] body, int records) {
+        if (spoolDir == null) {
+            droppedRecordCount.addAndGet(records);
+            return;
+        }
+        while (!spoolFiles.isEmpty() && spoolBytes.get() + body.length > maxSpoolBytes) {
+            // make room - oldest records go first
+            droppedRecordCount.addAndGet(getRecordCount(spoolFiles.peekFirst()));
+            removeSpoolFile();
+        }
+        String name = String.format(Locale.US, "%013d-%04d-%d%s", System.currentTimeMillis(), spoolSequence++ % 10000, records, SPOOL_EXTENSION);
+        File file = new File(spoolDir, name);
+        File tempFile = new File(spoolDir, name + ".tmp");
+        OutputStream out = null;
+        try {
+            if (!spoolDir.isDirectory() && !spoolDir.mkdirs()) {
+                throw new IOException("unable to create: " + spoolDir.getAbsolutePath());
+            }
+            out = new FileOutputStream(tempFile);
+            out.write(body);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("unable to rename: " + tempFile.getAbsolutePath());
+            }
+            spoolFiles.addLast(file);
+            spoolBytes.addAndGet(body.length);
+            spoolFileCount = spoolFiles.size();
+        } catch (IOException e) {
+            Log.e(TAG, "spool: dropping " + records + " records", e);
+            droppedRecordCount.addAndGet(records);
+            tempFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * pick up batches spooled before the app was restarted
+     */
+    private void loadSpoolFiles() {
+        if (spoolDir == null) {
+            return;
+        }
+        File[] files = spoolDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SPOOL_EXTENSION);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        // names start with a fixed width time
+        Arrays.sort(files);
+        for (File file : files) {
+            spoolFiles.addLast(file);
+            spoolBytes.addAndGet(file.length());
+        }
+        spoolFileCount = spoolFiles.size();
+    }
+
+    private void removeSpoolFile() {
+        File file = spoolFiles.pollFirst();
+        spoolBytes.addAndGet(-file.length());
+        if (!file.delete()) {
+            Log.w(TAG, "unable to delete: " + file.getAbsolutePath());
+        }
+        spoolFileCount = spoolFiles.size();
+    }
+
+    /**
+     * @return number of records in a spool file (from its name)
+     */
+    private static int getRecordCount(File file) {
+        String name = file.getName();
+        int end = name.length() - SPOOL_EXTENSION.length();
+        int start = name.lastIndexOf('-', end) + 1;
+        try {
+            return Integer.parseInt(name.substring(start, end));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int count;
+            while (offset < bytes.length && (count = in.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += count;
+            }
+            return offset == bytes.length ? bytes : Arrays.copyOf(bytes, offset);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * snapshot of what the exporter has done so far
+     */
+    public static class Stats {
+        private final long batchCount;
+        private final long recordCount;
+        private final long maxBatchRecords;
+        private final long rawBytes;
+        private final long compressedBytes;
+        private final LogMetrics.Latency sendTime;
+        private final long failedSendCount;
+        private final long droppedRecordCount;
+        private final int spoolFileCount;
+        private final long spoolBytes;
+        private final int queueSize;
+
+        Stats(long batchCount, long recordCount, long maxBatchRecords, long rawBytes, long compressedBytes, LogMetrics.Latency sendTime, long failedSendCount,
+              long droppedRecordCount, int spoolFileCount, long spoolBytes, int queueSize) {
+            this.batchCount = batchCount;
+            this.recordCount = recordCount;
+            this.maxBatchRecords = maxBatchRecords;
+            this.rawBytes = rawBytes;
+            this.compressedBytes = compressedBytes;
+            this.sendTime = sendTime;
+            this.failedSendCount = failedSendCount;
+            this.droppedRecordCount = droppedRecordCount;
+            this.spoolFileCount = spoolFileCount;
+            this.spoolBytes = spoolBytes;
+            this.queueSize = queueSize;
+        }
+
+        /**
+         * @return batches built (sent or spooled)
+         */
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        /**
+         * @return records accepted by the collector
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public long getMaxBatchRecords() {
+            return maxBatchRecords;
+        }
+
+        /**
+         * @return JSON bytes before compression (all batches built)
+         */
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        /**
+         * @return bytes after compression (all batches built)
+         */
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        /**
+         * @return raw / compressed bytes; 0 if nothing was compressed yet
+         */
+        public double getCompressionRatio() {
+            return compressedBytes > 0 ? (double) rawBytes / compressedBytes : 0;
+        }
+
+        /**
+         * @return time per request (connect to response read) - failed connections aren't included
+         */
+        public LogMetrics.Latency getSendTime() {
+            return sendTime;
+        }
+
+        /**
+         * @return sends that will be retried (network error, 5xx, 429)
+         */
+        public long getFailedSendCount() {
+            return failedSendCount;
+        }
+
+        /**
+         * @return records lost: queue full, rejected by the collector, or spool full
+         */
+        public long getDroppedRecordCount() {
+            return droppedRecordCount;
+        }
+
+        public int getSpoolFileCount() {
+            return spoolFileCount;
+        }
+
+        public long getSpoolBytes() {
+            return spoolBytes;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "batches=%d records=%d maxBatch=%d raw=%d compressed=%d ratio=%.1f failed=%d dropped=%d spooled=%d (%d bytes) queue=%d\n"
+                            + "send: %s", batchCount, recordCount, maxBatchRecords, rawBytes, compressedBytes, getCompressionRatio(), failedSendCount,
+                    droppedRecordCount, spoolFileCount, spoolBytes, queueSize, sendTime);
+        }
+    }
+}
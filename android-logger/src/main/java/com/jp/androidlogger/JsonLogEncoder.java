@@ -0,0 +1,274 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * encodes log records for {@link LogFileFormat#JSON} files - one JSON object per line (JSON Lines):
+ * <pre>
+ * {"ts":1508334000123,"level":"INFO","tag":"blr_MainActivity","logger":"com.foo.MainActivity","thread":"main",
+ *  "caller":{"class":"com.foo.MainActivity","method":"onCreate","file":"MainActivity.java","line":42},
+ *  "msg":"onCreate","marker":"PERF","mdc":{"requestId":"42"},"kv":{"durationMs":17,"cached":true}}
+ * </pre>
+ * - logger, thread, caller, marker, mdc and kv are left out when not set
+ * - key-value numbers and booleans are written as JSON numbers/booleans; everything else as a string
+ * - written straight into a reusable byte array: escaping and UTF-8 are done by hand (no JSON library, no
+ * CharsetEncoder)
+ */
+class JsonLogEncoder {
+    private static final int INITIAL_SIZE = 512;
+    // don't hang on to a huge buffer after encoding a large message
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int position;
+
+    /**
+     * @return encoded line (ending in '\n'); only valid until the next call
+     */
+    ByteBuffer encode(LogRecord record) {
+        if (bytes.length > MAX_RETAINED_SIZE) {
+            bytes = new byte[INITIAL_SIZE];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        position = 0;
+        putAscii("{\"ts\":");
+        putLong(record.timeMs);
+        putAscii(",\"level\":\"");
+        putAscii(getLevelName(record.logLevel));
+        putAscii("\",\"tag\":");
+        putString(record.tag);
+        if (record.loggerName != null) {
+            putAscii(",\"logger\":");
+            putString(record.loggerName);
+        }
+        if (record.threadName != null) {
+            putAscii(",\"thread\":");
+            putString(record.threadName);
+        }
+        if (record.callerLocation != null) {
+            StackTraceElement caller = record.callerLocation.element;
+            putAscii(",\"caller\":{\"class\":");
+            putString(caller.getClassName());
+            putAscii(",\"method\":");
+            putString(caller.getMethodName());
+            if (caller.getFileName() != null) {
+                putAscii(",\"file\":");
+                putString(caller.getFileName());
+            }
+            if (caller.getLineNumber() >= 0) {
+                putAscii(",\"line\":");
+                putLong(caller.getLineNumber());
+            }
+            putByte('}');
+        }
+        putAscii(",\"msg\":");
+        putString(record.message);
+        if (record.marker != null) {
+            putAscii(",\"marker\":");
+            putString(record.marker.getName());
+        }
+        if (!record.mdc.isEmpty()) {
+            putAscii(",\"mdc\":{");
+            boolean isFirst = true;
+            for (Map.Entry<String, String> entry : record.mdc.map.entrySet()) {
+                if (!isFirst) {
+                    putByte(',');
+                }
+                isFirst = false;
+                putString(entry.getKey());
+                putByte(':');
+                putString(entry.getValue());
+            }
+            putByte('}');
+        }
+        Object[] keyValues = record.keyValues;
+        if (keyValues != null) {
+            putAscii(",\"kv\":{");
+            for (int i = 0; i < keyValues.length; i += 2) {
+                if (i > 0) {
+                    putByte(',');
+                }
+                putString((String) keyValues[i]);
+                putByte(':');
+                putValue(keyValues[i + 1]);
+            }
+            putByte('}');
+        }
+        putAscii("}\n");
+
+        buffer.clear();
+        buffer.limit(position);
+        return buffer;
+    }
+
+    static String getLevelName(int logLevel) {
+        switch (logLevel) {
+            case Log.VERBOSE:
+                return "TRACE";
+            case Log.DEBUG:
+                return "DEBUG";
+            case Log.INFO:
+                return "INFO";
+            case Log.WARN:
+                return "WARN";
+            case Log.ERROR:
+                return "ERROR";
+            case Log.ASSERT:
+                return "ASSERT";
+            default:
+                return Integer.toString(logLevel);
+        }
+    }
+
+    private void putValue(Object value) {
+        if (value == null) {
+            putAscii("null");
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            putLong(((Number) value).longValue());
+        } else if ((value instanceof Double || value instanceof Float) && !Double.isNaN(((Number) value).doubleValue())
+                && !Double.isInfinite(((Number) value).doubleValue())) {
+            // Double.toString() is valid JSON for finite values ("1.0E10" included)
+            putAscii(value.toString());
+        } else if (value instanceof Boolean) {
+            putAscii((Boolean) value ? "true" : "false");
+        } else {
+            putString(String.valueOf(value));
+        }
+    }
+
+    /**
+     * write quoted + escaped string
+     */
+    private void putString(String s) {
+        if (s == null) {
+            putAscii("null");
+            return;
+        }
+        int length = s.length();
+        // worst case: every char is a \\u00XX escape
+        ensureCapacity(2 + length * 6);
+        byte[] bytes = this.bytes;
+        int p = position;
+        bytes[p++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    bytes[p++] = (byte) c;
+                    continue;
+                }
+                bytes[p++] = '\\';
+                switch (c) {
+                    case '"':
+                        bytes[p++] = '"';
+                        break;
+                    case '\\':
+                        bytes[p++] = '\\';
+                        break;
+                    case '\n':
+                        bytes[p++] = 'n';
+                        break;
+                    case '\r':
+                        bytes[p++] = 'r';
+                        break;
+                    case '\t':
+                        bytes[p++] = 't';
+                        break;
+                    case '\b':
+                        bytes[p++] = 'b';
+                        break;
+                    case '\f':
+                        bytes[p++] = 'f';
+                        break;
+                    default:
+                        p = putUnicodeEscape(bytes, p, c);
+                        break;
+                }
+            } else if (c < 0x800) {
+                bytes[p++] = (byte) (0xC0 | (c >> 6));
+                bytes[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                bytes[p++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[p++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate can't be UTF-8 encoded - keep it as an escape
+                bytes[p++] = '\\';
+                p = putUnicodeEscape(bytes, p, c);
+            } else {
+                bytes[p++] = (byte) (0xE0 | (c >> 12));
+                bytes[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        bytes[p++] = '"';
+        position = p;
+    }
+
+    /**
+     * write "uXXXX" (the backslash is already written)
+     */
+    private static int putUnicodeEscape(byte[] bytes, int p, char c) {
+        bytes[p++] = 'u';
+        bytes[p++] = HEX[(c >> 12) & 0xF];
+        bytes[p++] = HEX[(c >> 8) & 0xF];
+        bytes[p++] = HEX[(c >> 4) & 0xF];
+        bytes[p++] = HEX[c & 0xF];
+        return p;
+    }
+
+    /**
+     * write a string known to be plain ASCII that needs no escaping (field names, numbers)
+     */
+    private void putAscii(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            bytes[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void putByte(char c) {
+        ensureCapacity(1);
+        bytes[position++] = (byte) c;
+    }
+
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[position++] = '-';
+            value = -value;
+        }
+        // digits backwards into place
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        int p = position + digits;
+        position = p;
+        do {
+            bytes[--p] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+    }
+
+    private void ensureCapacity(int count) {
+        if (position + count > bytes.length) {
+            byte[] bigger = new byte[Math.max(bytes.length * 2, position + count)];
+            System.arraycopy(bytes, 0, bigger, 0, position);
+            bytes = bigger;
+            buffer = ByteBuffer.wrap(bytes);
+        }
+    }
+}
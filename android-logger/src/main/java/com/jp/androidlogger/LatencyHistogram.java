@@ -0,0 +1,64 @@
+package com.jp.androidlogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * histogram of durations (nanoseconds) in log scale buckets: 4 buckets per power of 2, so any value is off by < 25%
+ * - counts are kept in a {@link StripedCounter}; recording a value is a bucket lookup + 2 striped adds
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values up to 2^40 ns (~18 minutes); anything bigger goes in the last bucket
+    private static final int MAX_POWER = 40;
+    static final int BUCKET_COUNT = (MAX_POWER - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    // counters: [0..BUCKET_COUNT) bucket counts, then the sum of all values
+    private static final int SUM_INDEX = BUCKET_COUNT;
+
+    private final StripedCounter counter = new StripedCounter(BUCKET_COUNT + 1);
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counter.increment(getBucket(nanos));
+        counter.add(SUM_INDEX, nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    LogMetrics.Latency getSnapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = counter.get(i);
+            count += counts[i];
+        }
+        return new LogMetrics.Latency(count, counter.get(SUM_INDEX), maxNanos.get(), counts);
+    }
+
+    static int getBucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (power - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min((power - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return largest value that goes in this bucket
+     */
+    static long getBucketMax(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int power = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long start = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (power - SUB_BUCKET_BITS);
+        return start + (1L << (power - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,20 @@
+package com.jp.androidlogger;
+
+/**
+ * format of files written by {@link AndroidLoggerFactory#logToFile(java.io.File, boolean)}
+ */
+public enum LogFileFormat {
+    /**
+     * text lines: "MM-dd HH:mm:ss L  tag message"
+     */
+    TEXT,
+    /**
+     * compact binary records - convert to text with {@link BinaryLogDecoder}
+     */
+    BINARY,
+    /**
+     * JSON Lines - one object per line with the time, level, tag, logger, thread, message, marker, MDC and key-value
+     * pairs (see {@link JsonLogEncoder}); no index/query support
+     */
+    JSON
+}
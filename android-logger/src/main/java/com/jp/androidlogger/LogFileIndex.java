@@ -0,0 +1,236 @@
+package com.jp.androidlogger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * sparse index kept next to a log file ("app.log" -> "app.log.idx", "app.log.1.gz" -> "app.log.1.idx") so
+ * {@link LogFileQuery} can skip straight to the parts of a file it needs
+ * - one entry per block of records: byte range + min/max time + bitmap of levels and tags in the block
+ * - tag bitmap is 64 bits (tag hash); a tag that isn't in a block can still match its bitmap - never the other way
+ * - offsets are into the uncompressed file
+ * - written by the file sink (see {@link AndroidLoggerFactory#setFileIndexEnabled(boolean)}); {@link #rebuild(File)}
+ * creates one for any existing log file
+ * <p>
+ * format: "ALIX" version, then fixed size entries (big endian):
+ * start offset (8), end offset (8), min time (8), max time (8), tag bitmap (8), level bitmap (4)
+ */
+public class LogFileIndex {
+    static final String EXTENSION = ".idx";
+    private static final byte[] MAGIC = {'A', 'L', 'I', 'X'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    private static final int ENTRY_SIZE = 8 + 8 + 8 + 8 + 8 + 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LogFileIndex() {
+    }
+
+    /**
+     * @return index file for a log file or archive
+     */
+    public static File getIndexFile(File logFile) {
+        String path = logFile.getPath();
+        if (path.endsWith(".gz")) {
+            path = path.substring(0, path.length() - 3);
+        }
+        return new File(path + EXTENSION);
+    }
+
+    /**
+     * (re)create the index for a log file - ie: one written before indexing was enabled
+     * - text files: timestamps must be in the default format; see {@link #rebuild(File, String)}
+     * - binary files: blocks can't be smaller than a segment (a segment is written every time the file is opened)
+     */
+    public static void rebuild(File logFile) throws IOException {
+        rebuild(logFile, TimestampFormatter.DEFAULT);
+    }
+
+    /**
+     * @param timestampPattern timestamp pattern the text file was written with (see
+     *                         {@link AndroidLoggerFactory#setFileTimestampFormat(String)}); not used for binary files
+     */
+    public static void rebuild(File logFile, String timestampPattern) throws IOException {
+        File indexFile = getIndexFile(logFile);
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        tempFile.delete();
+        LogIndexWriter indexWriter = new LogIndexWriter(tempFile, LogIndexWriter.BLOCK_SIZE);
+        indexWriter.open(0);
+        boolean isSuccess = false;
+        InputStream in = openLogFile(logFile);
+        try {
+            indexWriter.startBlock(0);
+            long end;
+            if (isBinary(in)) {
+                end = rebuildBinary(new BinaryLogDecoder(in), indexWriter);
+            } else {
+                end = rebuildText(new TextLogReader(in, 0, new TimestampFormatter(timestampPattern), logFile.lastModified()), indexWriter);
+            }
+            indexWriter.endBlock(end);
+            isSuccess = true;
+        } finally {
+            in.close();
+            indexWriter.close();
+            if (!isSuccess) {
+                tempFile.delete();
+            }
+        }
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("unable to delete: " + indexFile.getAbsolutePath());
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            throw new IOException("unable to rename: " + tempFile.getAbsolutePath());
+        }
+    }
+
+    private static long rebuildText(TextLogReader reader, LogIndexWriter indexWriter) throws IOException {
+        while (reader.next()) {
+            if (indexWriter.isBlockFull()) {
+                indexWriter.endBlock(reader.getRecordOffset());
+                indexWriter.startBlock(reader.getRecordOffset());
+            }
+            indexWriter.add(reader.getTimeMs(), reader.getLogLevel(), reader.getTag());
+        }
+        return reader.getOffset();
+    }
+
+    private static long rebuildBinary(BinaryLogDecoder decoder, LogIndexWriter indexWriter) throws IOException {
+        long blockStart = 0;
+        while (decoder.next()) {
+            // records can only be decoded from the start of their segment
+            long segmentOffset = decoder.getSegmentOffset();
+            if (segmentOffset != blockStart && indexWriter.isBlockFull()) {
+                indexWriter.endBlock(segmentOffset);
+                indexWriter.startBlock(segmentOffset);
+                blockStart = segmentOffset;
+            }
+            indexWriter.add(decoder.getTimeMs(), decoder.getLogLevel(), decoder.getTag());
+        }
+        return decoder.getPosition();
+    }
+
+    static InputStream openLogFile(File logFile) throws IOException {
+        InputStream in = new FileInputStream(logFile);
+        if (logFile.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BufferedInputStream(in, BUFFER_SIZE);
+    }
+
+    /**
+     * @param in buffered stream at the start of the file; position is unchanged
+     * @return true if this is a {@link LogFileFormat#BINARY} file
+     */
+    static boolean isBinary(InputStream in) throws IOException {
+        in.mark(1);
+        int type = in.read();
+        in.reset();
+        return type == BinaryLogEncoder.TYPE_SEGMENT;
+    }
+
+    static long getTagBit(String tag) {
+        return 1L << (tag.hashCode() & 63);
+    }
+
+    static int getLevelBit(int logLevel) {
+        return 1 << (logLevel & 31);
+    }
+
+    static void writeHeader(DataOutput out) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    static void writeEntry(DataOutput out, Entry entry) throws IOException {
+        out.writeLong(entry.startOffset);
+        out.writeLong(entry.endOffset);
+        out.writeLong(entry.minTimeMs);
+        out.writeLong(entry.maxTimeMs);
+        out.writeLong(entry.tagMask);
+        out.writeInt(entry.levelMask);
+    }
+
+    /**
+     * @return index entries (in file order); null if there's no index or it isn't valid
+     */
+    static List<Entry> read(File indexFile) {
+        long length = indexFile.length();
+        if (length < HEADER_SIZE || (length - HEADER_SIZE) % ENTRY_SIZE != 0) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), BUFFER_SIZE));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            int count = (int) ((length - HEADER_SIZE) / ENTRY_SIZE);
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                entry.startOffset = in.readLong();
+                entry.endOffset = in.readLong();
+                entry.minTimeMs = in.readLong();
+                entry.maxTimeMs = in.readLong();
+                entry.tagMask = in.readLong();
+                entry.levelMask = in.readInt();
+                entries.add(entry);
+            }
+            return entries;
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * block of records in a log file
+     */
+    static class Entry {
+        long startOffset;
+        long endOffset;
+        long minTimeMs;
+        long maxTimeMs;
+        long tagMask;
+        int levelMask;
+
+        /**
+         * @return true if the block might have records matching these filters
+         */
+        boolean isMatch(long fromTimeMs, long toTimeMs, int minLevel, long tagBit) {
+            // levels at or above minLevel
+            int levelBits = minLevel <= 0 ? -1 : -getLevelBit(minLevel);
+            return minTimeMs <= toTimeMs && maxTimeMs >= fromTimeMs
+                    && (levelMask & levelBits) != 0
+                    && (tagMask & tagBit) != 0;
+        }
+
+        /**
+         * @return true if this covers part of the log file written before it was indexed
+         */
+        boolean isUnknown() {
+            return minTimeMs == Long.MIN_VALUE && maxTimeMs == Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.jp.androidlogger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * search a log file (text or binary, plain or .gz archive) by time range, level and tag
+ * - uses the file's index (see {@link LogFileIndex}) to only read blocks that can have matching records; without an
+ * index the whole file is read
+ * - doesn't use any Android classes: also runs on a desktop JVM against files pulled from a device
+ * <p>
+ * usage:
+ * <pre>
+ * LogFileQuery query = new LogFileQuery(file);
+ * query.setTimeRange(from, to);
+ * query.setMinLevel(Log.WARN);
+ * while (query.next()) {
+ *     query.getTimeMs(), query.getTag(), query.getMessage() ..
+ * }
+ * query.close();
+ * </pre>
+ */
+public class LogFileQuery implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File logFile;
+    private final boolean isBinary;
+    private final boolean isCompressed;
+    // null if the file isn't indexed
+    private final List<LogFileIndex.Entry> entries;
+
+    // -- filters --
+    private long fromTimeMs = Long.MIN_VALUE;
+    private long toTimeMs = Long.MAX_VALUE;
+    private int minLevel;
+    private String tag;
+    private TimestampFormatter timestampFormatter = new TimestampFormatter(TimestampFormatter.DEFAULT);
+
+    // -- reading --
+    // {start offset, end offset, reference time} of each part of the file to read
+    private List<long[]> ranges;
+    private int rangeIndex;
+    private InputStream fileIn;
+    private long filePosition;
+    private RangeInputStream rangeIn;
+    private BinaryLogDecoder decoder;
+    private TextLogReader reader;
+
+    public LogFileQuery(File logFile) throws IOException {
+        this.logFile = logFile;
+        isCompressed = logFile.getName().endsWith(".gz");
+        InputStream in = LogFileIndex.openLogFile(logFile);
+        try {
+            isBinary = LogFileIndex.isBinary(in);
+        } finally {
+            in.close();
+        }
+        entries = LogFileIndex.read(LogFileIndex.getIndexFile(logFile));
+    }
+
+    /**
+     * @return true if the file has an index (if not, {@link LogFileIndex#rebuild(File)} creates one)
+     */
+    public boolean isIndexed() {
+        return entries != null;
+    }
+
+    /**
+     * only return records logged between fromTimeMs and toTimeMs (inclusive)
+     */
+    public void setTimeRange(long fromTimeMs, long toTimeMs) {
+        this.fromTimeMs = fromTimeMs;
+        this.toTimeMs = toTimeMs;
+    }
+
+    /**
+     * only return records at or above this Log.LEVEL
+     */
+    public void setMinLevel(int minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    /**
+     * only return records with this tag; null for all
+     */
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * timestamp pattern a text file was written with (see {@link AndroidLoggerFactory#setFileTimestampFormat(String)})
+     * - defaults to {@link TimestampFormatter#DEFAULT}
+     */
+    public void setTimestampFormat(String pattern) {
+        timestampFormatter = new TimestampFormatter(pattern);
+    }
+
+    /**
+     * move to the next matching record (filters can't be changed after the first call)
+     *
+     * @return false if there are no more
+     */
+    public boolean next() throws IOException {
+        if (ranges == null) {
+            ranges = getRanges();
+        }
+        while (true) {
+            if (decoder != null) {
+                if (decoder.next()) {
+                    return true;
+                }
+            } else if (reader != null) {
+                while (reader.next()) {
+                    if (isMatch(reader.getTimeMs(), reader.getLogLevel(), reader.getTag())) {
+                        return true;
+                    }
+                }
+            }
+            if (!openNextRange()) {
+                return false;
+            }
+        }
+    }
+
+    public long getTimeMs() {
+        return decoder != null ? decoder.getTimeMs() : reader.getTimeMs();
+    }
+
+    /**
+     * @return Log.LEVEL
+     */
+    public int getLogLevel() {
+        return decoder != null ? decoder.getLogLevel() : reader.getLogLevel();
+    }
+
+    public String getTag() {
+        return decoder != null ? decoder.getTag() : reader.getTag();
+    }
+
+    /**
+     * @return message - for text files this includes the MDC context (if any)
+     */
+    public String getMessage() throws IOException {
+        if (decoder == null) {
+            return reader.getMessage();
+        }
+        String context = decoder.getContext();
+        return context != null ? context + ' ' + decoder.getMessage() : decoder.getMessage();
+    }
+
+    /**
+     * write every matching record as a text line (same format as a {@link LogFileFormat#TEXT} file)
+     *
+     * @return number of records written
+     */
+    public long writeText(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        long count = 0;
+        while (next()) {
+            line.setLength(0);
+            LogFileWriter.appendLine(line, timestampFormatter, getTimeMs(), getLogLevel(), getTag(), null, getMessage());
+            out.append(line);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        decoder = null;
+        reader = null;
+        if (fileIn != null) {
+            fileIn.close();
+            fileIn = null;
+        }
+    }
+
+    private boolean isMatch(long timeMs, int logLevel, String recordTag) {
+        return logLevel >= minLevel
+                && timeMs >= fromTimeMs && timeMs <= toTimeMs
+                && (tag == null || tag.equals(recordTag));
+    }
+
+    /**
+     * @return parts of the file that can have matching records; adjacent blocks are merged so they're read in one go
+     */
+    private List<long[]> getRanges() {
+        List<long[]> ranges = new ArrayList<>();
+        long lastModified = logFile.lastModified();
+        if (entries == null) {
+            ranges.add(new long[]{0, Long.MAX_VALUE, lastModified});
+            return ranges;
+        }
+
+        long tagBit = tag != null ? LogFileIndex.getTagBit(tag) : -1;
+        long indexedEnd = 0;
+        long[] range = null;
+        for (LogFileIndex.Entry entry : entries) {
+            indexedEnd = entry.endOffset;
+            if (!entry.isMatch(fromTimeMs, toTimeMs, minLevel, tagBit)) {
+                continue;
+            }
+            long referenceTimeMs = entry.isUnknown() ? lastModified : entry.maxTimeMs;
+            if (range != null && range[1] == entry.startOffset) {
+                range[1] = entry.endOffset;
+                range[2] = Math.max(range[2], referenceTimeMs);
+            } else {
+                range = new long[]{entry.startOffset, entry.endOffset, referenceTimeMs};
+                ranges.add(range);
+            }
+        }
+        // anything written after the last full block
+        if (range != null && range[1] == indexedEnd) {
+            range[1] = Long.MAX_VALUE;
+            range[2] = lastModified;
+        } else {
+            ranges.add(new long[]{indexedEnd, Long.MAX_VALUE, lastModified});
+        }
+        return ranges;
+    }
+
+    private boolean openNextRange() throws IOException {
+        decoder = null;
+        reader = null;
+        if (rangeIn != null) {
+            filePosition += rangeIn.count;
+            rangeIn = null;
+        }
+        if (rangeIndex >= ranges.size()) {
+            return false;
+        }
+        long[] range = ranges.get(rangeIndex++);
+        seek(range[0]);
+
+        rangeIn = new RangeInputStream(fileIn, range[1] - range[0]);
+        InputStream in = new BufferedInputStream(rangeIn, BUFFER_SIZE);
+        if (isBinary) {
+            decoder = new BinaryLogDecoder(in);
+            decoder.setTimeRange(fromTimeMs, toTimeMs);
+            decoder.setMinLevel(minLevel);
+            decoder.setTag(tag);
+        } else {
+            reader = new TextLogReader(in, range[0], timestampFormatter, range[2]);
+        }
+        return true;
+    }
+
+    private void seek(long offset) throws IOException {
+        if (fileIn != null && isCompressed && offset < filePosition) {
+            // can only move forward in a gzip stream
+            fileIn.close();
+            fileIn = null;
+        }
+        if (fileIn == null) {
+            FileInputStream in = new FileInputStream(logFile);
+            fileIn = isCompressed ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+            filePosition = 0;
+        }
+        if (!isCompressed) {
+            ((FileInputStream) fileIn).getChannel().position(offset);
+            filePosition = offset;
+            return;
+        }
+        while (filePosition < offset) {
+            long skipped = fileIn.skip(offset - filePosition);
+            if (skipped <= 0) {
+                break;
+            }
+            filePosition += skipped;
+        }
+    }
+
+    /**
+     * reads up to 'length' bytes of the underlying stream and leaves it open
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+        long count;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // underlying file stays open for the next range
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * writes log lines to a file which is kept open between writes
+ * - file size is tracked in memory (no stat per line)
+ * - file is rolled over when it gets too big and/or when the day changes
+ * - rolled over files are renamed to "name.1", "name.2".. (optionally gzipped) on a background thread
+ * - a rolled over file the app was killed before archiving ("name.rolling-..") is archived the next time the file is
+ * opened
+ * - text lines or binary records (see {@link BinaryLogEncoder})
+ * - optionally keeps a sparse index next to the file (see {@link LogFileIndex})
+ * - optionally writes each stack trace once per file and repeats as a reference (see {@link StackTraceDecoder})
+ */
+class LogFileWriter {
+    private static final String TAG = "LogFileWriter";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // forget which stack traces were written after this many (they're just written in full again)
+    private static final int MAX_WRITTEN_TRACES = 256;
+    // "name.rolling-<time>-<count>": a rolled over file waiting for the archive thread
+    private static final String ROLLING_INFIX = ".rolling-";
+
+    // keeps rolled over file names unique - 2 roll overs (or 2 writers of the same file) can happen in the same ms
+    private static final AtomicLong rollOverCount = new AtomicLong();
+
+    // one background thread shared by all writers; renaming/compressing old files never happens on a logging thread
+    private static ExecutorService archiveExecutor;
+
+    private final File logFile;
+    private final long maxFileSize;
+    private final boolean isRollDaily;
+    private final int maxArchiveFiles;
+    private final boolean isCompressArchives;
+
+    private final TimestampFormatter timestampFormatter;
+    private final StringBuilder line = new StringBuilder(256);
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer lineBytes = ByteBuffer.allocate(512);
+    // null unless writing binary / JSON files
+    private final BinaryLogEncoder binaryEncoder;
+    private final JsonLogEncoder jsonEncoder;
+    // null if not indexing (or the index couldn't be written)
+    private LogIndexWriter indexWriter;
+    // stack traces written to the current file -> number of times; null unless de-duplicating stack traces
+    private final Map<StackTraceCache.Trace, int[]> writtenTraces;
+
+    // counts bytes written and roll overs; null if not set
+    private MetricsRecorder metrics;
+
+    private OutputStream out;
+    // leftover rolled over files are looked for the first time the file is opened
+    private boolean isLeftoversChecked;
+    // set by close() - the writer is done; writes are refused rather than re-opening the file
+    private boolean isClosed;
+    private long fileSize;
+    private long nextRollOverMs;
+
+    /**
+     * @param maxFileSize        roll over once file reaches this many bytes; 0 for no limit
+     * @param isRollDaily        roll over when the day changes
+     * @param maxArchiveFiles    number of rolled over files to keep; 0 to just delete the current file when rolling over
+     * @param isCompressArchives true to gzip rolled over files
+     * @param timestampFormatter formats the time at the start of each line
+     */
+    LogFileWriter(File logFile, long maxFileSize, boolean isRollDaily, int maxArchiveFiles, boolean isCompressArchives, TimestampFormatter timestampFormatter) {
+        this(logFile, maxFileSize, isRollDaily, maxArchiveFiles, isCompressArchives, timestampFormatter, LogFileFormat.TEXT, false, false);
+    }
+
+    /**
+     * @param format                   text lines, binary records or JSON lines (timestampFormatter is only used for text
+     *                                 files)
+     * @param isIndexEnabled           true to keep an index next to the file
+     * @param isStackTraceDedupEnabled true to write repeated stack traces as a reference (text and binary files)
+     */
+    LogFileWriter(File logFile, long maxFileSize, boolean isRollDaily, int maxArchiveFiles, boolean isCompressArchives, TimestampFormatter timestampFormatter,
+                  LogFileFormat format, boolean isIndexEnabled, boolean isStackTraceDedupEnabled) {
+        this.binaryEncoder = format == LogFileFormat.BINARY ? new BinaryLogEncoder() : null;
+        this.jsonEncoder = format == LogFileFormat.JSON ? new JsonLogEncoder() : null;
+        // index/query only understand text and binary files
+        this.indexWriter = isIndexEnabled && format != LogFileFormat.JSON ? new LogIndexWriter(LogFileIndex.getIndexFile(logFile), LogIndexWriter.BLOCK_SIZE) : null;
+        // each JSON line stands on its own
+        this.writtenTraces = isStackTraceDedupEnabled && format != LogFileFormat.JSON ? new HashMap<StackTraceCache.Trace, int[]>() : null;
+        this.logFile = logFile;
+        this.timestampFormatter = timestampFormatter;
+        this.maxFileSize = maxFileSize;
+        this.isRollDaily = isRollDaily;
+        this.maxArchiveFiles = maxArchiveFiles;
+        this.isCompressArchives = isCompressArchives;
+    }
+
+    synchronized void setMetricsRecorder(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    File getFile() {
+        return logFile;
+    }
+
+    /**
+     * format and write a single line including its MDC context and key-value pairs
+     * NOTE: not flushed until {@link #flush()} is called
+     */
+    void write(LogRecord record) throws IOException {
+        write(record.timeMs, record.logLevel, record.tag, record.getContextText(), record.message, record);
+    }
+
+    void write(long timeMs, int logLevel, String tag, String message) throws IOException {
+        write(timeMs, logLevel, tag, null, message);
+    }
+
+    /**
+     * @param context MDC context ("[key=value]") to write before the message; null or empty for none
+     */
+    void write(long timeMs, int logLevel, String tag, String context, String message) throws IOException {
+        write(timeMs, logLevel, tag, context, message, null);
+    }
+
+    /**
+     * @param record whole record for JSON files; null to build one from the other params
+     */
+    private synchronized void write(long timeMs, int logLevel, String tag, String context, String message, LogRecord record) throws IOException {
+        if (isClosed) {
+            throw new IOException("closed: " + logFile.getAbsolutePath());
+        }
+        try {
+            if (out == null) {
+                open(timeMs);
+            } else if (indexWriter != null && indexWriter.isBlockFull()) {
+                startBlock(timeMs);
+            }
+
+            String fileMessage = getFileMessage(message, record);
+            ByteBuffer bytes = encodeRecord(timeMs, logLevel, tag, context, fileMessage, record);
+
+            if ((maxFileSize > 0 && fileSize > 0 && fileSize + bytes.remaining() > maxFileSize) || (isRollDaily && timeMs >= nextRollOverMs)) {
+                rollOver(timeMs);
+                if (binaryEncoder != null || fileMessage != message) {
+                    // record was encoded against the old file's tag dictionary / stack traces
+                    fileMessage = getFileMessage(message, record);
+                    bytes = encodeRecord(timeMs, logLevel, tag, context, fileMessage, record);
+                }
+            }
+
+            out.write(bytes.array(), 0, bytes.limit());
+            fileSize += bytes.limit();
+            if (metrics != null) {
+                metrics.onFileWrite(bytes.limit());
+            }
+            if (indexWriter != null) {
+                indexWriter.add(timeMs, logLevel, tag);
+            }
+        } catch (IOException e) {
+            // don't keep writing to a stream that failed (ie: storage was full, file was deleted) - the next write
+            // opens the file again
+            closeFile();
+            throw e;
+        }
+    }
+
+    /**
+     * @return message to write - a stack trace that's already in this file is replaced by a reference to it
+     */
+    private String getFileMessage(String message, LogRecord record) {
+        StackTraceCache.Trace trace = record != null ? record.stackTrace : null;
+        if (writtenTraces == null || trace == null || trace.id == 0 || trace.text.isEmpty()) {
+            return message;
+        }
+        // message is "text\n" + trace
+        int textLength = message.length() - trace.text.length();
+        if (textLength < 0) {
+            return message;
+        }
+        int[] count = writtenTraces.get(trace);
+        if (count == null) {
+            if (writtenTraces.size() >= MAX_WRITTEN_TRACES) {
+                writtenTraces.clear();
+            }
+            writtenTraces.put(trace, new int[]{1});
+            StringBuilder sb = new StringBuilder(message.length() + 24).append(message, 0, textLength);
+            StackTraceDecoder.appendDefinition(sb, trace.id, trace.getLineCount());
+            return sb.append(trace.text).toString();
+        }
+        count[0]++;
+        StringBuilder sb = new StringBuilder(textLength + 24).append(message, 0, textLength);
+        StackTraceDecoder.appendReference(sb, trace.id, count[0]);
+        if (trace.text.charAt(trace.text.length() - 1) == '\n') {
+            // same line breaks as the full trace
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+            if (indexWriter != null) {
+                try {
+                    indexWriter.flush();
+                } catch (IOException e) {
+                    onIndexError("flush", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * close file for good - any later write fails with an IOException
+     */
+    synchronized void close() {
+        isClosed = true;
+        closeFile();
+    }
+
+    /**
+     * close the current file; it will be re-opened on the next write (roll over)
+     */
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        if (indexWriter != null) {
+            try {
+                indexWriter.endBlock(fileSize);
+                indexWriter.close();
+            } catch (IOException e) {
+                onIndexError("close", e);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(TAG, "close: " + logFile.getAbsolutePath(), e);
+        }
+        out = null;
+    }
+
+    private void open(long timeMs) throws IOException {
+        if (!isLeftoversChecked) {
+            isLeftoversChecked = true;
+            archiveLeftovers();
+        }
+        // only stat the file once when it's opened - after that the size is tracked as lines are written
+        fileSize = logFile.length();
+        nextRollOverMs = getNextDay(fileSize > 0 ? logFile.lastModified() : timeMs);
+        out = new BufferedOutputStream(new FileOutputStream(logFile, true), BUFFER_SIZE);
+        if (writtenTraces != null) {
+            // every file has the full version of the stack traces it references
+            writtenTraces.clear();
+        }
+        if (indexWriter != null) {
+            try {
+                indexWriter.open(fileSize);
+                indexWriter.startBlock(fileSize);
+            } catch (IOException e) {
+                onIndexError("open", e);
+            }
+        }
+        if (binaryEncoder != null) {
+            writeSegmentHeader(timeMs);
+        }
+    }
+
+    /**
+     * end the current index block and start a new one
+     */
+    private void startBlock(long timeMs) throws IOException {
+        try {
+            indexWriter.endBlock(fileSize);
+        } catch (IOException e) {
+            onIndexError("startBlock", e);
+            return;
+        }
+        indexWriter.startBlock(fileSize);
+        if (binaryEncoder != null) {
+            // every block starts a new segment so it can be decoded without reading the blocks before it
+            writeSegmentHeader(timeMs);
+        }
+    }
+
+    private void writeSegmentHeader(long timeMs) throws IOException {
+        ByteBuffer header = binaryEncoder.startSegment(timeMs);
+        out.write(header.array(), 0, header.limit());
+        fileSize += header.limit();
+        if (metrics != null) {
+            metrics.onFileWrite(header.limit());
+        }
+    }
+
+    /**
+     * index is optional - stop indexing but keep logging
+     */
+    private void onIndexError(String method, IOException e) {
+        Log.e(TAG, method + ": unable to write index for: " + logFile.getAbsolutePath(), e);
+        if (indexWriter != null) {
+            try {
+                indexWriter.close();
+            } catch (IOException ignored) {
+            }
+            LogFileIndex.getIndexFile(logFile).delete();
+            indexWriter = null;
+        }
+    }
+
+    private ByteBuffer encodeRecord(long timeMs, int logLevel, String tag, String context, String message, LogRecord record) {
+        if (binaryEncoder != null) {
+            return binaryEncoder.encode(timeMs, logLevel, tag, context, message);
+        } else if (jsonEncoder != null) {
+            return jsonEncoder.encode(record != null ? record : new LogRecord(timeMs, logLevel, tag, message));
+        }
+        line.setLength(0);
+        appendLine(line, timestampFormatter, timeMs, logLevel, tag, context, message);
+        return encode(line);
+    }
+
+    /**
+     * append a text log line: "timestamp L  tag [context] message\n"
+     */
+    static void appendLine(StringBuilder line, TimestampFormatter timestampFormatter, long timeMs, int logLevel, String tag, String context, String message) {
+        timestampFormatter.format(timeMs, line);
+        line.append(' ')
+                .append(getLevelChar(logLevel))
+                .append("  ")
+                .append(tag)
+                .append(' ');
+        if (context != null && !context.isEmpty()) {
+            line.append(context).append(' ');
+        }
+        line.append(message).append('\n');
+    }
+
+    /**
+     * @return Log.LEVEL for a level char written by {@link #getLevelChar(int)}; -1 if it isn't one
+     */
+    static int parseLevelChar(char levelChar) {
+        switch (levelChar) {
+            case 'D':
+                return Log.DEBUG;
+            case 'V':
+                return Log.VERBOSE;
+            case 'I':
+                return Log.INFO;
+            case 'E':
+                return Log.ERROR;
+            default:
+                return Character.digit(levelChar, 10);
+        }
+    }
+
+    static char getLevelChar(int logLevel) {
+        switch (logLevel) {
+            case Log.DEBUG:
+                return 'D';
+            case Log.VERBOSE:
+                return 'V';
+            case Log.INFO:
+                return 'I';
+            case Log.ERROR:
+                return 'E';
+            default:
+                return Character.forDigit(logLevel, 10);
+        }
+    }
+
+    /**
+     * start a new file; only a rename happens here - everything else is done on the archive thread
+     */
+    private void rollOver(long timeMs) throws IOException {
+        closeFile();
+        if (metrics != null) {
+            metrics.onFileRollOver();
+        }
+
+        File indexFile = LogFileIndex.getIndexFile(logFile);
+        if (maxArchiveFiles <= 0) {
+            if (!logFile.delete()) {
+                Log.w(TAG, "rollOver: unable to delete: " + logFile.getAbsolutePath());
+            }
+            indexFile.delete();
+        } else {
+            final File rolledFile = newRolledFile(timeMs);
+            if (indexFile.exists()) {
+                indexFile.renameTo(LogFileIndex.getIndexFile(rolledFile));
+            }
+            if (logFile.renameTo(rolledFile)) {
+                getArchiveExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        archive(rolledFile);
+                    }
+                });
+            } else {
+                Log.w(TAG, "rollOver: unable to rename: " + logFile.getAbsolutePath());
+            }
+        }
+
+        open(timeMs);
+        nextRollOverMs = getNextDay(timeMs);
+    }
+
+    private File newRolledFile(long timeMs) {
+        File rolledFile;
+        do {
+            rolledFile = new File(logFile.getPath() + ROLLING_INFIX + timeMs + "-" + rollOverCount.incrementAndGet());
+        } while (rolledFile.exists());
+        return rolledFile;
+    }
+
+    /**
+     * rolled over files that were never archived (the app was killed before the archive thread got to them) - archive
+     * them now (oldest first) on the archive thread, or delete them if archives aren't kept
+     */
+    private void archiveLeftovers() {
+        File dir = logFile.getAbsoluteFile().getParentFile();
+        final String prefix = logFile.getName() + ROLLING_INFIX;
+        File[] files = dir != null ? dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && !name.endsWith(LogFileIndex.EXTENSION);
+            }
+        }) : null;
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Log.w(TAG, "archiveLeftovers: " + files.length + " rolled over file(s) not archived: " + files[0].getAbsolutePath());
+        if (maxArchiveFiles <= 0) {
+            for (File file : files) {
+                file.delete();
+                LogFileIndex.getIndexFile(file).delete();
+            }
+            return;
+        }
+        // a rename keeps the time of the last write
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long time1 = file1.lastModified();
+                long time2 = file2.lastModified();
+                return time1 < time2 ? -1 : time1 > time2 ? 1 : file1.getName().compareTo(file2.getName());
+            }
+        });
+        for (final File file : files) {
+            getArchiveExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    archive(file);
+                }
+            });
+        }
+    }
+
+    /**
+     * shift existing archives up by one (dropping the oldest) and move rolled over file into the "name.1" slot
+     * - runs on archive thread
+     */
+    private void archive(File rolledFile) {
+        if (!rolledFile.exists()) {
+            // already archived (ie: queued by a roll over and again as a leftover by another writer of the same file)
+            return;
+        }
+        deleteArchive(maxArchiveFiles);
+        for (int i = maxArchiveFiles - 1; i >= 1; i--) {
+            File archive = findArchive(i);
+            if (archive != null) {
+                String extension = archive.getName().endsWith(GZIP_EXTENSION) ? GZIP_EXTENSION : "";
+                File newArchive = new File(logFile.getPath() + "." + (i + 1) + extension);
+                archive.renameTo(newArchive);
+                File archiveIndex = LogFileIndex.getIndexFile(archive);
+                if (archiveIndex.exists()) {
+                    archiveIndex.renameTo(LogFileIndex.getIndexFile(newArchive));
+                }
+            }
+        }
+
+        // index (if any) covers the uncompressed file - same index for "name.1" and "name.1.gz"
+        File rolledIndex = LogFileIndex.getIndexFile(rolledFile);
+        if (rolledIndex.exists()) {
+            rolledIndex.renameTo(LogFileIndex.getIndexFile(new File(logFile.getPath() + ".1")));
+        }
+
+        if (isCompressArchives) {
+            File gzipFile = new File(logFile.getPath() + ".1" + GZIP_EXTENSION);
+            if (gzip(rolledFile, gzipFile)) {
+                rolledFile.delete();
+                return;
+            }
+            gzipFile.delete();
+        }
+        rolledFile.renameTo(new File(logFile.getPath() + ".1"));
+    }
+
+    private File findArchive(int index) {
+        File archive = new File(logFile.getPath() + "." + index + GZIP_EXTENSION);
+        if (archive.exists()) {
+            return archive;
+        }
+        archive = new File(logFile.getPath() + "." + index);
+        return archive.exists() ? archive : null;
+    }
+
+    private void deleteArchive(int index) {
+        LogFileIndex.getIndexFile(new File(logFile.getPath() + "." + index)).delete();
+        File archive;
+        while ((archive = findArchive(index)) != null) {
+            if (!archive.delete()) {
+                Log.w(TAG, "deleteArchive: unable to delete: " + archive.getAbsolutePath());
+                return;
+            }
+        }
+    }
+
+    private static boolean gzip(File src, File dest) {
+        InputStream in = null;
+        OutputStream gzipOut = null;
+        try {
+            in = new FileInputStream(src);
+            gzipOut = new GZIPOutputStream(new FileOutputStream(dest), BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                gzipOut.write(buffer, 0, count);
+            }
+            gzipOut.close();
+            gzipOut = null;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "gzip: unable to compress: " + src.getAbsolutePath(), e);
+            return false;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(gzipOut);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private ByteBuffer encode(CharSequence chars) {
+        encoder.reset();
+        lineBytes.clear();
+        CharBuffer in = CharBuffer.wrap(chars);
+        while (true) {
+            CoderResult result = encoder.encode(in, lineBytes, true);
+            if (result.isOverflow()) {
+                lineBytes = grow(lineBytes);
+                continue;
+            }
+            result = encoder.flush(lineBytes);
+            if (result.isOverflow()) {
+                lineBytes = grow(lineBytes);
+                continue;
+            }
+            break;
+        }
+        lineBytes.flip();
+        return lineBytes;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static long getNextDay(long timeMs) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMs);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private static synchronized ExecutorService getArchiveExecutor() {
+        if (archiveExecutor == null) {
+            archiveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AndroidLogger-archive");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return archiveExecutor;
+    }
+}
@@ -0,0 +1,314 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * replaces "{}" placeholders with arguments - same output as slf4j's MessageFormatter but without the garbage
+ * - each thread re-uses a single buffer; a String is only created once the message is handed off to logcat/file
+ * - boxed primitives, Strings and CharSequences are appended without calling toString()
+ * - a Throwable passed as the last argument is logged as the exception (not as a "{}" argument)
+ * - stack traces are rendered through {@link StackTraceCache} (if set)
+ * <p>
+ * usage: LogFormatter.obtain().format(pattern, arg).finish()
+ */
+class LogFormatter {
+    private static final char DELIM_START = '{';
+    private static final String DELIM_STR = "{}";
+    private static final char ESCAPE_CHAR = '\\';
+
+    private static final int INITIAL_CAPACITY = 256;
+    // don't hang on to huge buffers after logging a large message
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<LogFormatter> threadFormatter = new ThreadLocal<LogFormatter>() {
+        @Override
+        protected LogFormatter initialValue() {
+            return new LogFormatter();
+        }
+    };
+
+    // set by AndroidLoggerFactory.setMetricsEnabled() - formatting time is only measured when metrics are on
+    private static volatile boolean isTimingEnabled;
+    // set by AndroidLoggerFactory.setStackTraceCacheSize(); null to render every stack trace
+    private static volatile StackTraceCache stackTraceCache;
+
+    private StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+    private Throwable throwable;
+    private StackTraceCache.Trace stackTrace;
+    // format string (or message) of the log statement - identifies it for CallerLocator; null if not known
+    private String callSite;
+    private boolean isInUse;
+    private long startNanos;
+
+    static void setTimingEnabled(boolean isEnabled) {
+        isTimingEnabled = isEnabled;
+    }
+
+    static void setStackTraceCache(StackTraceCache cache) {
+        stackTraceCache = cache;
+    }
+
+    /**
+     * @return this thread's formatter, or a new one if it's already in use (ie: an argument's toString() is logging)
+     */
+    static LogFormatter obtain() {
+        LogFormatter formatter = threadFormatter.get();
+        if (formatter.isInUse) {
+            formatter = new LogFormatter();
+        }
+        formatter.isInUse = true;
+        formatter.startNanos = isTimingEnabled ? System.nanoTime() : 0;
+        return formatter;
+    }
+
+    LogFormatter format(String pattern, Object arg) {
+        callSite = pattern;
+        try {
+            if (arg instanceof Throwable) {
+                throwable = (Throwable) arg;
+                return append(pattern);
+            }
+            if (pattern == null) {
+                return append(null);
+            }
+            int i = appendArgument(pattern, 0, arg);
+            buffer.append(pattern, i, pattern.length());
+            return this;
+        } catch (RuntimeException | Error e) {
+            // this formatter is never finished - don't leave it in use for the rest of the thread's life
+            release();
+            throw e;
+        }
+    }
+
+    LogFormatter format(String pattern, Object arg1, Object arg2) {
+        callSite = pattern;
+        try {
+            if (pattern == null) {
+                if (arg2 instanceof Throwable) {
+                    throwable = (Throwable) arg2;
+                }
+                return append(null);
+            }
+            // like MessageFormatter: a Throwable as the last argument is the exception; arg1 is always an argument
+            int i = appendArgument(pattern, 0, arg1);
+            if (arg2 instanceof Throwable) {
+                throwable = (Throwable) arg2;
+            } else {
+                i = appendArgument(pattern, i, arg2);
+            }
+            buffer.append(pattern, i, pattern.length());
+            return this;
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    LogFormatter format(String pattern, Object[] args) {
+        callSite = pattern;
+        try {
+            if (pattern == null) {
+                return append(null);
+            }
+            int count = args != null ? args.length : 0;
+            if (count > 0 && args[count - 1] instanceof Throwable) {
+                throwable = (Throwable) args[count - 1];
+                count--;
+            }
+            int i = 0;
+            for (int a = 0; a < count; a++) {
+                i = appendArgument(pattern, i, args[a]);
+            }
+            buffer.append(pattern, i, pattern.length());
+            return this;
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * append plain message (no placeholders)
+     */
+    LogFormatter append(String message) {
+        buffer.append(message);
+        return this;
+    }
+
+    LogFormatter setThrowable(Throwable throwable) {
+        this.throwable = throwable;
+        return this;
+    }
+
+    /**
+     * @param callSite message of a log statement without a format (ie: log.warn("failed", e))
+     */
+    LogFormatter setCallSite(String callSite) {
+        this.callSite = callSite;
+        return this;
+    }
+
+    /**
+     * @return format string (or message) identifying the log statement; null if not known (ie: a supplied message)
+     */
+    String getCallSite() {
+        return callSite;
+    }
+
+    /**
+     * @return System.nanoTime() when this formatter was obtained; 0 if formatting isn't being timed
+     */
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return rendered stack trace of throwable; null if there isn't one
+     */
+    StackTraceCache.Trace getStackTrace() {
+        if (stackTrace == null && throwable != null) {
+            StackTraceCache cache = stackTraceCache;
+            try {
+                stackTrace = cache != null ? cache.get(throwable) : StackTraceCache.render(throwable);
+            } catch (RuntimeException | Error e) {
+                // ie: the throwable's toString() failed
+                release();
+                throw e;
+            }
+        }
+        return stackTrace;
+    }
+
+    /**
+     * @return formatted message including stack trace of throwable (if set); formatter can't be used after this
+     */
+    String finish() {
+        try {
+            StackTraceCache.Trace trace = getStackTrace();
+            if (trace != null) {
+                buffer.append('\n').append(trace.text);
+            }
+            return buffer.toString();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        throwable = null;
+        stackTrace = null;
+        callSite = null;
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            buffer.setLength(0);
+        }
+        isInUse = false;
+    }
+
+    /**
+     * copy pattern up to the next placeholder and replace it with arg
+     *
+     * @return index in pattern to continue from
+     */
+    private int appendArgument(String pattern, int start, Object arg) {
+        int i = start;
+        while (true) {
+            int j = pattern.indexOf(DELIM_STR, i);
+            if (j == -1) {
+                // no more placeholders - remaining arguments are ignored
+                return i;
+            }
+            if (j > 0 && pattern.charAt(j - 1) == ESCAPE_CHAR) {
+                if (j > 1 && pattern.charAt(j - 2) == ESCAPE_CHAR) {
+                    // "\\{}" - escaped escape char; placeholder is used
+                    buffer.append(pattern, i, j - 1);
+                    appendObject(arg, null);
+                    return j + 2;
+                }
+                // "\{}" - placeholder is escaped; keep looking for one to use this argument
+                buffer.append(pattern, i, j - 1).append(DELIM_START);
+                i = j + 1;
+                continue;
+            }
+            buffer.append(pattern, i, j);
+            appendObject(arg, null);
+            return j + 2;
+        }
+    }
+
+    private void appendObject(Object o, Set<Object[]> seen) {
+        if (o == null) {
+            buffer.append("null");
+        } else if (o instanceof String) {
+            buffer.append((String) o);
+        } else if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+            buffer.append(((Number) o).longValue());
+        } else if (o instanceof Double) {
+            buffer.append(((Double) o).doubleValue());
+        } else if (o instanceof Float) {
+            buffer.append(((Float) o).floatValue());
+        } else if (o instanceof Boolean) {
+            buffer.append(((Boolean) o).booleanValue());
+        } else if (o instanceof Character) {
+            buffer.append(((Character) o).charValue());
+        } else if (o.getClass().isArray()) {
+            appendArray(o, seen);
+        } else {
+            try {
+                if (o instanceof CharSequence) {
+                    buffer.append((CharSequence) o);
+                } else {
+                    buffer.append(o.toString());
+                }
+            } catch (Throwable t) {
+                Log.e("LogFormatter", "failed toString() on object of type [" + o.getClass().getName() + "]", t);
+                buffer.append("[FAILED toString()]");
+            }
+        }
+    }
+
+    private void appendArray(Object o, Set<Object[]> seen) {
+        if (o instanceof boolean[]) {
+            buffer.append(Arrays.toString((boolean[]) o));
+        } else if (o instanceof byte[]) {
+            buffer.append(Arrays.toString((byte[]) o));
+        } else if (o instanceof char[]) {
+            buffer.append(Arrays.toString((char[]) o));
+        } else if (o instanceof short[]) {
+            buffer.append(Arrays.toString((short[]) o));
+        } else if (o instanceof int[]) {
+            buffer.append(Arrays.toString((int[]) o));
+        } else if (o instanceof long[]) {
+            buffer.append(Arrays.toString((long[]) o));
+        } else if (o instanceof float[]) {
+            buffer.append(Arrays.toString((float[]) o));
+        } else if (o instanceof double[]) {
+            buffer.append(Arrays.toString((double[]) o));
+        } else {
+            Object[] array = (Object[]) o;
+            if (seen == null) {
+                seen = new HashSet<>();
+            }
+            if (!seen.add(array)) {
+                // array contains itself
+                buffer.append("[...]");
+                return;
+            }
+            buffer.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    buffer.append(", ");
+                }
+                appendObject(array[i], seen);
+            }
+            buffer.append(']');
+            seen.remove(array);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.jp.androidlogger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * appends entries to a log file's index (see {@link LogFileIndex}) as records are written
+ */
+class LogIndexWriter {
+    // records per block
+    static final int BLOCK_SIZE = 1000;
+
+    private final File indexFile;
+    private final int blockSize;
+    private DataOutputStream out;
+
+    // -- current block --
+    private final LogFileIndex.Entry block = new LogFileIndex.Entry();
+    private int count;
+
+    LogIndexWriter(File indexFile, int blockSize) {
+        this.indexFile = indexFile;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * open index for appending; anything in the log file the index doesn't cover (ie: written before indexing was
+     * enabled) is added as a block with unknown contents which queries always read
+     *
+     * @param logFileSize current size of the log file
+     */
+    void open(long logFileSize) throws IOException {
+        List<LogFileIndex.Entry> entries = LogFileIndex.read(indexFile);
+        long indexedEnd = 0;
+        if (entries != null && !entries.isEmpty()) {
+            indexedEnd = entries.get(entries.size() - 1).endOffset;
+        }
+        // start over if the index is missing/corrupt or doesn't belong to this file (ie: file was deleted)
+        boolean isNew = entries == null || indexedEnd > logFileSize;
+        if (isNew) {
+            indexFile.delete();
+            indexedEnd = 0;
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, !isNew), 4 * 1024));
+        if (isNew) {
+            LogFileIndex.writeHeader(out);
+        }
+        if (logFileSize > indexedEnd) {
+            LogFileIndex.Entry unknown = new LogFileIndex.Entry();
+            unknown.startOffset = indexedEnd;
+            unknown.endOffset = logFileSize;
+            unknown.minTimeMs = Long.MIN_VALUE;
+            unknown.maxTimeMs = Long.MAX_VALUE;
+            unknown.tagMask = -1;
+            unknown.levelMask = -1;
+            LogFileIndex.writeEntry(out, unknown);
+        }
+        count = 0;
+    }
+
+    /**
+     * @param offset log file offset of the first record in the block
+     */
+    void startBlock(long offset) {
+        block.startOffset = offset;
+        block.minTimeMs = Long.MAX_VALUE;
+        block.maxTimeMs = Long.MIN_VALUE;
+        block.tagMask = 0;
+        block.levelMask = 0;
+        count = 0;
+    }
+
+    void add(long timeMs, int logLevel, String tag) {
+        block.minTimeMs = Math.min(block.minTimeMs, timeMs);
+        block.maxTimeMs = Math.max(block.maxTimeMs, timeMs);
+        block.tagMask |= LogFileIndex.getTagBit(tag != null ? tag : "");
+        block.levelMask |= LogFileIndex.getLevelBit(logLevel);
+        count++;
+    }
+
+    boolean isBlockFull() {
+        return count >= blockSize;
+    }
+
+    /**
+     * write entry for the current block (if it has any records)
+     *
+     * @param offset log file offset just past the last record in the block
+     */
+    void endBlock(long offset) throws IOException {
+        if (count == 0 || out == null) {
+            return;
+        }
+        block.endOffset = offset;
+        LogFileIndex.writeEntry(out, block);
+        count = 0;
+    }
+
+    void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
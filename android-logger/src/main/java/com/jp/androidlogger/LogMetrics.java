@@ -0,0 +1,232 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * snapshot of what logging has cost so far - see {@link AndroidLoggerFactory#getMetrics()}
+ * - counts are totals since metrics were enabled (or since the factory was created for the file/queue values); take 2
+ * snapshots and compare them to get a rate
+ */
+public class LogMetrics {
+    private static final String[] LEVEL_NAMES = {"", "", "V", "D", "I", "W", "E", "A"};
+    private static final int LEVEL_COUNT = LEVEL_NAMES.length;
+
+    private final long timeMs;
+    // logger name -> records logged per level (index = Log.LEVEL)
+    private final Map<String, long[]> loggerRecordCounts;
+    private final long[] recordCounts = new long[LEVEL_COUNT];
+    private final Latency formatTime;
+    // sink class name -> time spent in LogSink.write()
+    private final Map<String, Latency> sinkWriteTimes;
+    private final long fileBytesWritten;
+    private final long fileRollOverCount;
+    private final int fileQueueSize;
+    private final int logcatQueueSize;
+    private final long droppedRecordCount;
+    private final long suppressedRecordCount;
+
+    LogMetrics(long timeMs, Map<String, long[]> loggerRecordCounts, Latency formatTime, Map<String, Latency> sinkWriteTimes, long fileBytesWritten,
+               long fileRollOverCount, int fileQueueSize, int logcatQueueSize, long droppedRecordCount, long suppressedRecordCount) {
+        this.timeMs = timeMs;
+        this.loggerRecordCounts = Collections.unmodifiableMap(new TreeMap<>(loggerRecordCounts));
+        this.formatTime = formatTime;
+        this.sinkWriteTimes = Collections.unmodifiableMap(new TreeMap<>(sinkWriteTimes));
+        this.fileBytesWritten = fileBytesWritten;
+        this.fileRollOverCount = fileRollOverCount;
+        this.fileQueueSize = fileQueueSize;
+        this.logcatQueueSize = logcatQueueSize;
+        this.droppedRecordCount = droppedRecordCount;
+        this.suppressedRecordCount = suppressedRecordCount;
+
+        for (long[] counts : loggerRecordCounts.values()) {
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                recordCounts[level] += counts[level];
+            }
+        }
+    }
+
+    /**
+     * @return time the snapshot was taken (System.currentTimeMillis())
+     */
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    /**
+     * @return number of records logged at this level by all loggers
+     */
+    public long getRecordCount(int logLevel) {
+        return logLevel >= 0 && logLevel < LEVEL_COUNT ? recordCounts[logLevel] : 0;
+    }
+
+    /**
+     * @return number of records logged at this level by one logger
+     */
+    public long getRecordCount(String loggerName, int logLevel) {
+        long[] counts = loggerRecordCounts.get(loggerName);
+        return counts != null && logLevel >= 0 && logLevel < LEVEL_COUNT ? counts[logLevel] : 0;
+    }
+
+    /**
+     * @return names of loggers that have logged something (sorted)
+     */
+    public Set<String> getLoggerNames() {
+        return loggerRecordCounts.keySet();
+    }
+
+    /**
+     * @return time spent formatting messages ("{}" arguments, stack traces)
+     */
+    public Latency getFormatTime() {
+        return formatTime;
+    }
+
+    /**
+     * @return time spent in LogSink.write() per sink class (ie: "LogcatSink"); for async sinks this is the time to queue
+     * the record
+     */
+    public Map<String, Latency> getSinkWriteTimes() {
+        return sinkWriteTimes;
+    }
+
+    /**
+     * @return bytes written to the log file (including rolled over files)
+     */
+    public long getFileBytesWritten() {
+        return fileBytesWritten;
+    }
+
+    /**
+     * @return number of times the log file was rolled over
+     */
+    public long getFileRollOverCount() {
+        return fileRollOverCount;
+    }
+
+    /**
+     * @return records waiting to be written by the async file writer
+     */
+    public int getFileQueueSize() {
+        return fileQueueSize;
+    }
+
+    /**
+     * @return records waiting to be written by the async logcat writer
+     */
+    public int getLogcatQueueSize() {
+        return logcatQueueSize;
+    }
+
+    /**
+     * @see AndroidLoggerFactory#getDroppedRecordCount()
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount;
+    }
+
+    /**
+     * @see AndroidLoggerFactory#getSuppressedRecordCount()
+     */
+    public long getSuppressedRecordCount() {
+        return suppressedRecordCount;
+    }
+
+    /**
+     * @return multi-line text version of this snapshot (as written by {@link AndroidLoggerFactory#setMetricsDump(java.io.File, long)})
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("records:");
+        appendLevelCounts(sb, recordCounts);
+        sb.append('\n');
+        sb.append("format: ").append(formatTime).append('\n');
+        for (Map.Entry<String, Latency> entry : sinkWriteTimes.entrySet()) {
+            sb.append("sink ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        sb.append("file: bytes=").append(fileBytesWritten)
+                .append(" rollOvers=").append(fileRollOverCount)
+                .append(" queue=").append(fileQueueSize).append('\n');
+        sb.append("logcat: queue=").append(logcatQueueSize).append('\n');
+        sb.append("dropped=").append(droppedRecordCount)
+                .append(" suppressed=").append(suppressedRecordCount).append('\n');
+        for (Map.Entry<String, long[]> entry : loggerRecordCounts.entrySet()) {
+            sb.append("logger ").append(entry.getKey()).append(':');
+            appendLevelCounts(sb, entry.getValue());
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendLevelCounts(StringBuilder sb, long[] counts) {
+        for (int level = Log.VERBOSE; level < LEVEL_COUNT; level++) {
+            if (counts[level] > 0) {
+                sb.append(' ').append(LEVEL_NAMES[level]).append('=').append(counts[level]);
+            }
+        }
+    }
+
+    /**
+     * distribution of a duration; percentiles are accurate to within 25%
+     */
+    public static class Latency {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] bucketCounts;
+
+        Latency(long count, long totalNanos, long maxNanos, long[] bucketCounts) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.bucketCounts = bucketCounts;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param percentile 0 to 100 (ie: 99.9)
+         * @return value that this percent of durations are at or below
+         */
+        public long getPercentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100));
+            long seen = 0;
+            for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+                seen += bucketCounts[bucket];
+                if (seen >= rank) {
+                    return Math.min(LatencyHistogram.getBucketMax(bucket), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus", count, getMeanNanos() / 1000.0,
+                    getPercentileNanos(50) / 1000.0, getPercentileNanos(90) / 1000.0, getPercentileNanos(99) / 1000.0, maxNanos / 1000.0);
+        }
+    }
+}
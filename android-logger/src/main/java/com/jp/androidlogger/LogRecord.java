@@ -0,0 +1,168 @@
+package com.jp.androidlogger;
+
+import org.slf4j.Marker;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * single log line captured at the time of the log() call
+ * - message is formatted once and the same record is handed to every {@link LogSink}
+ */
+public class LogRecord {
+    final long timeMs;
+    final int logLevel;
+    final String tag;
+    final String message;
+    final MdcSnapshot mdc;
+    final Marker marker;
+    // bits of the configured markers matched by marker (see AndroidLoggerFactory.getMarkerMask())
+    final long markerMask;
+    // null if not known
+    final String loggerName;
+    final String threadName;
+    // key, value, key, value.. from LoggingEventBuilder.addKeyValue(); null if none
+    final Object[] keyValues;
+    // rendered stack trace at the end of message (see StackTraceCache); null if no throwable was logged
+    final StackTraceCache.Trace stackTrace;
+    // code that called the logger (see AndroidLoggerFactory.setCallerLocationEnabled()); null if not captured
+    final CallerLocator.Location callerLocation;
+    // "key=value key2=value2" - built on first use
+    private String keyValueText;
+
+    public LogRecord(long timeMs, int logLevel, String tag, String message) {
+        this(timeMs, logLevel, tag, message, MdcSnapshot.EMPTY, null, 0, null, null, null, null, null);
+    }
+
+    LogRecord(long timeMs, int logLevel, String tag, String message, MdcSnapshot mdc, Marker marker, long markerMask, String loggerName, String threadName,
+              Object[] keyValues, StackTraceCache.Trace stackTrace, CallerLocator.Location callerLocation) {
+        this.timeMs = timeMs;
+        this.logLevel = logLevel;
+        this.tag = tag;
+        this.message = message;
+        this.mdc = mdc;
+        this.marker = marker;
+        this.markerMask = markerMask;
+        this.loggerName = loggerName;
+        this.threadName = threadName;
+        this.keyValues = keyValues;
+        this.stackTrace = stackTrace;
+        this.callerLocation = callerLocation;
+    }
+
+    /**
+     * @return time of the log() call (System.currentTimeMillis())
+     */
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    /**
+     * @return Log.LEVEL (Log.VERBOSE..Log.ERROR)
+     */
+    public int getLogLevel() {
+        return logLevel;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return formatted message, including stack trace if a throwable was logged
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return MDC context of the logging thread at the time of the log() call (read-only; empty if none)
+     */
+    public Map<String, String> getMdc() {
+        return mdc.map;
+    }
+
+    /**
+     * @return marker passed to the log call; null if none
+     */
+    public Marker getMarker() {
+        return marker;
+    }
+
+    /**
+     * @return full name of the logger (usually the class name); null if not known
+     */
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    /**
+     * @return name of the thread that logged; null if not known
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return class, method, file and line that called the logger; null unless
+     * {@link AndroidLoggerFactory#setCallerLocationEnabled(boolean)} is on
+     */
+    public StackTraceElement getCallerLocation() {
+        return callerLocation != null ? callerLocation.element : null;
+    }
+
+    /**
+     * @return key-value pairs added with {@link LoggingEventBuilder#addKeyValue(String, Object)} (in the order added;
+     * empty if none)
+     */
+    public Map<String, Object> getKeyValues() {
+        if (keyValues == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return key-value pairs as "key=value key2=value2" for text output; empty if none
+     */
+    String getKeyValueText() {
+        // benign race - worst case 2 threads build the same string
+        String text = keyValueText;
+        if (text == null) {
+            if (keyValues == null) {
+                text = "";
+            } else {
+                StringBuilder sb = new StringBuilder(keyValues.length * 12);
+                for (int i = 0; i < keyValues.length; i += 2) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(keyValues[i]).append('=').append(keyValues[i + 1]);
+                }
+                text = sb.toString();
+            }
+            keyValueText = text;
+        }
+        return text;
+    }
+
+    /**
+     * @return caller location, MDC context and key-value pairs for text output
+     * ("com.foo.Bar.run(Bar.java:12) [mdc=x] key=value"); empty if none
+     */
+    String getContextText() {
+        String text = mdc.getText();
+        if (keyValues != null) {
+            text = text.isEmpty() ? getKeyValueText() : text + ' ' + getKeyValueText();
+        }
+        if (callerLocation != null) {
+            text = text.isEmpty() ? callerLocation.text : callerLocation.text + ' ' + text;
+        }
+        return text;
+    }
+}
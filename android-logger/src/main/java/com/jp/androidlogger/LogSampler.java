@@ -0,0 +1,160 @@
+package com.jp.androidlogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * decides which calls of a chatty logger are kept - see {@link AndroidLoggerFactory#setSampler(String, int, LogSampler)}
+ * - called after the level check and before anything is formatted; a dropped call costs the check and nothing else
+ * - {@link #oneIn(int)}: every Nth call (deterministic)
+ * - {@link #percent(double)}: random percentage of calls
+ * - {@link #byMdc(String, double)}: percentage of MDC values (ie: sessions) - every call with a kept value is logged,
+ * by every logger using it
+ * - extend to write your own; must be thread safe and cheap
+ */
+public abstract class LogSampler {
+
+    // per thread xorshift state - no contention and no locking (java.util.Random synchronizes on a shared seed)
+    private static final ThreadLocal<long[]> threadRandom = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            long seed = mix64(System.nanoTime() ^ (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L));
+            return new long[]{seed != 0 ? seed : 1};
+        }
+    };
+
+    /**
+     * @return true to log this call; false to drop it
+     */
+    public abstract boolean isSampled();
+
+    /**
+     * keep the 1st, (N+1)th, (2N+1)th.. call
+     *
+     * @param n keep 1 in n calls; 1 keeps everything
+     */
+    public static LogSampler oneIn(int n) {
+        return new OneInSampler(n);
+    }
+
+    /**
+     * keep a random percentage of calls
+     *
+     * @param percent 0 to 100 (ie: 0.5)
+     */
+    public static LogSampler percent(double percent) {
+        return new PercentSampler(percent);
+    }
+
+    /**
+     * keep every call for a percentage of the values of an MDC key - ie: log everything for 5% of sessions
+     * - a value is kept or dropped based on its hash, so the same value always gets the same answer (on every device and
+     * in every logger)
+     * - calls made without the key in the MDC are kept
+     *
+     * @param mdcKey  ie: "sessionId"
+     * @param percent 0 to 100
+     */
+    public static LogSampler byMdc(String mdcKey, double percent) {
+        return new MdcSampler(mdcKey, percent);
+    }
+
+    /**
+     * @return uniformly distributed 64 bits from the calling thread's generator
+     */
+    static long nextRandom() {
+        long[] state = threadRandom.get();
+        long x = state[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        state[0] = x;
+        return x;
+    }
+
+    /**
+     * @return percent (0..100) scaled to 0..2^bits
+     */
+    private static long getThreshold(double percent, int bits) {
+        if (percent >= 100) {
+            return 1L << bits;
+        }
+        return percent > 0 ? (long) (percent / 100 * (1L << bits)) : 0;
+    }
+
+    /**
+     * finalizer from MurmurHash3 - spreads String.hashCode() bits so similar values don't land together
+     */
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class OneInSampler extends LogSampler {
+        private final int n;
+        private final AtomicLong count = new AtomicLong();
+
+        OneInSampler(int n) {
+            this.n = Math.max(n, 1);
+        }
+
+        @Override
+        public boolean isSampled() {
+            return n == 1 || count.getAndIncrement() % n == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "oneIn(" + n + ")";
+        }
+    }
+
+    private static class PercentSampler extends LogSampler {
+        private final double percent;
+        // keep if the top 53 random bits are below this
+        private final long threshold;
+
+        PercentSampler(double percent) {
+            this.percent = percent;
+            this.threshold = getThreshold(percent, 53);
+        }
+
+        @Override
+        public boolean isSampled() {
+            return (nextRandom() >>> 11) < threshold;
+        }
+
+        @Override
+        public String toString() {
+            return "percent(" + percent + ")";
+        }
+    }
+
+    private static class MdcSampler extends LogSampler {
+        private final String mdcKey;
+        private final double percent;
+        // keep if the low 32 bits of the value's hash are below this
+        private final long threshold;
+
+        MdcSampler(String mdcKey, double percent) {
+            this.mdcKey = mdcKey;
+            this.percent = percent;
+            this.threshold = getThreshold(percent, 32);
+        }
+
+        @Override
+        public boolean isSampled() {
+            String value = AndroidMDCAdapter.getSnapshot().map.get(mdcKey);
+            // String caches its hash - only the mix is done per call
+            return value == null || (mix64(value.hashCode()) & 0xFFFFFFFFL) < threshold;
+        }
+
+        @Override
+        public String toString() {
+            return "byMdc(" + mdcKey + ", " + percent + ")";
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jp.androidlogger;
+
+/**
+ * destination for log records (logcat, file, memory, ..)
+ * - add with {@link AndroidLoggerFactory#addSink(LogSink, int, java.util.concurrent.Executor)}
+ * - every sink gets the same {@link LogRecord}; the message is only formatted once
+ */
+public interface LogSink {
+
+    /**
+     * called for every record at or above the sink's min level
+     * NOTE: called from any thread that logs unless the sink was added with an executor
+     */
+    void write(LogRecord record);
+
+    /**
+     * write anything buffered
+     */
+    void flush();
+
+    /**
+     * called when the sink is removed or on {@link AndroidLoggerFactory#shutdown()}
+     */
+    void close();
+}
@@ -0,0 +1,132 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+/**
+ * writes records to logcat (Log.v/d/i/w/e)
+ * - optionally splits long messages over multiple lines since Log.x() only logs ~4000 characters
+ * - the factory's default logcat sink is returned by {@link AndroidLoggerFactory#getLogcatSink()}
+ */
+public class LogcatSink implements LogSink {
+
+    private static final String TRUNCATED_PREFIX = "... [";
+    private static final String TRUNCATED_SUFFIX = " more characters]";
+
+    private volatile boolean isMultilineLoggingEnabled;
+    private volatile int maxCharactersPerLine = 4000;
+    private volatile int maxWrapLines = 0;
+    private volatile boolean isSplitOnNewlines;
+    private volatile boolean isMdcEnabled;
+
+    /**
+     * @see AndroidLoggerFactory#setMultilineLoggingEnabled(boolean)
+     */
+    public void setMultilineLoggingEnabled(boolean isEnabled) {
+        isMultilineLoggingEnabled = isEnabled;
+    }
+
+    /**
+     * @see AndroidLoggerFactory#setMaxCharactersPerLine(int)
+     */
+    public void setMaxCharactersPerLine(int maxCharactersPerLine) {
+        this.maxCharactersPerLine = maxCharactersPerLine;
+    }
+
+    /**
+     * @see AndroidLoggerFactory#setMaxWrapLines(int)
+     */
+    public void setMaxWrapLines(int maxWrapLines) {
+        this.maxWrapLines = maxWrapLines;
+    }
+
+    /**
+     * @see AndroidLoggerFactory#setSplitOnNewlinesEnabled(boolean)
+     */
+    public void setSplitOnNewlinesEnabled(boolean isEnabled) {
+        isSplitOnNewlines = isEnabled;
+    }
+
+    /**
+     * @see AndroidLoggerFactory#setMdcInLogcatEnabled(boolean)
+     */
+    public void setMdcEnabled(boolean isEnabled) {
+        isMdcEnabled = isEnabled;
+    }
+
+    /**
+     * logs LONG output to multiple lines if enabled
+     */
+    @Override
+    public void write(LogRecord record) {
+        String message = record.message;
+        if (record.keyValues != null) {
+            message = record.getKeyValueText() + ' ' + message;
+        }
+        if (isMdcEnabled && !record.mdc.isEmpty()) {
+            message = record.mdc.getText() + ' ' + message;
+        }
+        int maxCharactersPerLine = this.maxCharactersPerLine;
+        int length = message.length();
+        if (!isMultilineLoggingEnabled || length <= maxCharactersPerLine || maxCharactersPerLine <= 0) {
+            logLine(record.logLevel, record.tag, message);
+            return;
+        }
+
+        // split into lines by index so each line is copied out of the original message exactly once
+        int maxWrapLines = this.maxWrapLines;
+        boolean isSplitOnNewlines = this.isSplitOnNewlines;
+        int start = 0;
+        for (int line = 1; start < length; line++) {
+            int end = Math.min(start + maxCharactersPerLine, length);
+            if (end < length && maxWrapLines > 0 && line >= maxWrapLines) {
+                // out of lines - log what fits and note how much was left out; the note counts towards the line length so
+                // logcat doesn't cut it off (its length is an upper bound - the count can only get shorter)
+                int noteLength = TRUNCATED_PREFIX.length() + String.valueOf(length - start).length() + TRUNCATED_SUFFIX.length();
+                end = start + Math.max(0, maxCharactersPerLine - noteLength);
+                logLine(record.logLevel, record.tag, message.substring(start, end) + TRUNCATED_PREFIX + (length - end) + TRUNCATED_SUFFIX);
+                return;
+            }
+
+            boolean isNewline = false;
+            if (end < length && isSplitOnNewlines) {
+                int newline = message.lastIndexOf('\n', end);
+                if (newline > start) {
+                    end = newline;
+                    isNewline = true;
+                }
+            }
+
+            logLine(record.logLevel, record.tag, message.substring(start, end));
+            // newline that was split on isn't logged
+            start = isNewline ? end + 1 : end;
+        }
+    }
+
+    private static void logLine(int logLevel, String tag, String message) {
+        switch (logLevel) {
+            case Log.VERBOSE:
+                Log.v(tag, message);
+                break;
+            case Log.DEBUG:
+                Log.d(tag, message);
+                break;
+            case Log.INFO:
+                Log.i(tag, message);
+                break;
+            case Log.WARN:
+                Log.w(tag, message);
+                break;
+            case Log.ERROR:
+                Log.e(tag, message);
+                break;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
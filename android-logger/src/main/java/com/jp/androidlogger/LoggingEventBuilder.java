@@ -0,0 +1,50 @@
+package com.jp.androidlogger;
+
+import org.slf4j.Marker;
+
+/**
+ * fluent way to build a log call: log.atDebug().addArgument(() -> model.toString()).log("loaded: {}")
+ * - returned by {@link AndroidLogger#atDebug()} etc; if the level is disabled a shared no-op builder is returned, so
+ * nothing is allocated and suppliers are never called
+ * - a builder is for a single log call; don't keep it around
+ */
+public interface LoggingEventBuilder {
+
+    /**
+     * @param argument next "{}" argument
+     */
+    LoggingEventBuilder addArgument(Object argument);
+
+    /**
+     * @param argument next "{}" argument; only called if the line is logged
+     */
+    LoggingEventBuilder addArgument(Supplier<?> argument);
+
+    /**
+     * add a structured field - written as its own field in JSON files (see {@link LogFileFormat#JSON}) and as
+     * "key=value" before the message in text output
+     *
+     * @param value value; a {@link Supplier} is only called if the line is logged
+     */
+    LoggingEventBuilder addKeyValue(String key, Object value);
+
+    /**
+     * @param marker marker for this line (see {@link AndroidLoggerFactory#setMarkerLevel(String, int)})
+     */
+    LoggingEventBuilder addMarker(Marker marker);
+
+    /**
+     * @param cause exception to log with the line
+     */
+    LoggingEventBuilder setCause(Throwable cause);
+
+    /**
+     * @param format message with "{}" placeholders for the arguments
+     */
+    void log(String format);
+
+    /**
+     * @param message whole message; only called if the line is logged ("{}" placeholders aren't replaced)
+     */
+    void log(Supplier<String> message);
+}
@@ -0,0 +1,350 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * append-only binary log stored in a memory-mapped file (used as a ring buffer)
+ * - writing a line is just a copy into mapped memory; the OS writes it to disk, even if the app crashes
+ * - when the file is full the oldest lines are overwritten
+ * - use {@link #export(File, File)} to convert back to the regular text format
+ * <p>
+ * file layout:
+ * <pre>
+ * header    : magic, version, file size, tag count, write position, oldest position (64 bytes)
+ * tag table : 256 slots of [length byte][UTF-8 tag] (32 bytes each)
+ * data      : records of [length int][time long][level byte][tag id short]([tag length byte][UTF-8 tag])[UTF-8 message]
+ * </pre>
+ * positions are stored as ever-increasing byte counts so "empty" and "full" are never confused; the physical
+ * offset is DATA_START + (position % data size). Records never wrap - if a record doesn't fit before the end
+ * a 0 length marker is written and the record starts at the beginning of the data area.
+ */
+class MappedLogStore implements LogSink {
+    private static final String TAG = "MappedLogStore";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x414C4F47; // "ALOG"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_FILE_SIZE = 8;
+    private static final int HEADER_TAG_COUNT = 12;
+    private static final int HEADER_WRITE_POSITION = 16;
+    private static final int HEADER_OLDEST_POSITION = 24;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MAX_TAGS = 256;
+    private static final int TAG_SLOT_SIZE = 32;
+    private static final int TAG_TABLE_START = HEADER_SIZE;
+    private static final int DATA_START = TAG_TABLE_START + (MAX_TAGS * TAG_SLOT_SIZE);
+
+    // tag didn't fit in the tag table - stored in the record instead
+    private static final short INLINE_TAG = -1;
+
+    // length + time + level + tag id
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 2;
+    static final int MIN_FILE_SIZE = DATA_START + (16 * 1024);
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int dataSize;
+    private final int maxRecordSize;
+    private final Map<String, Short> tagToIdMap = new HashMap<>();
+
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer messageBytes;
+
+    private long writePosition;
+    private long oldestPosition;
+
+    private MappedLogStore(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.dataSize = buffer.capacity() - DATA_START;
+        // keep a single record from wiping out most of the log
+        this.maxRecordSize = dataSize / 4;
+        this.messageBytes = ByteBuffer.allocate(maxRecordSize);
+    }
+
+    /**
+     * map file for writing; existing contents are kept if the file was written by a previous run with the same size
+     *
+     * @param sizeBytes total file size (at least {@link #MIN_FILE_SIZE})
+     */
+    static MappedLogStore open(File file, int sizeBytes) throws IOException {
+        sizeBytes = Math.max(sizeBytes, MIN_FILE_SIZE);
+        MappedByteBuffer buffer = map(file, sizeBytes, FileChannel.MapMode.READ_WRITE);
+        MappedLogStore store = new MappedLogStore(file, buffer);
+        if (buffer.getInt(HEADER_MAGIC) == MAGIC && buffer.getInt(HEADER_VERSION) == VERSION && buffer.getInt(HEADER_FILE_SIZE) == sizeBytes) {
+            store.load();
+        } else {
+            store.reset();
+        }
+        return store;
+    }
+
+    private static MappedByteBuffer map(File file, int sizeBytes, FileChannel.MapMode mode) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+        try {
+            if (sizeBytes < 0) {
+                sizeBytes = (int) randomAccessFile.length();
+            }
+            // mapping stays valid after the channel is closed
+            return randomAccessFile.getChannel().map(mode, 0, sizeBytes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < DATA_START; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_FILE_SIZE, buffer.capacity());
+        writePosition = 0;
+        oldestPosition = 0;
+        // magic last - file isn't considered valid until the header is complete
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+    }
+
+    private void load() {
+        writePosition = buffer.getLong(HEADER_WRITE_POSITION);
+        oldestPosition = buffer.getLong(HEADER_OLDEST_POSITION);
+        int tagCount = buffer.getInt(HEADER_TAG_COUNT);
+        for (short id = 0; id < tagCount; id++) {
+            tagToIdMap.put(readTag(buffer, id), id);
+        }
+    }
+
+    @Override
+    public void write(LogRecord record) {
+        write(record.timeMs, record.logLevel, record.tag, record.message);
+    }
+
+    synchronized void write(long timeMs, int logLevel, String tag, String message) {
+        short tagId = getTagId(tag);
+        byte[] inlineTag = null;
+        int recordSize = RECORD_HEADER_SIZE;
+        if (tagId == INLINE_TAG) {
+            inlineTag = truncate(tag.getBytes(UTF_8), Byte.MAX_VALUE);
+            recordSize += 1 + inlineTag.length;
+        }
+        encode(message, maxRecordSize - recordSize);
+        recordSize += messageBytes.remaining();
+
+        // records never wrap around the end of the data area
+        int offset = getOffset(writePosition);
+        if (offset + recordSize > buffer.capacity()) {
+            if (buffer.capacity() - offset >= 4) {
+                buffer.putInt(offset, 0);
+            }
+            writePosition += buffer.capacity() - offset;
+            offset = DATA_START;
+        }
+
+        // drop oldest records that are about to be overwritten; header is updated first so a crash mid-write
+        // never leaves the oldest position pointing into a partially written record
+        long newOldestPosition = oldestPosition;
+        while (newOldestPosition < writePosition + recordSize - dataSize) {
+            newOldestPosition = nextPosition(buffer, newOldestPosition, dataSize);
+        }
+        if (newOldestPosition != oldestPosition) {
+            oldestPosition = newOldestPosition;
+            buffer.putLong(HEADER_OLDEST_POSITION, oldestPosition);
+        }
+
+        buffer.putInt(offset, recordSize);
+        buffer.putLong(offset + 4, timeMs);
+        buffer.put(offset + 12, (byte) logLevel);
+        buffer.putShort(offset + 13, tagId);
+        int pos = offset + RECORD_HEADER_SIZE;
+        if (inlineTag != null) {
+            buffer.put(pos++, (byte) inlineTag.length);
+            for (byte b : inlineTag) {
+                buffer.put(pos++, b);
+            }
+        }
+        buffer.position(pos);
+        buffer.put(messageBytes);
+
+        writePosition += recordSize;
+        buffer.putLong(HEADER_WRITE_POSITION, writePosition);
+    }
+
+    /**
+     * ask the OS to write mapped memory to disk now (not needed to survive an app crash)
+     */
+    @Override
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    private short getTagId(String tag) {
+        Short id = tagToIdMap.get(tag);
+        if (id != null) {
+            return id;
+        }
+        int tagCount = tagToIdMap.size();
+        byte[] tagBytes = tag.getBytes(UTF_8);
+        if (tagCount >= MAX_TAGS || tagBytes.length >= TAG_SLOT_SIZE) {
+            return INLINE_TAG;
+        }
+
+        int offset = TAG_TABLE_START + (tagCount * TAG_SLOT_SIZE);
+        buffer.put(offset, (byte) tagBytes.length);
+        for (int i = 0; i < tagBytes.length; i++) {
+            buffer.put(offset + 1 + i, tagBytes[i]);
+        }
+        buffer.putInt(HEADER_TAG_COUNT, tagCount + 1);
+        tagToIdMap.put(tag, (short) tagCount);
+        return (short) tagCount;
+    }
+
+    private int getOffset(long position) {
+        return getOffset(position, dataSize);
+    }
+
+    private static int getOffset(long position, int dataSize) {
+        return DATA_START + (int) (position % dataSize);
+    }
+
+    /**
+     * @return position of the record following the one at the given position
+     */
+    private static long nextPosition(ByteBuffer buffer, long position, int dataSize) {
+        int offset = getOffset(position, dataSize);
+        int remaining = buffer.capacity() - offset;
+        int recordSize = remaining >= 4 ? buffer.getInt(offset) : 0;
+        if (recordSize <= 0) {
+            // wrap marker (or no room for one) - next record is at the start of the data area
+            return position + remaining;
+        }
+        return position + recordSize;
+    }
+
+    private void encode(String message, int maxBytes) {
+        encoder.reset();
+        messageBytes.clear();
+        messageBytes.limit(Math.max(maxBytes, 0));
+        CharBuffer in = CharBuffer.wrap(message);
+        CoderResult result = encoder.encode(in, messageBytes, true);
+        if (!result.isOverflow()) {
+            encoder.flush(messageBytes);
+        }
+        // message is cut off if it doesn't fit
+        messageBytes.flip();
+    }
+
+    private static byte[] truncate(byte[] bytes, int maxLength) {
+        if (bytes.length <= maxLength) {
+            return bytes;
+        }
+        byte[] truncated = new byte[maxLength];
+        System.arraycopy(bytes, 0, truncated, 0, maxLength);
+        return truncated;
+    }
+
+    private static String readTag(ByteBuffer buffer, int id) {
+        int offset = TAG_TABLE_START + (id * TAG_SLOT_SIZE);
+        int length = buffer.get(offset) & 0xFF;
+        return readString(buffer, offset + 1, length);
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * convert a mapped log file to the same text format used by {@link AndroidLoggerFactory#logToFile(File, boolean)}
+     * - lines are written oldest to newest
+     *
+     * @param mappedFile file written by {@link AndroidLoggerFactory#logToMappedFile(File, int)}
+     * @param textFile   file to write (overwritten)
+     * @return number of lines exported
+     */
+    static int export(File mappedFile, File textFile) throws IOException {
+        ByteBuffer buffer = map(mappedFile, -1, FileChannel.MapMode.READ_ONLY);
+        if (buffer.capacity() < DATA_START || buffer.getInt(HEADER_MAGIC) != MAGIC || buffer.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("not a mapped log file: " + mappedFile.getAbsolutePath());
+        }
+
+        int dataSize = buffer.capacity() - DATA_START;
+        int tagCount = Math.min(buffer.getInt(HEADER_TAG_COUNT), MAX_TAGS);
+        String[] tags = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = readTag(buffer, i);
+        }
+
+        long writePosition = buffer.getLong(HEADER_WRITE_POSITION);
+        long position = buffer.getLong(HEADER_OLDEST_POSITION);
+
+        if (textFile.exists() && !textFile.delete()) {
+            throw new IOException("unable to delete: " + textFile.getAbsolutePath());
+        }
+        LogFileWriter out = new LogFileWriter(textFile, 0, false, 0, false, new TimestampFormatter(TimestampFormatter.DEFAULT));
+        int count = 0;
+        try {
+            while (position < writePosition) {
+                int offset = getOffset(position, dataSize);
+                int remaining = buffer.capacity() - offset;
+                int recordSize = remaining >= 4 ? buffer.getInt(offset) : 0;
+                if (recordSize > 0) {
+                    if (recordSize < RECORD_HEADER_SIZE || recordSize > remaining) {
+                        Log.w(TAG, "export: corrupt record at: " + offset);
+                        break;
+                    }
+                    long timeMs = buffer.getLong(offset + 4);
+                    int logLevel = buffer.get(offset + 12);
+                    short tagId = buffer.getShort(offset + 13);
+                    int pos = offset + RECORD_HEADER_SIZE;
+                    String tag;
+                    if (tagId == INLINE_TAG) {
+                        int tagLength = buffer.get(pos++);
+                        tag = readString(buffer, pos, tagLength);
+                        pos += tagLength;
+                    } else {
+                        tag = tagId >= 0 && tagId < tags.length ? tags[tagId] : "?";
+                    }
+                    String message = readString(buffer, pos, offset + recordSize - pos);
+                    out.write(timeMs, logLevel, tag, message);
+                    count++;
+                }
+                position = nextPosition(buffer, position, dataSize);
+            }
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,35 @@
+package com.jp.androidlogger;
+
+/**
+ * marker levels (see {@link AndroidLoggerFactory#setMarkerLevel(String, String, int)}) resolved for a single logger
+ * - one bitset of marker bits per log level: checking a call is just 2 array reads and 2 AND's
+ * - immutable; a logger resolves a new one when the factory's level generation changes
+ */
+class MarkerLevels {
+    final int generation;
+    // [log level] -> bits of markers whose level is above it (dropped)
+    private final long[] denyMasks;
+    // [log level] -> bits of markers whose level is at or below it (logged, even if below the logger's level)
+    private final long[] acceptMasks;
+
+    MarkerLevels(int generation, long[] denyMasks, long[] acceptMasks) {
+        this.generation = generation;
+        this.denyMasks = denyMasks;
+        this.acceptMasks = acceptMasks;
+    }
+
+    /**
+     * @param logLevel   Log.LEVEL - clamped to 0..15 by the caller
+     * @param markerMask marker bits of the log call
+     */
+    boolean isDenied(int logLevel, long markerMask) {
+        return (markerMask & denyMasks[logLevel]) != 0;
+    }
+
+    /**
+     * @return true if a marker forces this call to be logged (checked after {@link #isDenied(int, long)})
+     */
+    boolean isAccepted(int logLevel, long markerMask) {
+        return (markerMask & acceptMasks[logLevel]) != 0;
+    }
+}
@@ -0,0 +1,81 @@
+package com.jp.androidlogger;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * immutable MDC context for a thread at some point in time
+ * - {@link AndroidMDCAdapter} replaces the whole snapshot on every change, so a snapshot can be shared with log
+ * records (and other threads) without copying
+ * - keys are kept in the order they were added
+ * - text form ("[key=value key2=value2]") is only built once per snapshot
+ */
+class MdcSnapshot {
+    static final MdcSnapshot EMPTY = new MdcSnapshot(Collections.<String, String>emptyMap());
+
+    final Map<String, String> map;
+    private String text;
+
+    private MdcSnapshot(Map<String, String> map) {
+        this.map = map;
+    }
+
+    /**
+     * @param map map to copy
+     */
+    static MdcSnapshot of(Map<String, String> map) {
+        if (map == null || map.isEmpty()) {
+            return EMPTY;
+        }
+        return new MdcSnapshot(Collections.unmodifiableMap(new LinkedHashMap<>(map)));
+    }
+
+    MdcSnapshot with(String key, String value) {
+        Map<String, String> copy = new LinkedHashMap<>(map);
+        copy.put(key, value);
+        return new MdcSnapshot(Collections.unmodifiableMap(copy));
+    }
+
+    MdcSnapshot without(String key) {
+        if (!map.containsKey(key)) {
+            return this;
+        }
+        if (map.size() == 1) {
+            return EMPTY;
+        }
+        Map<String, String> copy = new LinkedHashMap<>(map);
+        copy.remove(key);
+        return new MdcSnapshot(Collections.unmodifiableMap(copy));
+    }
+
+    boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * @return "[key=value key2=value2]"; empty string if there's no context
+     */
+    String getText() {
+        // benign race - worst case 2 threads build the same string
+        String text = this.text;
+        if (text == null) {
+            if (map.isEmpty()) {
+                text = "";
+            } else {
+                StringBuilder sb = new StringBuilder(map.size() * 24);
+                sb.append('[');
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    if (sb.length() > 1) {
+                        sb.append(' ');
+                    }
+                    sb.append(entry.getKey()).append('=').append(entry.getValue());
+                }
+                sb.append(']');
+                text = sb.toString();
+            }
+            this.text = text;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,57 @@
+package com.jp.androidlogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * keeps the last N records in memory - ie: to show in a debug screen or attach to a bug report
+ */
+public class MemoryRingSink implements LogSink {
+    private final LogRecord[] records;
+    private int nextIndex;
+    private int count;
+
+    /**
+     * @param capacity max number of records to keep
+     */
+    public MemoryRingSink(int capacity) {
+        records = new LogRecord[Math.max(capacity, 1)];
+    }
+
+    @Override
+    public synchronized void write(LogRecord record) {
+        records[nextIndex] = record;
+        nextIndex = (nextIndex + 1) % records.length;
+        if (count < records.length) {
+            count++;
+        }
+    }
+
+    /**
+     * @return copy of records currently held, oldest first
+     */
+    public synchronized List<LogRecord> getRecords() {
+        List<LogRecord> list = new ArrayList<>(count);
+        int start = (nextIndex - count + records.length) % records.length;
+        for (int i = 0; i < count; i++) {
+            list.add(records[(start + i) % records.length]);
+        }
+        return list;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < records.length; i++) {
+            records[i] = null;
+        }
+        nextIndex = 0;
+        count = 0;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,89 @@
+package com.jp.androidlogger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * counters + histograms behind {@link LogMetrics}
+ * - per call counters are striped (see {@link StripedCounter}) so logging threads don't contend on them
+ * - loggers and sink entries look up their counters once and keep them
+ */
+class MetricsRecorder {
+    private static final int LEVEL_COUNT = 8;
+
+    // logger name -> records per level
+    private final ConcurrentHashMap<String, StripedCounter> loggerCounters = new ConcurrentHashMap<>();
+    private final LatencyHistogram formatTime = new LatencyHistogram();
+    // sink class name -> LogSink.write() time
+    private final ConcurrentHashMap<String, LatencyHistogram> sinkWriteTimes = new ConcurrentHashMap<>();
+
+    // file writes are already serialized by the writer so these don't need striping
+    private final AtomicLong fileBytesWritten = new AtomicLong();
+    private final AtomicLong fileRollOverCount = new AtomicLong();
+
+    StripedCounter getLoggerCounter(String loggerName) {
+        StripedCounter counter = loggerCounters.get(loggerName);
+        if (counter == null) {
+            counter = new StripedCounter(LEVEL_COUNT);
+            StripedCounter existing = loggerCounters.putIfAbsent(loggerName, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    void onRecord(StripedCounter loggerCounter, int logLevel) {
+        if (logLevel >= 0 && logLevel < LEVEL_COUNT) {
+            loggerCounter.increment(logLevel);
+        }
+    }
+
+    void onFormat(long nanos) {
+        formatTime.record(nanos);
+    }
+
+    LatencyHistogram getSinkHistogram(LogSink sink) {
+        String name = sink.getClass().getSimpleName();
+        if (name.isEmpty()) {
+            // anonymous class
+            name = sink.getClass().getName();
+        }
+        LatencyHistogram histogram = sinkWriteTimes.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = sinkWriteTimes.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    void onFileWrite(int bytes) {
+        fileBytesWritten.addAndGet(bytes);
+    }
+
+    void onFileRollOver() {
+        fileRollOverCount.incrementAndGet();
+    }
+
+    LogMetrics getSnapshot(int fileQueueSize, int logcatQueueSize, long droppedRecordCount, long suppressedRecordCount) {
+        Map<String, long[]> loggerCounts = new HashMap<>();
+        for (Map.Entry<String, StripedCounter> entry : loggerCounters.entrySet()) {
+            long[] counts = new long[LEVEL_COUNT];
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                counts[level] = entry.getValue().get(level);
+            }
+            loggerCounts.put(entry.getKey(), counts);
+        }
+        Map<String, LogMetrics.Latency> sinkTimes = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : sinkWriteTimes.entrySet()) {
+            sinkTimes.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        return new LogMetrics(System.currentTimeMillis(), loggerCounts, formatTime.getSnapshot(), sinkTimes, fileBytesWritten.get(), fileRollOverCount.get(),
+                fileQueueSize, logcatQueueSize, droppedRecordCount, suppressedRecordCount);
+    }
+}
@@ -0,0 +1,46 @@
+package com.jp.androidlogger;
+
+import org.slf4j.Marker;
+
+/**
+ * returned for disabled levels - ignores everything
+ */
+final class NoOpLoggingEventBuilder implements LoggingEventBuilder {
+    static final NoOpLoggingEventBuilder INSTANCE = new NoOpLoggingEventBuilder();
+
+    private NoOpLoggingEventBuilder() {
+    }
+
+    @Override
+    public LoggingEventBuilder addArgument(Object argument) {
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder addArgument(Supplier<?> argument) {
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder addKeyValue(String key, Object value) {
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder addMarker(Marker marker) {
+        return this;
+    }
+
+    @Override
+    public LoggingEventBuilder setCause(Throwable cause) {
+        return this;
+    }
+
+    @Override
+    public void log(String format) {
+    }
+
+    @Override
+    public void log(Supplier<String> message) {
+    }
+}
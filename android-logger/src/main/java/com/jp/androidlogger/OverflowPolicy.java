@@ -0,0 +1,20 @@
+package com.jp.androidlogger;
+
+/**
+ * what to do when the async file logging queue is full
+ * - see {@link AndroidLoggerFactory#setAsyncOverflowPolicy(OverflowPolicy)}
+ */
+public enum OverflowPolicy {
+    /**
+     * calling thread waits until there's room in the queue (nothing is lost)
+     */
+    BLOCK,
+    /**
+     * oldest queued record is thrown away to make room for the new one
+     */
+    DROP_OLDEST,
+    /**
+     * new record is thrown away
+     */
+    DROP_NEWEST
+}
@@ -0,0 +1,235 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * per call site token bucket - see {@link AndroidLoggerFactory#setRateLimit(int, int)}
+ * - a call site is identified by its format string instance (string literals are always the same instance) and the
+ * logger it's logged from - the same literal logged by 2 loggers (ie: a shared constant) gets a bucket for each
+ * - lock-free: each call site has its own slot + counters, so threads only contend when logging from the same
+ * statement; no global counter is touched on the hot path
+ * - table is fixed size; a call site can use any of PROBES slots from its hash, so literals whose hashes collide each
+ * get their own slot; a slot is only taken from a call site that hasn't logged again since the last miss on it
+ * (second chance)
+ * - a call that doesn't have its own bucket yet (all its slots were taken, or a message built at runtime - a new
+ * instance every call) is charged to one shared bucket, so a storm of built messages is limited as a group
+ * - a replaced call site's suppressed calls that weren't reported yet are logged when it's replaced
+ */
+class RateLimiter {
+    private static final String TAG = "RateLimiter";
+    private static final int TABLE_SIZE = 1024;
+    // slots a call site can use, starting at getIndex()
+    private static final int PROBES = 4;
+
+    // time for one token
+    private final long intervalNanos;
+    // how far ahead of 'now' the bucket can be drawn down (burst - 1 tokens)
+    private final long toleranceNanos;
+    private final AtomicReferenceArray<CallSite> callSites = new AtomicReferenceArray<>(TABLE_SIZE);
+    // bucket for calls without a call site of their own
+    private final CallSite sharedSite;
+    // suppressed counts of call sites that were replaced in the table
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * @param maxPerSecond sustained rate per call site
+     * @param burst        calls allowed back to back before limiting starts
+     */
+    RateLimiter(int maxPerSecond, int burst) {
+        intervalNanos = 1000000000L / Math.max(maxPerSecond, 1);
+        toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+        sharedSite = new CallSite(null, "", Log.WARN, TAG, System.nanoTime());
+    }
+
+    /**
+     * take a token for this call site
+     *
+     * @param factory    used to log the suppressed count of a call site that's replaced, or of the shared bucket
+     * @param loggerName logger that's logging - part of the call site
+     * @param logLevel   level of this call; the shared bucket's suppressed count is logged with it
+     * @param tag        tag of this call; the shared bucket's suppressed count is logged with it
+     * @return -1 if the call should be suppressed; otherwise number of calls suppressed since the last one that was allowed
+     */
+    long acquire(AndroidLoggerFactory factory, String format, String loggerName, int logLevel, String tag) {
+        if (format == null) {
+            return 0;
+        }
+        if (loggerName == null) {
+            loggerName = "";
+        }
+        long now = System.nanoTime();
+        int index = getIndex(format, loggerName);
+        for (int i = 0; i < PROBES; i++) {
+            CallSite site = callSites.get((index + i) & (TABLE_SIZE - 1));
+            if (site == null) {
+                break;
+            } else if (site.format == format && site.loggerName.equals(loggerName)) {
+                if (!site.isUsed) {
+                    site.isUsed = true;
+                }
+                return take(site, now);
+            }
+        }
+
+        // miss: first free slot (slots are never emptied, so a call site is always found before the first free slot)
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (index + i) & (TABLE_SIZE - 1);
+            CallSite site = callSites.get(slot);
+            if (site == null) {
+                // only the first call of up to TABLE_SIZE call sites gets here, so it starts with its own bucket
+                CallSite newSite = new CallSite(format, loggerName, logLevel, tag, now);
+                if (callSites.compareAndSet(slot, null, newSite)) {
+                    return take(newSite, now);
+                }
+                site = callSites.get(slot);
+                if (site.format == format && site.loggerName.equals(loggerName)) {
+                    // another thread added the same call site
+                    return take(site, now);
+                }
+            }
+        }
+
+        // no free slot: replace one that hasn't logged since the last miss (ie: a message built at runtime); this call
+        // could be the next built message too, so it doesn't get a full bucket
+        boolean isReplaced = false;
+        for (int i = 0; i < PROBES && !isReplaced; i++) {
+            int slot = (index + i) & (TABLE_SIZE - 1);
+            CallSite site = callSites.get(slot);
+            if (!site.isUsed && callSites.compareAndSet(slot, site, new CallSite(format, loggerName, logLevel, tag, now))) {
+                onEvicted(factory, site);
+                isReplaced = true;
+            }
+        }
+        if (!isReplaced) {
+            // second chance: these slots go to the next miss unless their call sites log again before then
+            for (int i = 0; i < PROBES; i++) {
+                callSites.get((index + i) & (TABLE_SIZE - 1)).isUsed = false;
+            }
+        }
+        long suppressedCount = take(sharedSite, now);
+        if (suppressedCount > 0) {
+            // logged here - the caller would report them as "like" its own format
+            factory.log(logLevel, tag, getSuppressedMessage(suppressedCount, null));
+            return 0;
+        }
+        return suppressedCount;
+    }
+
+    /**
+     * @return first slot for this call site (package-private so checks can find call sites that collide)
+     */
+    static int getIndex(String format, String loggerName) {
+        int hash = System.identityHashCode(format) * 31 + loggerName.hashCode();
+        return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * GCRA: bucket is a 'theoretical arrival time' which moves ahead by one interval per call
+     */
+    private long take(CallSite site, long now) {
+        while (true) {
+            long arrivalTime = site.arrivalTime.get();
+            if (arrivalTime - now > toleranceNanos) {
+                site.pendingCount.incrementAndGet();
+                return -1;
+            }
+            if (site.arrivalTime.compareAndSet(arrivalTime, Math.max(arrivalTime, now) + intervalNanos)) {
+                break;
+            }
+        }
+        return site.takePending();
+    }
+
+    private void onEvicted(AndroidLoggerFactory factory, CallSite site) {
+        long pending = site.takePending();
+        evictedCount.addAndGet(site.getSuppressedCount());
+        if (pending > 0) {
+            factory.log(site.logLevel, site.tag, getSuppressedMessage(pending, site.format));
+        }
+    }
+
+    /**
+     * @return number of calls suppressed so far
+     */
+    long getSuppressedCount() {
+        long count = evictedCount.get() + sharedSite.getSuppressedCount();
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            CallSite site = callSites.get(i);
+            if (site != null) {
+                count += site.getSuppressedCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * log a "suppressed" line for every call site with suppressed calls that haven't been reported yet (ie: the storm
+     * stopped and no call was allowed after it)
+     */
+    void logPending(AndroidLoggerFactory factory) {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            CallSite site = callSites.get(i);
+            if (site == null) {
+                continue;
+            }
+            long pending = site.takePending();
+            if (pending > 0) {
+                factory.log(site.logLevel, site.tag, getSuppressedMessage(pending, site.format));
+            }
+        }
+        long pending = sharedSite.takePending();
+        if (pending > 0) {
+            factory.log(sharedSite.logLevel, sharedSite.tag, getSuppressedMessage(pending, null));
+        }
+    }
+
+    /**
+     * @param format format of the suppressed calls; null if they didn't have a call site of their own
+     */
+    static String getSuppressedMessage(long count, String format) {
+        if (format == null) {
+            return "suppressed " + count + " messages without a rate limit of their own (built at runtime, or too many log statements)";
+        }
+        return "suppressed " + count + " messages like: " + format;
+    }
+
+    private static class CallSite {
+        final String format;
+        final String loggerName;
+        // level + tag of the first call; used when logging the pending count at shutdown
+        final int logLevel;
+        final String tag;
+        final AtomicLong arrivalTime;
+        // suppressed since the last allowed call
+        final AtomicLong pendingCount = new AtomicLong();
+        // suppressed and already reported
+        final AtomicLong reportedCount = new AtomicLong();
+        // set on each hit, cleared by a miss on the same slot - benign race, it's only a hint
+        boolean isUsed;
+
+        CallSite(String format, String loggerName, int logLevel, String tag, long now) {
+            this.format = format;
+            this.loggerName = loggerName;
+            this.logLevel = logLevel;
+            this.tag = tag;
+            this.arrivalTime = new AtomicLong(now);
+        }
+
+        long takePending() {
+            if (pendingCount.get() == 0) {
+                // common case - no write
+                return 0;
+            }
+            long pending = pendingCount.getAndSet(0);
+            reportedCount.addAndGet(pending);
+            return pending;
+        }
+
+        long getSuppressedCount() {
+            return reportedCount.get() + pendingCount.get();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * registered {@link LogSink} + its min level, (optional) executor and (optional) marker it's dedicated to
+ * - counts writes in progress so a replaced sink is only closed once nothing is writing to it (see {@link #awaitWrites})
+ */
+class SinkEntry {
+    private static final String TAG = "SinkEntry";
+
+    final LogSink sink;
+    final int minLevel;
+    final Executor executor;
+    // marker sink: only records with one of these marker bits; 0 for a regular sink
+    final long markerMask;
+    final boolean isExclusive;
+    // LogSink.write() time - only looked up once metrics are enabled
+    private LatencyHistogram writeTime;
+
+    // writes started and not finished yet (including ones queued to the executor)
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    // set by setReplacement(): a thread that read the sink list before the swap can still get here - its record goes to the
+    // replacement instead (null if the sink was just removed)
+    private volatile boolean isRemoved;
+    private volatile SinkEntry replacement;
+
+    SinkEntry(LogSink sink, int minLevel, Executor executor, long markerMask, boolean isExclusive) {
+        this.sink = sink;
+        this.minLevel = minLevel;
+        this.executor = executor;
+        this.markerMask = markerMask;
+        this.isExclusive = isExclusive;
+    }
+
+    /**
+     * @param exclusiveMarkerMask markers whose records only go to their own marker sinks
+     * @param metrics             records time spent in the sink; null if metrics aren't enabled
+     */
+    void write(final LogRecord record, long exclusiveMarkerMask, final MetricsRecorder metrics) {
+        if (record.logLevel < minLevel) {
+            return;
+        } else if (markerMask != 0 ? (record.markerMask & markerMask) == 0 : (record.markerMask & exclusiveMarkerMask) != 0) {
+            return;
+        }
+
+        // counted before isRemoved is checked - isRemoved is set before awaitWrites() checks the count, so either this
+        // thread sees the removal or awaitWrites() waits for this write
+        inFlightCount.incrementAndGet();
+        if (isRemoved) {
+            inFlightCount.decrementAndGet();
+            SinkEntry next = replacement;
+            if (next != null) {
+                next.write(record, exclusiveMarkerMask, metrics);
+            }
+            return;
+        }
+
+        if (executor == null) {
+            writeToSinkAndFinish(record, metrics);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeToSinkAndFinish(record, metrics);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // executor was shut down - don't lose the record
+            writeToSinkAndFinish(record, metrics);
+        }
+    }
+
+    /**
+     * stop writing to this entry's sink - call {@link #awaitWrites} before closing it
+     *
+     * @param replacement entry that takes over this one's records; null if the sink is being removed
+     */
+    void setReplacement(SinkEntry replacement) {
+        this.replacement = replacement;
+        isRemoved = true;
+    }
+
+    /**
+     * wait for writes already in progress to finish after {@link #setReplacement} - the sink can be closed after this
+     *
+     * @return false if writes were still in progress after timeoutMs
+     */
+    boolean awaitWrites(long timeoutMs) {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (inFlightCount.get() > 0) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeToSinkAndFinish(LogRecord record, MetricsRecorder metrics) {
+        try {
+            writeToSink(record, metrics);
+        } finally {
+            inFlightCount.decrementAndGet();
+        }
+    }
+
+    private void writeToSink(LogRecord record, MetricsRecorder metrics) {
+        try {
+            if (metrics == null) {
+                sink.write(record);
+                return;
+            }
+            if (writeTime == null) {
+                writeTime = metrics.getSinkHistogram(sink);
+            }
+            long startNanos = System.nanoTime();
+            sink.write(record);
+            writeTime.record(System.nanoTime() - startNanos);
+        } catch (RuntimeException e) {
+            // a broken sink shouldn't break logging for the app (or the other sinks)
+            Log.e(TAG, "write: " + sink.getClass().getName() + " failed", e);
+        }
+    }
+}
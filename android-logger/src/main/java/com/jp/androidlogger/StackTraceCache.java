@@ -0,0 +1,174 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * renders each distinct stack trace once - an error storm logs the same exception over and over
+ * - keyed by the structure of the throwable: toString() and frames of it, its causes and suppressed exceptions
+ * - a hit costs copying + comparing the frames instead of Log.getStackTraceString()
+ * - bounded LRU; every cached trace gets a small id which the file writer uses to write repeats as a reference (see
+ * {@link StackTraceDecoder})
+ * - set with {@link AndroidLoggerFactory#setStackTraceCacheSize(int)}
+ */
+class StackTraceCache {
+    // deeper chains (and circular ones) are rendered without caching
+    private static final int MAX_DEPTH = 32;
+
+    // Throwable.getSuppressed() is API 19+
+    private static volatile boolean isSuppressedSupported = true;
+
+    private final LinkedHashMap<Key, Trace> traces;
+    private int nextId = 1;
+
+    /**
+     * @param maxSize max number of traces to keep
+     */
+    StackTraceCache(final int maxSize) {
+        traces = new LinkedHashMap<Key, Trace>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Trace> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return rendered stack trace of throwable (from the cache if the same trace was rendered before)
+     */
+    Trace get(Throwable throwable) {
+        Key key = getKey(throwable);
+        if (key == null) {
+            return render(throwable);
+        }
+        synchronized (traces) {
+            Trace trace = traces.get(key);
+            if (trace != null) {
+                return trace;
+            }
+        }
+        // render outside the lock - worst case 2 threads render the same trace and the first one is kept
+        String text = Log.getStackTraceString(throwable);
+        synchronized (traces) {
+            Trace trace = traces.get(key);
+            if (trace == null) {
+                trace = new Trace(nextId, text);
+                nextId = nextId == Integer.MAX_VALUE ? 1 : nextId + 1;
+                traces.put(key, trace);
+            }
+            return trace;
+        }
+    }
+
+    /**
+     * @return rendered stack trace without caching it
+     */
+    static Trace render(Throwable throwable) {
+        return new Trace(0, Log.getStackTraceString(throwable));
+    }
+
+    /**
+     * @return key for throwable; null if it can't be cached
+     */
+    private static Key getKey(Throwable throwable) {
+        List<Object> parts = new ArrayList<>(8);
+        try {
+            if (!addParts(throwable, parts, new IdentityHashMap<Throwable, Boolean>(), 0)) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            // ie: toString() failed - let Log.getStackTraceString() deal with it
+            return null;
+        }
+        return new Key(parts.toArray());
+    }
+
+    /**
+     * flatten throwable into parts: toString, frames, suppressed count, (suppressed..), has cause, (cause)
+     *
+     * @return false if throwable is too deep or circular
+     */
+    private static boolean addParts(Throwable throwable, List<Object> parts, Map<Throwable, Boolean> seen, int depth) {
+        if (depth > MAX_DEPTH || seen.put(throwable, Boolean.TRUE) != null) {
+            return false;
+        }
+        parts.add(throwable.toString());
+        parts.add(throwable.getStackTrace());
+        Throwable[] suppressed = getSuppressed(throwable);
+        parts.add(suppressed.length);
+        for (Throwable s : suppressed) {
+            if (!addParts(s, parts, seen, depth + 1)) {
+                return false;
+            }
+        }
+        Throwable cause = throwable.getCause();
+        parts.add(cause != null);
+        return cause == null || addParts(cause, parts, seen, depth + 1);
+    }
+
+    private static Throwable[] getSuppressed(Throwable throwable) {
+        if (isSuppressedSupported) {
+            try {
+                return throwable.getSuppressed();
+            } catch (NoSuchMethodError e) {
+                isSuppressedSupported = false;
+            }
+        }
+        return new Throwable[0];
+    }
+
+    /**
+     * rendered stack trace
+     */
+    static class Trace {
+        // 0 if not cached
+        final int id;
+        // Log.getStackTraceString() output
+        final String text;
+
+        Trace(int id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+
+        /**
+         * @return number of lines in text (not counting the line break at the end)
+         */
+        int getLineCount() {
+            int count = 0;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            return length > 0 && text.charAt(length - 1) != '\n' ? count + 1 : count;
+        }
+    }
+
+    private static class Key {
+        private final Object[] parts;
+        private final int hash;
+
+        Key(Object[] parts) {
+            this.parts = parts;
+            this.hash = Arrays.deepHashCode(parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.deepEquals(parts, ((Key) o).parts);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.jp.androidlogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * expands stack trace references in log files written with {@link AndroidLoggerFactory#setStackTraceDedupEnabled(boolean)}
+ * - the first time a stack trace is written to a file it's written in full, with "{trace ID:LINES} " in front of its
+ * first line
+ * - after that it's written as a single "{trace ID #COUNT}" line (COUNT = times it's been written to the file so far)
+ * - lines have to be read in order; a reference whose full trace wasn't read (ie: skipped by a filter) is left as is
+ * - binary files are expanded by {@link BinaryLogDecoder}
+ * - doesn't use any Android classes: also runs as a command line tool on a desktop JVM (see {@link #main(String[])})
+ * <p>
+ * usage:
+ * <pre>
+ * StackTraceDecoder decoder = new StackTraceDecoder();
+ * decoder.decode(reader, writer);          // whole file; or line by line with decoder.decodeLine(line)
+ * </pre>
+ */
+public class StackTraceDecoder {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PREFIX = "{trace ";
+
+    // trace id -> lines
+    private final Map<String, String[]> traces = new HashMap<>();
+
+    // -- full trace being read --
+    private String traceId;
+    private String[] traceLines;
+    private int traceLineCount;
+
+    /**
+     * append "{trace ID:LINES} " - written in front of the first line of a full stack trace
+     */
+    static void appendDefinition(StringBuilder sb, int id, int lineCount) {
+        sb.append(PREFIX).append(Integer.toHexString(id)).append(':').append(lineCount).append("} ");
+    }
+
+    /**
+     * append "{trace ID #COUNT}" - written instead of a stack trace that's already in the file
+     */
+    static void appendReference(StringBuilder sb, int id, int count) {
+        sb.append(PREFIX).append(Integer.toHexString(id)).append(" #").append(count).append('}');
+    }
+
+    /**
+     * @param line one line of the file (without the line break)
+     * @return line with the "{trace ID:LINES} " prefix removed, or the full stack trace (lines separated by '\n') if
+     * line is a reference
+     */
+    public String decodeLine(String line) {
+        if (traceLines != null) {
+            // rest of a full trace
+            traceLines[traceLineCount++] = line;
+            if (traceLineCount == traceLines.length) {
+                endTrace();
+            }
+            return line;
+        }
+        if (!line.startsWith(PREFIX)) {
+            return line;
+        }
+        int end = line.indexOf('}', PREFIX.length());
+        if (end < 0) {
+            return line;
+        }
+        String ref = line.substring(PREFIX.length(), end);
+
+        int colon = ref.indexOf(':');
+        if (colon > 0 && line.startsWith(" ", end + 1)) {
+            // "{trace ID:LINES} first line"
+            int lineCount;
+            try {
+                lineCount = Integer.parseInt(ref.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                return line;
+            }
+            if (lineCount <= 0) {
+                return line;
+            }
+            String firstLine = line.substring(end + 2);
+            traceId = ref.substring(0, colon);
+            traceLines = new String[lineCount];
+            traceLines[0] = firstLine;
+            traceLineCount = 1;
+            if (lineCount == 1) {
+                endTrace();
+            }
+            return firstLine;
+        }
+
+        int hash = ref.indexOf(" #");
+        if (hash > 0 && end == line.length() - 1) {
+            // "{trace ID #COUNT}"
+            String[] lines = traces.get(ref.substring(0, hash));
+            if (lines != null) {
+                return join(lines);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @param message whole message of a record (may be several lines)
+     * @return message with stack trace references expanded
+     */
+    public String decode(String message) {
+        if (message == null || (traceLines == null && !message.contains(PREFIX))) {
+            return message;
+        }
+        StringBuilder sb = new StringBuilder(message.length() * 2);
+        int start = 0;
+        while (true) {
+            int end = message.indexOf('\n', start);
+            sb.append(decodeLine(message.substring(start, end < 0 ? message.length() : end)));
+            if (end < 0) {
+                return sb.toString();
+            }
+            sb.append('\n');
+            start = end + 1;
+        }
+    }
+
+    /**
+     * copy a text log file with stack trace references expanded
+     *
+     * @return number of lines read
+     */
+    public long decode(BufferedReader in, Writer out) throws IOException {
+        long count = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            out.write(decodeLine(line));
+            out.write('\n');
+            count++;
+        }
+        return count;
+    }
+
+    private void endTrace() {
+        traces.put(traceId, traceLines);
+        traceId = null;
+        traceLines = null;
+        traceLineCount = 0;
+    }
+
+    private static String join(String[] lines) {
+        int length = lines.length;
+        for (String line : lines) {
+            length += line.length();
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append(lines[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * expand stack trace references in text log files
+     * <pre>
+     * java -cp android-logger.jar com.jp.androidlogger.StackTraceDecoder file [file..]
+     * </pre>
+     * files are read in the order given (ie: log.2.gz log.1.gz log); archives ending with ".gz" are decompressed
+     */
+    public static void main(String[] args) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(new File(arg));
+        }
+        if (files.isEmpty()) {
+            System.err.println("usage: StackTraceDecoder file [file..]");
+            System.exit(1);
+            return;
+        }
+
+        StackTraceDecoder decoder = new StackTraceDecoder();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), BUFFER_SIZE);
+        try {
+            for (File file : files) {
+                BufferedReader in = null;
+                try {
+                    InputStream fileIn = new FileInputStream(file);
+                    if (file.getName().endsWith(".gz")) {
+                        fileIn = new GZIPInputStream(fileIn, BUFFER_SIZE);
+                    }
+                    in = new BufferedReader(new InputStreamReader(fileIn, UTF_8), BUFFER_SIZE);
+                    decoder.decode(in, out);
+                } catch (IOException e) {
+                    System.err.println(file + ": " + e.getMessage());
+                } finally {
+                    if (in != null) {
+                        in.close();
+                    }
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.jp.androidlogger;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * set of counters spread over a few stripes (picked by thread) so threads logging at the same time don't all update the
+ * same memory - same idea as java.util.concurrent.atomic.LongAdder (which isn't available on older Android versions)
+ * - reading a value adds up all the stripes, so reads are slower than writes
+ */
+class StripedCounter {
+    // longs per cache line (64 bytes); each stripe starts on its own line (x2 for adjacent line prefetching)
+    private static final int LONGS_PER_LINE = 8;
+    private static final int STRIPES = getStripeCount();
+
+    private final int stride;
+    private final AtomicLongArray cells;
+
+    /**
+     * @param counterCount number of counters (indexes 0 to counterCount - 1)
+     */
+    StripedCounter(int counterCount) {
+        // round up to a whole number of (double) cache lines
+        int lineLongs = LONGS_PER_LINE * 2;
+        this.stride = ((counterCount + lineLongs - 1) / lineLongs) * lineLongs;
+        this.cells = new AtomicLongArray(STRIPES * stride);
+    }
+
+    void increment(int index) {
+        add(index, 1);
+    }
+
+    void add(int index, long value) {
+        cells.getAndAdd(getStripe() * stride + index, value);
+    }
+
+    long get(int index) {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += cells.get(stripe * stride + index);
+        }
+        return sum;
+    }
+
+    private static int getStripe() {
+        // thread ids are handed out in order, so the low bits are spread well enough after a quick mix
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 16)) * 0x9E3779B9;
+        return (hash >>> 16) & (STRIPES - 1);
+    }
+
+    /**
+     * @return power of 2 >= number of CPUs (max 16)
+     */
+    private static int getStripeCount() {
+        int cpus = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 16));
+        return cpus == 1 ? 1 : Integer.highestOneBit((cpus - 1) << 1);
+    }
+}
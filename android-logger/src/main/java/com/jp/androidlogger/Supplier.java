@@ -0,0 +1,13 @@
+package com.jp.androidlogger;
+
+/**
+ * value that's only computed if it's going to be logged - ie: () -> model.toString()
+ * - same shape as java.util.function.Supplier (which isn't available on older Android versions) so lambdas and method
+ * references work with either
+ *
+ * @see AndroidLogger#atDebug()
+ */
+public interface Supplier<T> {
+
+    T get();
+}
@@ -0,0 +1,169 @@
+package com.jp.androidlogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.ParsePosition;
+
+/**
+ * reads records back from a {@link LogFileFormat#TEXT} log file
+ * - a record starts with a "timestamp L  tag " line; lines that don't (ie: stack traces) belong to the record before
+ * - tracks the byte offset of each record (for {@link LogFileIndex})
+ */
+class TextLogReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream in;
+    private final TimestampFormatter timestampFormatter;
+    private final long referenceTimeMs;
+    private final ParsePosition parsePosition = new ParsePosition(0);
+    private byte[] lineBytes = new byte[256];
+    private long offset;
+
+    // -- next record's first line (already read) --
+    private boolean hasPending;
+    private long pendingOffset;
+    private long pendingTimeMs;
+    private int pendingLevel;
+    private String pendingTag;
+    private String pendingMessage;
+
+    // -- current record --
+    private long recordOffset;
+    private long timeMs;
+    private int logLevel;
+    private String tag;
+    private final StringBuilder message = new StringBuilder(256);
+
+    /**
+     * @param in              buffered stream positioned at the start of a record (or of the file)
+     * @param startOffset     file offset of in's position
+     * @param referenceTimeMs time at or after the records (for timestamps without a year) - see
+     *                        {@link TimestampFormatter#parse(String, ParsePosition, long)}
+     */
+    TextLogReader(InputStream in, long startOffset, TimestampFormatter timestampFormatter, long referenceTimeMs) {
+        this.in = in;
+        this.offset = startOffset;
+        this.timestampFormatter = timestampFormatter;
+        this.referenceTimeMs = referenceTimeMs;
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    boolean next() throws IOException {
+        while (!hasPending) {
+            long lineOffset = offset;
+            String line = readLine();
+            if (line == null) {
+                return false;
+            }
+            // anything before the first record (ie: file starts mid-record) is skipped
+            parseFirstLine(line, lineOffset);
+        }
+
+        recordOffset = pendingOffset;
+        timeMs = pendingTimeMs;
+        logLevel = pendingLevel;
+        tag = pendingTag;
+        message.setLength(0);
+        message.append(pendingMessage);
+        hasPending = false;
+
+        while (true) {
+            long lineOffset = offset;
+            String line = readLine();
+            if (line == null || parseFirstLine(line, lineOffset)) {
+                break;
+            }
+            message.append('\n').append(line);
+        }
+        return true;
+    }
+
+    long getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * @return offset just past the last line read
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    long getTimeMs() {
+        return timeMs;
+    }
+
+    int getLogLevel() {
+        return logLevel;
+    }
+
+    String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return message (including MDC context, if any)
+     */
+    String getMessage() {
+        return message.toString();
+    }
+
+    /**
+     * @return true if line starts a record (stored as pending)
+     */
+    private boolean parseFirstLine(String line, long lineOffset) {
+        parsePosition.setIndex(0);
+        parsePosition.setErrorIndex(-1);
+        long time = timestampFormatter.parse(line, parsePosition, referenceTimeMs);
+        int i = parsePosition.getIndex();
+        if (time == Long.MIN_VALUE || line.length() < i + 4 || line.charAt(i) != ' ' || line.charAt(i + 2) != ' ' || line.charAt(i + 3) != ' ') {
+            return false;
+        }
+        int level = LogFileWriter.parseLevelChar(line.charAt(i + 1));
+        if (level < 0) {
+            return false;
+        }
+        int tagStart = i + 4;
+        int tagEnd = line.indexOf(' ', tagStart);
+        if (tagEnd < 0) {
+            tagEnd = line.length();
+        }
+
+        hasPending = true;
+        pendingOffset = lineOffset;
+        pendingTimeMs = time;
+        pendingLevel = level;
+        pendingTag = line.substring(tagStart, tagEnd);
+        pendingMessage = tagEnd < line.length() ? line.substring(tagEnd + 1) : "";
+        return true;
+    }
+
+    /**
+     * @return next line without the '\n'; null at the end of the stream
+     */
+    private String readLine() throws IOException {
+        int length = 0;
+        int consumed = 0;
+        int b;
+        while ((b = in.read()) >= 0) {
+            consumed++;
+            if (b == '\n') {
+                break;
+            }
+            if (length == lineBytes.length) {
+                byte[] bigger = new byte[lineBytes.length * 2];
+                System.arraycopy(lineBytes, 0, bigger, 0, length);
+                lineBytes = bigger;
+            }
+            lineBytes[length++] = (byte) b;
+        }
+        if (consumed == 0) {
+            return null;
+        }
+        offset += consumed;
+        return new String(lineBytes, 0, length, UTF_8);
+    }
+}
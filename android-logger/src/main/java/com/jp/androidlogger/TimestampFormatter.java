@@ -0,0 +1,240 @@
+package com.jp.androidlogger;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * formats log timestamps without creating a SimpleDateFormat/Date per line
+ * - the text for the current second is formatted once and cached; only the millisecond digits change per line
+ * - safe to use from multiple threads: the cache is an immutable object swapped through a volatile field
+ * - pattern is any SimpleDateFormat pattern, {@link #ISO_8601} or {@link #EPOCH_MILLIS}
+ */
+public class TimestampFormatter {
+
+    /**
+     * default file timestamp: "10-18 14:03:55"
+     */
+    public static final String DEFAULT = "MM-dd HH:mm:ss";
+
+    /**
+     * ISO-8601 with milliseconds and timezone offset: "2017-10-18T14:03:55.123-0500"
+     */
+    public static final String ISO_8601 = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    /**
+     * milliseconds since 1970 (System.currentTimeMillis()): "1508353435123"
+     */
+    public static final String EPOCH_MILLIS = "epoch";
+
+    private static final char MILLIS_CHAR = 'S';
+    private static final char QUOTE_CHAR = '\'';
+
+    private final String pattern;
+    private final boolean isEpochMillis;
+    // pattern is split around the millisecond field ("SSS") - each part is cached per second
+    private final SimpleDateFormat beforeMillisFormat;
+    private final SimpleDateFormat afterMillisFormat;
+    private final int millisDigits;
+    private final Date date = new Date();
+
+    private volatile CachedSecond cachedSecond;
+
+    // only created if timestamps are parsed (reading log files)
+    private SimpleDateFormat parseFormat;
+    // patterns without a year: same pattern with a leap year in front so "02-29" parses
+    private SimpleDateFormat leapYearParseFormat;
+    private Calendar parseCalendar;
+
+    /**
+     * @param pattern SimpleDateFormat pattern, {@link #ISO_8601} or {@link #EPOCH_MILLIS}
+     * @throws IllegalArgumentException if pattern isn't valid
+     */
+    public TimestampFormatter(String pattern) {
+        this.pattern = pattern;
+        isEpochMillis = EPOCH_MILLIS.equals(pattern);
+        if (isEpochMillis) {
+            beforeMillisFormat = null;
+            afterMillisFormat = null;
+            millisDigits = 0;
+            return;
+        }
+
+        // find millisecond field (outside of any 'quoted text')
+        int millisStart = -1;
+        int millisEnd = -1;
+        boolean isQuoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == QUOTE_CHAR) {
+                isQuoted = !isQuoted;
+            } else if (c == MILLIS_CHAR && !isQuoted) {
+                millisStart = i;
+                millisEnd = i;
+                while (millisEnd < pattern.length() && pattern.charAt(millisEnd) == MILLIS_CHAR) {
+                    millisEnd++;
+                }
+                break;
+            }
+        }
+
+        if (millisStart < 0) {
+            beforeMillisFormat = new SimpleDateFormat(pattern, Locale.US);
+            afterMillisFormat = null;
+            millisDigits = 0;
+        } else {
+            beforeMillisFormat = new SimpleDateFormat(pattern.substring(0, millisStart), Locale.US);
+            afterMillisFormat = millisEnd < pattern.length() ? new SimpleDateFormat(pattern.substring(millisEnd), Locale.US) : null;
+            millisDigits = millisEnd - millisStart;
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * append formatted timestamp to out
+     */
+    public void format(long timeMs, StringBuilder out) {
+        if (isEpochMillis) {
+            out.append(timeMs);
+            return;
+        }
+
+        long second = floorDiv(timeMs, 1000);
+        CachedSecond cached = cachedSecond;
+        if (cached == null || cached.second != second) {
+            cached = formatSecond(second);
+            cachedSecond = cached;
+        }
+
+        out.append(cached.beforeMillis);
+        if (millisDigits > 0) {
+            appendPadded(out, (int) (timeMs - (second * 1000)), millisDigits);
+            out.append(cached.afterMillis);
+        }
+    }
+
+    /**
+     * @return formatted timestamp (allocates - use {@link #format(long, StringBuilder)} on hot paths)
+     */
+    public String format(long timeMs) {
+        StringBuilder sb = new StringBuilder(32);
+        format(timeMs, sb);
+        return sb.toString();
+    }
+
+    /**
+     * parse a timestamp written by this formatter (ie: reading a log file)
+     * - patterns without a year (like the default) get the year which puts the time closest before referenceTimeMs
+     *
+     * @param referenceTimeMs a time at or after the timestamp - ie: when the file was last modified
+     * @return time in ms; Long.MIN_VALUE if text at pos isn't a timestamp
+     */
+    synchronized long parse(String text, ParsePosition pos, long referenceTimeMs) {
+        if (isEpochMillis) {
+            int start = pos.getIndex();
+            int end = start;
+            while (end < text.length() && end - start < 19 && Character.isDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end == start) {
+                return Long.MIN_VALUE;
+            }
+            pos.setIndex(end);
+            return Long.parseLong(text.substring(start, end));
+        }
+
+        if (parseFormat == null) {
+            parseFormat = new SimpleDateFormat(pattern, Locale.US);
+            parseFormat.setLenient(false);
+            parseCalendar = Calendar.getInstance();
+        }
+        Date date = parseFormat.parse(text, pos);
+        if (hasYear()) {
+            return date != null ? date.getTime() : Long.MIN_VALUE;
+        } else if (date == null) {
+            // 1970 isn't a leap year - try again for "02-29"
+            if (leapYearParseFormat == null) {
+                leapYearParseFormat = new SimpleDateFormat("yyyy " + pattern, Locale.US);
+                leapYearParseFormat.setLenient(false);
+            }
+            String leapYearPrefix = "2000 ";
+            ParsePosition leapYearPos = new ParsePosition(0);
+            date = leapYearParseFormat.parse(leapYearPrefix + text.substring(pos.getIndex()), leapYearPos);
+            if (date == null) {
+                return Long.MIN_VALUE;
+            }
+            pos.setIndex(pos.getIndex() + leapYearPos.getIndex() - leapYearPrefix.length());
+            pos.setErrorIndex(-1);
+        }
+
+        parseCalendar.setTimeInMillis(referenceTimeMs);
+        int year = parseCalendar.get(Calendar.YEAR);
+        parseCalendar.setTime(date);
+        parseCalendar.set(Calendar.YEAR, year);
+        // allow a little clock skew before deciding the line is from last year
+        if (parseCalendar.getTimeInMillis() > referenceTimeMs + 24 * 60 * 60 * 1000L) {
+            parseCalendar.set(Calendar.YEAR, year - 1);
+        }
+        return parseCalendar.getTimeInMillis();
+    }
+
+    private boolean hasYear() {
+        boolean isQuoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == QUOTE_CHAR) {
+                isQuoted = !isQuoted;
+            } else if ((c == 'y' || c == 'Y') && !isQuoted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized CachedSecond formatSecond(long second) {
+        // another thread may have just done this
+        CachedSecond cached = cachedSecond;
+        if (cached != null && cached.second == second) {
+            return cached;
+        }
+        date.setTime(second * 1000);
+        String beforeMillis = beforeMillisFormat.format(date);
+        String afterMillis = afterMillisFormat != null ? afterMillisFormat.format(date) : "";
+        return new CachedSecond(second, beforeMillis, afterMillis);
+    }
+
+    private static void appendPadded(StringBuilder out, int value, int digits) {
+        // same as SimpleDateFormat: pad to at least 'digits' digits
+        for (int limit = 10, i = 1; i < digits; i++, limit *= 10) {
+            if (value < limit) {
+                out.append('0');
+            }
+        }
+        out.append(value);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long result = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            result--;
+        }
+        return result;
+    }
+
+    private static class CachedSecond {
+        final long second;
+        final String beforeMillis;
+        final String afterMillis;
+
+        CachedSecond(long second, String beforeMillis, String afterMillis) {
+            this.second = second;
+            this.beforeMillis = beforeMillis;
+            this.afterMillis = afterMillis;
+        }
+    }
+}
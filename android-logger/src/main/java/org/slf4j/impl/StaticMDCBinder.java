@@ -22,11 +22,12 @@
 
 package org.slf4j.impl;
 
-import org.slf4j.helpers.NOPMDCAdapter;
+import com.jp.androidlogger.AndroidMDCAdapter;
+
 import org.slf4j.spi.MDCAdapter;
 
 /**
- * This implementation is bound to {@link NOPMDCAdapter}.
+ * This implementation is bound to {@link AndroidMDCAdapter}.
  *
  * @author Ceki G&uuml;lc&uuml;
  * @author Thorsten M&ouml;ler
@@ -43,13 +44,13 @@ public class StaticMDCBinder {
     }
 
     /**
-     * @return always returns an instance of {@link StaticMDCBinder}.
+     * @return always returns the {@link AndroidMDCAdapter} instance.
      */
     public MDCAdapter getMDCA() {
-        return new NOPMDCAdapter();
+        return AndroidMDCAdapter.getInstance();
     }
 
     public String getMDCAdapterClassStr() {
-        return NOPMDCAdapter.class.getName();
+        return AndroidMDCAdapter.class.getName();
     }
 }
@@ -0,0 +1,142 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * checks that the lock-free CrashBuffer never dumps a torn line while other threads are writing to it
+ * - THREADS threads write formatted and unformatted lines ("thread N line K", tag "TN") as fast as they can while the
+ * buffer is dumped over and over; every dumped line has to have the tag and message of one write
+ * - once they're done, a dump has to have the last MAX_LINES lines of each thread's run, in order
+ * - in this package so it can use CrashBuffer directly (it's package-private)
+ * - run by ./gradlew :benchmarks:checkCrashBuffer (part of check)
+ */
+public class CrashBufferCheck {
+    private static final int THREADS = 4;
+    private static final int LINES_PER_THREAD = 200000;
+    private static final int MAX_LINES = 500;
+    private static final Pattern LINE = Pattern.compile(".* T(\\d+):? thread (\\d+) line (\\d+)( x+)?$");
+
+    private static final List<String> errors = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        final CrashBuffer buffer = new CrashBuffer(MAX_LINES);
+        TimestampFormatter timestampFormatter = new TimestampFormatter(TimestampFormatter.DEFAULT);
+        File file = File.createTempFile("androidlogger-check", ".log");
+        try {
+            final AtomicBoolean isStarted = new AtomicBoolean();
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (!isStarted.get()) {
+                            Thread.yield();
+                        }
+                        write(buffer, thread);
+                    }
+                });
+                threads[t].start();
+            }
+            isStarted.set(true);
+
+            int dumps = 0;
+            long dumpedLines = 0;
+            while (isAlive(threads)) {
+                dumpedLines += check("while writing", buffer, file, timestampFormatter, false);
+                dumps++;
+            }
+            System.out.println("while writing: " + dumps + " dumps, " + dumpedLines + " lines");
+            int lines = check("after writing", buffer, file, timestampFormatter, true);
+            System.out.println("after writing: " + lines + " lines");
+            expect("after writing", lines == MAX_LINES, lines + " lines, expected " + MAX_LINES);
+        } finally {
+            file.delete();
+        }
+
+        if (!errors.isEmpty()) {
+            for (int i = 0; i < Math.min(errors.size(), 20); i++) {
+                System.err.println("FAILED: " + errors.get(i));
+            }
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void write(CrashBuffer buffer, int thread) {
+        String tag = "T" + thread;
+        for (int i = 0; i < LINES_PER_THREAD; i++) {
+            if (i % 3 == 0) {
+                buffer.writeFormat(i, Log.DEBUG, tag, "thread {} line {}", 2, thread, i, null);
+            } else if (i % 3 == 1) {
+                buffer.writeFormat(i, Log.DEBUG, tag, "thread {} line {} {}", 3, null, null, new Object[]{thread, i, "xxxxxxxxxxxxxxxxxxxx"});
+            } else {
+                // different lengths so lines' text doesn't line up with the char ring
+                buffer.write(i, Log.INFO, tag, "thread " + thread + " line " + i + (i % 7 == 0 ? " xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx" : ""));
+            }
+        }
+    }
+
+    /**
+     * @param isDone true if nothing is writing - the dump has to be the newest lines of each thread, in order
+     * @return number of lines dumped
+     */
+    private static int check(String name, CrashBuffer buffer, File file, TimestampFormatter timestampFormatter, boolean isDone) throws IOException {
+        file.delete();
+        if (buffer.dump(file, timestampFormatter) == 0) {
+            // nothing written yet - no file
+            return 0;
+        }
+        int[] lastLine = new int[THREADS];
+        Arrays.fill(lastLine, -1);
+        int lines = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                Matcher matcher = LINE.matcher(line);
+                if (!matcher.matches() || !matcher.group(1).equals(matcher.group(2))) {
+                    expect(name, false, "torn line: " + line);
+                    continue;
+                }
+                int thread = Integer.parseInt(matcher.group(2));
+                int number = Integer.parseInt(matcher.group(3));
+                if (isDone) {
+                    expect(name, number >= LINES_PER_THREAD - MAX_LINES && number > lastLine[thread],
+                            "line out of order or not one of the newest: " + line);
+                    lastLine[thread] = number;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static boolean isAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void expect(String name, boolean isOk, String error) {
+        if (!isOk) {
+            errors.add(name + ": " + error);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * checks that file logging carries on after a failed write - on the calling thread and through an {@link AsyncSink}
+ * - the failed record is counted as dropped; every record after it is written
+ * - "throws once": the file writer throws for one record in the middle of the file
+ * - "can't open": the log file path is a directory for the first records, then it's removed
+ * - in this package so it can use FileSink / AsyncSink / LogFileWriter directly (they're package-private)
+ * - run by ./gradlew :benchmarks:checkFileSink (part of check)
+ */
+public class FileSinkCheck {
+    private static final int RECORDS = 10;
+    private static final int FAILED_RECORD = 3;
+
+    private static final List<String> errors = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        File dir = File.createTempFile("androidlogger-check", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        try {
+            for (boolean isAsync : new boolean[]{false, true}) {
+                checkThrowsOnce(new File(dir, "once-" + isAsync + ".log"), isAsync);
+                checkCantOpen(new File(dir, "open-" + isAsync + ".log"), isAsync);
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println("FAILED: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void checkThrowsOnce(File file, boolean isAsync) throws IOException {
+        LogFileWriter fileWriter = new LogFileWriter(file, 0, false, 0, false, new TimestampFormatter(TimestampFormatter.DEFAULT)) {
+            private int count;
+
+            @Override
+            void write(LogRecord record) throws IOException {
+                if (++count == FAILED_RECORD) {
+                    throw new IOException("test: write failed");
+                }
+                super.write(record);
+            }
+        };
+        AtomicLong droppedCount = new AtomicLong();
+        LogSink sink = newSink(fileWriter, isAsync, droppedCount);
+        for (int i = 1; i <= RECORDS; i++) {
+            sink.write(newRecord(i));
+        }
+        sink.close();
+        check("throws once, async:" + isAsync, file, droppedCount.get(), 1);
+    }
+
+    private static void checkCantOpen(File file, boolean isAsync) throws IOException {
+        if (!file.mkdir()) {
+            throw new IOException("unable to create: " + file);
+        }
+        LogFileWriter fileWriter = new LogFileWriter(file, 0, false, 0, false, new TimestampFormatter(TimestampFormatter.DEFAULT));
+        AtomicLong droppedCount = new AtomicLong();
+        LogSink sink = newSink(fileWriter, isAsync, droppedCount);
+        for (int i = 1; i <= RECORDS; i++) {
+            if (i == FAILED_RECORD) {
+                // AsyncSink.flush() waits for the records before it to be written (and fail)
+                sink.flush();
+                if (!file.delete()) {
+                    throw new IOException("unable to delete: " + file);
+                }
+            }
+            sink.write(newRecord(i));
+        }
+        sink.close();
+        check("can't open, async:" + isAsync, file, droppedCount.get(), FAILED_RECORD - 1);
+    }
+
+    private static LogSink newSink(LogFileWriter fileWriter, boolean isAsync, AtomicLong droppedCount) {
+        if (!isAsync) {
+            return new FileSink(fileWriter, true, droppedCount);
+        }
+        AsyncSink sink = new AsyncSink(new FileSink(fileWriter, false, droppedCount), 1024, OverflowPolicy.BLOCK, droppedCount);
+        sink.start("FileSinkCheck");
+        return sink;
+    }
+
+    private static LogRecord newRecord(int number) {
+        return new LogRecord(System.currentTimeMillis(), Log.INFO, "check", "record " + number);
+    }
+
+    private static void check(String name, File file, long droppedCount, int expectedDropped) throws IOException {
+        int lines = 0;
+        if (file.isFile()) {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                while (reader.readLine() != null) {
+                    lines++;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        System.out.println(String.format("%-24s written=%d dropped=%d", name, lines, droppedCount));
+        if (droppedCount != expectedDropped || lines != RECORDS - expectedDropped) {
+            errors.add(name + ": expected " + (RECORDS - expectedDropped) + " written + " + expectedDropped + " dropped, got " + lines + " + " + droppedCount);
+        }
+    }
+}
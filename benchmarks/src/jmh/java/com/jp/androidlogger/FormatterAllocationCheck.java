@@ -0,0 +1,135 @@
+package com.jp.androidlogger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * checks that {@link LogFormatter} doesn't allocate anything per call once it's warmed up - the only allocation left is
+ * the message String created by finish()
+ * - measured with the thread's allocated bytes counter (HotSpot's com.sun.management.ThreadMXBean)
+ * - each case is compared with building the same String from a StringBuilder; anything more is garbage
+ * - in this package so it can use LogFormatter directly (it's package-private)
+ * - run by ./gradlew :benchmarks:checkAllocations (part of check)
+ */
+public class FormatterAllocationCheck {
+    private static final int WARMUP_CALLS = 200000;
+    private static final int CALLS = 100000;
+    // averaged over CALLS (rounded down) - a stray allocation during the run doesn't fail it, one per call does
+    private static final long MAX_GARBAGE_BYTES_PER_CALL = 0;
+
+    private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final List<String> errors = new ArrayList<>();
+    // results are summed so the JIT can't drop the calls
+    private static long sink;
+
+    public static void main(String[] args) {
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            System.err.println("thread allocated memory isn't supported by this JVM");
+            System.exit(1);
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // already boxed - boxing happens in the caller, not the formatter
+        final Integer intArg = 12345;
+        final Long longArg = 1234567890123L;
+        final Boolean booleanArg = Boolean.TRUE;
+        final Character charArg = 'c';
+        final String stringArg = "some value";
+        final StringBuilder charSequenceArg = new StringBuilder("a char sequence");
+        final Object[] args3 = new Object[]{intArg, stringArg, longArg};
+
+        check(new Case("1 Integer") {
+            @Override
+            String format() {
+                return LogFormatter.obtain().format("onLocationChanged: {}", intArg).finish();
+            }
+        });
+        check(new Case("2 Integer, Long") {
+            @Override
+            String format() {
+                return LogFormatter.obtain().format("onLocationChanged: {}, time: {}", intArg, longArg).finish();
+            }
+        });
+        check(new Case("2 Boolean, Character") {
+            @Override
+            String format() {
+                return LogFormatter.obtain().format("isEnabled: {}, type: {}", booleanArg, charArg).finish();
+            }
+        });
+        check(new Case("1 String") {
+            @Override
+            String format() {
+                return LogFormatter.obtain().format("onResume: {}", stringArg).finish();
+            }
+        });
+        check(new Case("2 String, CharSequence") {
+            @Override
+            String format() {
+                return LogFormatter.obtain().format("onResume: {}, {}", stringArg, charSequenceArg).finish();
+            }
+        });
+        check(new Case("N Integer, String, Long") {
+            @Override
+            String format() {
+                return LogFormatter.obtain().format("onLoad: {}, {}, {}", args3).finish();
+            }
+        });
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println("FAILED: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK (" + sink + ")");
+    }
+
+    private static void check(Case formatCase) {
+        final String expected = formatCase.format();
+        final StringBuilder copy = new StringBuilder(expected);
+        Case baseline = new Case("baseline") {
+            @Override
+            String format() {
+                return copy.toString();
+            }
+        };
+
+        formatCase.run(WARMUP_CALLS);
+        baseline.run(WARMUP_CALLS);
+        long formatBytes = formatCase.run(CALLS);
+        long baselineBytes = baseline.run(CALLS);
+        long garbagePerCall = (formatBytes - baselineBytes) / CALLS;
+        System.out.println(String.format("%-24s %6.1f bytes/call (String alone: %.1f) \"%s\"", formatCase.name, formatBytes / (double) CALLS,
+                baselineBytes / (double) CALLS, expected));
+        if (garbagePerCall > MAX_GARBAGE_BYTES_PER_CALL) {
+            errors.add(formatCase.name + ": " + garbagePerCall + " bytes of garbage per call");
+        }
+    }
+
+    private abstract static class Case {
+        final String name;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        abstract String format();
+
+        /**
+         * @return bytes allocated by this thread while formatting count messages
+         */
+        long run(int count) {
+            long threadId = Thread.currentThread().getId();
+            long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                length += format().length();
+            }
+            long bytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+            sink += length;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.jp.androidlogger;
+
+import android.util.Log;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * checks that the rate limit (see {@link AndroidLoggerFactory#setRateLimit(int, int)}) is kept per log statement
+ * - "2 loggers": the same literal logged by 2 loggers is limited separately for each
+ * - "collision": 2 literals that start at the same slot are limited separately and reported under their own format
+ * - "built at runtime": the shared limit's suppressed count is logged with the tag + level of the call that reports it
+ * - in this package so it can use RateLimiter.getIndex() (package-private)
+ * - run by ./gradlew :benchmarks:checkRateLimiter (part of check)
+ */
+public class RateLimiterCheck {
+    // 10/s: a storm of CALLS calls is over well inside one interval; WAIT_MS later the next call is allowed
+    private static final int MAX_PER_SECOND = 10;
+    private static final int BURST = 2;
+    private static final int CALLS = 10;
+    private static final long WAIT_MS = 150;
+    // more than the table holds
+    private static final int BUILT_CALLS = 5000;
+    // in the shared limit's suppressed message
+    private static final String SHARED = "without a rate limit of their own";
+
+    private static final List<String> errors = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        checkTwoLoggers();
+        checkCollision();
+        checkBuiltAtRuntime();
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println("FAILED: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void checkTwoLoggers() throws InterruptedException {
+        CaptureSink sink = new CaptureSink();
+        AndroidLoggerFactory factory = newFactory(sink);
+        Logger first = factory.getLogger("com.foo.First");
+        Logger second = factory.getLogger("com.foo.Second");
+        for (int i = 0; i < CALLS; i++) {
+            first.warn("request failed: {}", i);
+            second.warn("request failed: {}", i);
+        }
+        Thread.sleep(WAIT_MS);
+        first.warn("request failed: {}", CALLS);
+        second.warn("request failed: {}", CALLS);
+        factory.shutdown();
+
+        String firstTag = sink.records.get(0).getTag();
+        String secondTag = sink.records.get(1).getTag();
+        report("2 loggers", sink);
+        expect("2 loggers", sink.count(firstTag, "request failed: ") == BURST + 1, "first logger: " + sink.count(firstTag, "request failed: "));
+        expect("2 loggers", sink.count(secondTag, "request failed: ") == BURST + 1, "second logger: " + sink.count(secondTag, "request failed: "));
+        expect("2 loggers", sink.count(firstTag, RateLimiter.getSuppressedMessage(CALLS - BURST, "request failed: {}")) == 1, "first logger not reported");
+        expect("2 loggers", sink.count(secondTag, RateLimiter.getSuppressedMessage(CALLS - BURST, "request failed: {}")) == 1, "second logger not reported");
+    }
+
+    private static void checkCollision() throws InterruptedException {
+        String loggerName = "com.foo.Collision";
+        // interned: same instance on every call, like a literal
+        String first = "collision 0: {}".intern();
+        String second = null;
+        for (int i = 1; second == null; i++) {
+            String format = ("collision " + i + ": {}").intern();
+            if (RateLimiter.getIndex(format, loggerName) == RateLimiter.getIndex(first, loggerName)) {
+                second = format;
+            }
+        }
+
+        CaptureSink sink = new CaptureSink();
+        AndroidLoggerFactory factory = newFactory(sink);
+        Logger logger = factory.getLogger(loggerName);
+        for (int i = 0; i < CALLS; i++) {
+            logger.warn(first, i);
+            logger.warn(second, i);
+        }
+        Thread.sleep(WAIT_MS);
+        logger.warn(first, CALLS);
+        logger.warn(second, CALLS);
+        factory.shutdown();
+
+        String tag = sink.records.get(0).getTag();
+        report("collision", sink);
+        expect("collision", sink.count(tag, "collision 0: ") == BURST + 1, first + ": " + sink.count(tag, "collision 0: "));
+        String secondPrefix = second.substring(0, second.indexOf('{'));
+        expect("collision", sink.count(tag, secondPrefix) == BURST + 1, second + ": " + sink.count(tag, secondPrefix));
+        expect("collision", sink.count(tag, RateLimiter.getSuppressedMessage(CALLS - BURST, first)) == 1, first + " not reported");
+        expect("collision", sink.count(tag, RateLimiter.getSuppressedMessage(CALLS - BURST, second)) == 1, second + " not reported");
+        expect("collision", sink.countShared() == 0, "reported as without a rate limit of their own");
+    }
+
+    private static void checkBuiltAtRuntime() throws InterruptedException {
+        CaptureSink sink = new CaptureSink();
+        AndroidLoggerFactory factory = newFactory(sink);
+        Logger logger = factory.getLogger("com.foo.Built");
+        // a new String every call: each takes a free slot until the table is full, then they're charged to the shared limit
+        for (int i = 0; i < BUILT_CALLS; i++) {
+            logger.error("request failed: " + i);
+        }
+        Thread.sleep(WAIT_MS);
+        logger.error("request failed: " + BUILT_CALLS);
+        factory.shutdown();
+
+        String tag = sink.records.get(0).getTag();
+        report("built at runtime", sink);
+        LogRecord reported = null;
+        for (LogRecord record : sink.records) {
+            if (record.getMessage().contains(SHARED)) {
+                reported = record;
+            }
+        }
+        expect("built at runtime", reported != null, "suppressed count not reported");
+        if (reported != null) {
+            expect("built at runtime", tag.equals(reported.getTag()) && reported.getLogLevel() == Log.ERROR,
+                    "reported as " + reported.getTag() + "/" + reported.getLogLevel() + ", expected " + tag + "/" + Log.ERROR);
+        }
+    }
+
+    private static AndroidLoggerFactory newFactory(CaptureSink sink) {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.removeSink(factory.getLogcatSink());
+        factory.addSink(sink);
+        factory.setRateLimit(MAX_PER_SECOND, BURST);
+        return factory;
+    }
+
+    private static void report(String name, CaptureSink sink) {
+        System.out.println(name + ": " + sink.records.size() + " records");
+        LogRecord lastShared = null;
+        for (LogRecord record : sink.records) {
+            if (record.getMessage().contains(SHARED)) {
+                lastShared = record;
+            } else if (record.getMessage().startsWith("suppressed ")) {
+                System.out.println("  " + record.getTag() + ": " + record.getMessage());
+            }
+        }
+        if (lastShared != null) {
+            System.out.println("  " + lastShared.getTag() + ": " + lastShared.getMessage() + " (last of " + sink.countShared() + ")");
+        }
+    }
+
+    private static void expect(String name, boolean isOk, String error) {
+        if (!isOk) {
+            errors.add(name + ": " + error);
+        }
+    }
+
+    private static class CaptureSink implements LogSink {
+        final List<LogRecord> records = new ArrayList<>();
+
+        @Override
+        public synchronized void write(LogRecord record) {
+            records.add(record);
+        }
+
+        /**
+         * @param tag null for any tag
+         * @return number of records from tag whose message starts with prefix
+         */
+        synchronized int count(String tag, String prefix) {
+            int count = 0;
+            for (LogRecord record : records) {
+                if ((tag == null || tag.equals(record.getTag())) && record.getMessage().startsWith(prefix)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized int countShared() {
+            int count = 0;
+            for (LogRecord record : records) {
+                if (record.getMessage().contains(SHARED)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * text file logging with caller location off/on
+ * - "literal": log.info("..{}", arg) - location is cached after a few calls (the stack is still walked every 64 calls)
+ * - "built": message concatenated at runtime - no stable call site, so the stack is walked on every call
+ * - "shared": the same literal logged from 2 lines - can't be cached, so the stack is walked on every call
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CallerLocationBenchmark {
+
+    @Param({"false", "true"})
+    public boolean isLocationEnabled;
+
+    @Param({"literal", "built", "shared"})
+    public String message;
+
+    private AndroidLoggerFactory factory;
+    private Logger log;
+    private File dir;
+    private boolean isLiteral;
+    private boolean isShared;
+    private int count;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("androidlogger-bm", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.removeSink(factory.getLogcatSink());
+        factory.setMaxFileSize(16 * 1024 * 1024);
+        factory.setMaxArchiveFiles(1);
+        factory.setCompressArchives(false);
+        factory.setCallerLocationEnabled(isLocationEnabled);
+        factory.logToFile(new File(dir, "bm.log"), false);
+        log = factory.getLogger(CallerLocationBenchmark.class.getName());
+        isLiteral = message.equals("literal");
+        isShared = message.equals("shared");
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void logRequest() {
+        if (isLiteral) {
+            log.info("request complete: {}", ++count);
+        } else if (isShared) {
+            if ((++count & 1) == 0) {
+                log.info("request complete: {}", count);
+            } else {
+                log.info("request complete: {}", count);
+            }
+        } else {
+            log.info("request complete: " + ++count);
+        }
+    }
+}
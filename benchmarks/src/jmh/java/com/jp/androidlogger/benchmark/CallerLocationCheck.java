@@ -0,0 +1,147 @@
+package com.jp.androidlogger.benchmark;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+import com.jp.androidlogger.LogRecord;
+import com.jp.androidlogger.LogSink;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * checks the caller location of log statements that share a format string (see
+ * {@link AndroidLoggerFactory#setCallerLocationEnabled(boolean)})
+ * - "one line": a literal only logged from one line always has that line
+ * - "2 lines": the same literal logged from 2 lines, alternating, always has the right line
+ * - "2nd line later": a 2nd line starts logging a literal whose location is already cached - it has the wrong line for
+ * at most one check interval (64 calls), then the right one from there on
+ * - run by ./gradlew :benchmarks:checkCallerLocation (part of check)
+ */
+public class CallerLocationCheck {
+    private static final int CALLS = 1000;
+    private static final int CHECK_INTERVAL = 64;
+
+    private static final List<String> errors = new ArrayList<>();
+
+    public static void main(String[] args) {
+        checkOneLine();
+        checkTwoLines();
+        checkSecondLineLater();
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println("FAILED: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void checkOneLine() {
+        CaptureSink sink = new CaptureSink();
+        Logger log = newLogger(sink, "com.foo.OneLine");
+        for (int i = 0; i < CALLS; i++) {
+            logFirst(log);
+        }
+        int wrong = sink.countWrong();
+        System.out.println("one line: " + sink.records.size() + " records, " + wrong + " with the wrong line");
+        expect("one line", wrong == 0, wrong + " records with the wrong line");
+    }
+
+    private static void checkTwoLines() {
+        CaptureSink sink = new CaptureSink();
+        Logger log = newLogger(sink, "com.foo.TwoLines");
+        for (int i = 0; i < CALLS; i++) {
+            logFirst(log);
+            logSecond(log);
+        }
+        int wrong = sink.countWrong();
+        System.out.println("2 lines: " + sink.records.size() + " records, " + wrong + " with the wrong line");
+        expect("2 lines", wrong == 0, wrong + " records with the wrong line");
+    }
+
+    private static void checkSecondLineLater() {
+        CaptureSink sink = new CaptureSink();
+        Logger log = newLogger(sink, "com.foo.SecondLineLater");
+        for (int i = 0; i < CALLS; i++) {
+            logFirst(log);
+        }
+        for (int i = 0; i < CALLS; i++) {
+            logSecond(log);
+        }
+        int wrong = sink.countWrong();
+        int lastWrong = sink.getLastWrong();
+        System.out.println("2nd line later: " + sink.records.size() + " records, " + wrong + " with the wrong line");
+        expect("2nd line later", lastWrong < CALLS + CHECK_INTERVAL, "record " + lastWrong + " has the wrong line; 2nd line started at " + CALLS);
+    }
+
+    private static void logFirst(Logger log) {
+        log.info("done: {}", "logFirst");
+    }
+
+    private static void logSecond(Logger log) {
+        log.info("done: {}", "logSecond");
+    }
+
+    private static Logger newLogger(CaptureSink sink, String name) {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.removeSink(factory.getLogcatSink());
+        factory.addSink(sink);
+        factory.setCallerLocationEnabled(true);
+        return factory.getLogger(name);
+    }
+
+    private static void expect(String name, boolean isOk, String error) {
+        if (!isOk) {
+            errors.add(name + ": " + error);
+        }
+    }
+
+    /**
+     * keeps records; each message is the name of the method that logged it
+     */
+    private static class CaptureSink implements LogSink {
+        final List<LogRecord> records = new ArrayList<>();
+
+        @Override
+        public synchronized void write(LogRecord record) {
+            records.add(record);
+        }
+
+        boolean isWrong(LogRecord record) {
+            StackTraceElement location = record.getCallerLocation();
+            return location == null || !record.getMessage().equals("done: " + location.getMethodName());
+        }
+
+        synchronized int countWrong() {
+            int count = 0;
+            for (LogRecord record : records) {
+                if (isWrong(record)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return index of the last record with the wrong line; -1 if none
+         */
+        synchronized int getLastWrong() {
+            for (int i = records.size() - 1; i >= 0; i--) {
+                if (isWrong(records.get(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+import com.jp.androidlogger.LogFileFormat;
+import com.jp.androidlogger.OverflowPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * logging to a file (logcat sink removed) - text/binary/JSON, on the calling thread or queued to the writer thread
+ * - files roll over every 16MB so the run doesn't fill the disk
+ * - logLineThreaded: 4 threads logging at once, sampled per call so the percentiles show the cost of contending for
+ * the file (sync) vs the queue (async)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FileLoggingBenchmark {
+
+    @Param({"TEXT", "BINARY", "JSON"})
+    public LogFileFormat format;
+
+    @Param({"false", "true"})
+    public boolean isAsync;
+
+    private AndroidLoggerFactory factory;
+    private Logger log;
+    private File dir;
+    private int count;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("androidlogger-bm", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.removeSink(factory.getLogcatSink());
+        factory.setMaxFileSize(16 * 1024 * 1024);
+        factory.setMaxArchiveFiles(1);
+        factory.setCompressArchives(false);
+        factory.setFileFormat(format);
+        factory.setAsyncFileLoggingEnabled(isAsync);
+        // measure the calling thread, not how fast the writer thread can keep up
+        factory.setAsyncOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        factory.logToFile(new File(dir, "bm.log"), false);
+        log = factory.getLogger(FileLoggingBenchmark.class.getName());
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void logLine() {
+        log.info("onLocationChanged: {}, accuracy: {}", ++count, 12.5f);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @Threads(4)
+    public void logLineThreaded(ThreadCounter counter) {
+        log.info("onLocationChanged: {}, accuracy: {}", ++counter.count, 12.5f);
+    }
+
+    /**
+     * per-thread count (the shared one would be a data race between the logging threads)
+     */
+    @State(Scope.Thread)
+    public static class ThreadCounter {
+        int count;
+    }
+}
@@ -0,0 +1,56 @@
+package com.jp.androidlogger.benchmark;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * looking up a logger by name - existing (the usual case: a class creating its static logger) and new
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class GetLoggerBenchmark {
+
+    private AndroidLoggerFactory factory;
+    private String name;
+    private int nextIndex;
+
+    @Setup
+    public void setup() {
+        factory = new AndroidLoggerFactory();
+        factory.setTagPrefix("bm");
+        name = GetLoggerBenchmark.class.getName();
+        factory.getLogger(name);
+    }
+
+    @Benchmark
+    public Logger existingLogger() {
+        return factory.getLogger(name);
+    }
+
+    @Benchmark
+    public Logger newLogger() {
+        // loggers are never removed; a fresh factory every 100k loggers keeps the map from growing for the whole run
+        if (++nextIndex == 100000) {
+            nextIndex = 0;
+            factory = new AndroidLoggerFactory();
+        }
+        return factory.getLogger("com.jp.androidlogger.benchmark.Class" + nextIndex);
+    }
+}
@@ -0,0 +1,102 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+import com.jp.androidlogger.HttpLogExporter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * logging with an HttpLogExporter posting to a local stand-in collector - measures the cost on the logging thread
+ * (batching, compression and sending happen on the exporter's thread)
+ * - exporter stats (batch sizes, compression ratio, send latency) are printed at the end of each trial
+ * - JMH logs far faster than one thread can post, so most records are dropped by the bounded queue - that's the point:
+ * the logging thread never waits on the exporter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class HttpExportBenchmark {
+
+    private HttpServer server;
+    private AndroidLoggerFactory factory;
+    private HttpLogExporter exporter;
+    private Logger log;
+    private File dir;
+    private int count;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/logs", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[8 * 1024];
+                while (in.read(buffer) > 0) {
+                    // ignored
+                }
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        dir = File.createTempFile("androidlogger-bm", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.removeSink(factory.getLogcatSink());
+        exporter = new HttpLogExporter(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/logs"), dir, 8192);
+        exporter.setMaxBatchDelayMs(1000);
+        factory.addSink(exporter);
+        log = factory.getLogger(HttpExportBenchmark.class.getName());
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        exporter.close();
+        System.out.println("\n" + exporter.getStats());
+        server.stop(0);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void logRequest() {
+        log.info("request complete: id={}, status={}", ++count, 200);
+    }
+}
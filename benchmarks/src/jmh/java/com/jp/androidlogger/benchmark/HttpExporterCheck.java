@@ -0,0 +1,236 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.HttpLogExporter;
+import com.jp.androidlogger.LogRecord;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * checks that HttpLogExporter gets every record to the collector when it's failing or down, against a local stand-in
+ * collector (same as HttpExportBenchmark)
+ * - 503: batches are spooled and sent once the collector recovers
+ * - backing off without a spool directory: a new batch isn't sent before the retry time
+ * - connection refused: batches are spooled and sent once the collector is started
+ * - restart: batches spooled by close() are sent by the next exporter using the same directory
+ * - run by ./gradlew :benchmarks:checkHttpExporter (part of check); takes a few seconds (backoff starts at 1 second)
+ */
+public class HttpExporterCheck {
+    private static final long TIMEOUT_MS = 20 * 1000;
+
+    private static final List<String> errors = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        File dir = File.createTempFile("androidlogger-check", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        try {
+            checkServerError(new File(dir, "503"));
+            checkBackoffWithoutSpool();
+            checkConnectionRefused(new File(dir, "refused"));
+            checkRestart(new File(dir, "restart"));
+        } finally {
+            delete(dir);
+        }
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println("FAILED: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void checkServerError(File spoolDir) throws Exception {
+        Collector collector = new Collector(0);
+        collector.failCount.set(2);
+        HttpLogExporter exporter = newExporter(collector.port, spoolDir);
+        write(exporter, 50);
+        waitFor(exporter, collector, 50);
+        HttpLogExporter.Stats stats = exporter.getStats();
+        exporter.close();
+        collector.stop();
+        report("503", stats, collector);
+        expect("503", stats.getFailedSendCount() >= 1, "no failed sends: " + stats);
+        expect("503", collector.recordCount.get() == 50, "collector got " + collector.recordCount.get() + " records, expected 50");
+        expect("503", stats.getDroppedRecordCount() == 0 && stats.getSpoolFileCount() == 0, "dropped or left in spool: " + stats);
+    }
+
+    private static void checkBackoffWithoutSpool() throws Exception {
+        Collector collector = new Collector(0);
+        collector.failCount.set(Integer.MAX_VALUE);
+        HttpLogExporter exporter = newExporter(collector.port, null);
+        write(exporter, 10);
+        waitForRequests(collector, 1);
+        // well inside the backoff (1 second +/-20%) - this batch has to be dropped, not sent
+        write(exporter, 10);
+        exporter.flush();
+        Thread.sleep(300);
+        HttpLogExporter.Stats stats = exporter.getStats();
+        exporter.close();
+        collector.stop();
+        report("backoff", stats, collector);
+        expect("backoff", collector.requestCount.get() == 1, collector.requestCount.get() + " requests while backing off, expected 1");
+        expect("backoff", stats.getDroppedRecordCount() == 20, "dropped " + stats.getDroppedRecordCount() + ", expected 20");
+    }
+
+    private static void checkConnectionRefused(File spoolDir) throws Exception {
+        int port = getFreePort();
+        HttpLogExporter exporter = newExporter(port, spoolDir);
+        write(exporter, 30);
+        long timeoutAt = System.currentTimeMillis() + TIMEOUT_MS;
+        while (exporter.getStats().getSpoolFileCount() < 3 && System.currentTimeMillis() < timeoutAt) {
+            Thread.sleep(20);
+        }
+        expect("refused", exporter.getStats().getSpoolFileCount() == 3, "batches not spooled: " + exporter.getStats());
+
+        Collector collector = new Collector(port);
+        waitFor(exporter, collector, 30);
+        HttpLogExporter.Stats stats = exporter.getStats();
+        exporter.close();
+        collector.stop();
+        report("refused", stats, collector);
+        expect("refused", collector.recordCount.get() == 30, "collector got " + collector.recordCount.get() + " records, expected 30");
+        expect("refused", stats.getDroppedRecordCount() == 0 && stats.getSpoolFileCount() == 0, "dropped or left in spool: " + stats);
+    }
+
+    private static void checkRestart(File spoolDir) throws Exception {
+        int port = getFreePort();
+        HttpLogExporter exporter = newExporter(port, spoolDir);
+        // less than a batch - close() spools it without sending
+        write(exporter, 5);
+        exporter.close();
+        File[] files = spoolDir.listFiles();
+        expect("restart", files != null && files.length == 1, "expected 1 spooled batch after close(): " + exporter.getStats());
+
+        Collector collector = new Collector(port);
+        HttpLogExporter restarted = newExporter(port, spoolDir);
+        waitFor(restarted, collector, 5);
+        HttpLogExporter.Stats stats = restarted.getStats();
+        restarted.close();
+        collector.stop();
+        report("restart", stats, collector);
+        expect("restart", collector.recordCount.get() == 5, "collector got " + collector.recordCount.get() + " records, expected 5");
+        expect("restart", stats.getSpoolFileCount() == 0, "left in spool: " + stats);
+    }
+
+    private static HttpLogExporter newExporter(int port, File spoolDir) throws IOException {
+        HttpLogExporter exporter = new HttpLogExporter(new URL("http://127.0.0.1:" + port + "/logs"), spoolDir);
+        exporter.setMaxBatchRecords(10);
+        exporter.setMaxBatchDelayMs(100);
+        exporter.setTimeoutMs(2000);
+        return exporter;
+    }
+
+    private static void write(HttpLogExporter exporter, int count) {
+        for (int i = 0; i < count; i++) {
+            exporter.write(new LogRecord(System.currentTimeMillis(), Log.INFO, "check", "request complete: id=" + i));
+        }
+    }
+
+    /**
+     * wait until the collector has accepted count records (or TIMEOUT_MS)
+     */
+    private static void waitFor(HttpLogExporter exporter, Collector collector, int count) throws InterruptedException {
+        long timeoutAt = System.currentTimeMillis() + TIMEOUT_MS;
+        while (exporter.getStats().getRecordCount() < count && System.currentTimeMillis() < timeoutAt) {
+            Thread.sleep(20);
+        }
+        // stats are updated after the response is read - give the collector's count a moment too
+        while (collector.recordCount.get() < count && System.currentTimeMillis() < timeoutAt) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static void waitForRequests(Collector collector, int count) throws InterruptedException {
+        long timeoutAt = System.currentTimeMillis() + TIMEOUT_MS;
+        while (collector.requestCount.get() < count && System.currentTimeMillis() < timeoutAt) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void report(String name, HttpLogExporter.Stats stats, Collector collector) {
+        System.out.println(String.format("%-8s requests=%d collected=%d %s", name, collector.requestCount.get(), collector.recordCount.get(),
+                stats.toString().replace('\n', ' ')));
+    }
+
+    private static void expect(String name, boolean isOk, String error) {
+        if (!isOk) {
+            errors.add(name + ": " + error);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * stand-in collector: counts requests and the JSON lines it accepted; answers 503 to the first failCount requests
+     */
+    private static class Collector implements HttpHandler {
+        final HttpServer server;
+        final int port;
+        final AtomicInteger failCount = new AtomicInteger();
+        final AtomicInteger requestCount = new AtomicInteger();
+        final AtomicInteger recordCount = new AtomicInteger();
+
+        Collector(int port) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+            server.createContext("/logs", this);
+            server.start();
+            this.port = server.getAddress().getPort();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requestCount.incrementAndGet();
+            int lines = 0;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(exchange.getRequestBody()), "UTF-8"));
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            if (failCount.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                recordCount.addAndGet(lines);
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * time the calling thread spends in a log call that goes to logcat - written on the calling thread vs handed to the
+ * background drainer (see AndroidLoggerFactory.setAsyncLogcatEnabled())
+ * - sampled, so the percentiles show the stalls behind the average (ie: a multiline message on the calling thread)
+ * - 4 threads logging at once, like a UI thread + workers
+ * - logcatCostNanos: simulated cost of each Log.x() write (see the stand-in android.util.Log); 0 measures just the
+ * logger
+ * - async lines that don't fit in the queue are dropped (DROP_OLDEST) - the caller never waits for logcat
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LogcatLatencyBenchmark {
+
+    @Param({"false", "true"})
+    public boolean isAsync;
+
+    @Param({"0", "5000"})
+    public long logcatCostNanos;
+
+    private AndroidLoggerFactory factory;
+    private Logger log;
+    private String message;
+
+    @Setup
+    public void setup() {
+        Log.setWriteCostNanos(logcatCostNanos);
+        factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.setMultilineLoggingEnabled(true);
+        factory.setSplitOnNewlinesEnabled(true);
+        factory.setAsyncLogcatEnabled(isAsync);
+        log = factory.getLogger(LogcatLatencyBenchmark.class.getName());
+
+        // server response: ~16KB in lines of ~80 characters (4+ logcat lines)
+        StringBuilder sb = new StringBuilder(16000);
+        for (int line = 0; sb.length() < 16000; line++) {
+            sb.append("  \"field").append(line).append("\": \"");
+            while (sb.length() % 80 != 0) {
+                sb.append((char) ('a' + sb.length() % 26));
+            }
+            sb.append("\",\n");
+        }
+        message = sb.toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        Log.setWriteCostNanos(0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void singleLine(ThreadCounter counter) {
+        log.info("onLocationChanged: {}, accuracy: {}", ++counter.count, 12.5f);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void multiline() {
+        log.debug("response: {}", message);
+    }
+
+    /**
+     * per-thread count (a shared one would be a data race between the logging threads)
+     */
+    @State(Scope.Thread)
+    public static class ThreadCounter {
+        int count;
+    }
+}
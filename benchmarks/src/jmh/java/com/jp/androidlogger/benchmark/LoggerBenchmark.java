@@ -0,0 +1,110 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLogger;
+import com.jp.androidlogger.AndroidLoggerFactory;
+import com.jp.androidlogger.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of a single log call to logcat (stubbed) - disabled levels, 0/1/2/N arguments, a throwable and the fluent API
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LoggerBenchmark {
+
+    private Logger log;
+    private AndroidLogger androidLog;
+    private Supplier<String> supplier;
+    private Integer intArg;
+    private String stringArg;
+    private Object[] args;
+    private Exception exception;
+
+    @Setup
+    public void setup() {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.setTagPrefix("bm");
+        factory.setDebugLevel(Log.INFO);
+        log = factory.getLogger(LoggerBenchmark.class.getName());
+        intArg = 12345;
+        stringArg = "some value";
+        args = new Object[]{intArg, stringArg, 3.14, Boolean.TRUE, 'c'};
+        exception = new IllegalStateException("benchmark exception");
+        androidLog = (AndroidLogger) log;
+        supplier = new Supplier<String>() {
+            @Override
+            public String get() {
+                return stringArg;
+            }
+        };
+    }
+
+    @Benchmark
+    public void disabledNoArgs() {
+        log.debug("onCreate: starting");
+    }
+
+    @Benchmark
+    public void disabledTwoArgs() {
+        log.debug("onLocationChanged: {}, {}", intArg, stringArg);
+    }
+
+    @Benchmark
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    @Benchmark
+    public void disabledFluentSupplier() {
+        androidLog.atDebug().addArgument(supplier).addArgument(intArg).log("onLocationChanged: {}, {}");
+    }
+
+    @Benchmark
+    public void enabledFluentSupplier() {
+        androidLog.atInfo().addArgument(supplier).addArgument(intArg).log("onLocationChanged: {}, {}");
+    }
+
+    @Benchmark
+    public void enabledNoArgs() {
+        log.info("onCreate: starting");
+    }
+
+    @Benchmark
+    public void enabledOneArg() {
+        log.info("onLocationChanged: {}", intArg);
+    }
+
+    @Benchmark
+    public void enabledTwoArgs() {
+        log.info("onLocationChanged: {}, {}", intArg, stringArg);
+    }
+
+    @Benchmark
+    public void enabledManyArgs() {
+        log.info("onLocationChanged: {}, {}, {}, {}, {}", args);
+    }
+
+    @Benchmark
+    public void enabledThrowable() {
+        log.warn("request failed", exception);
+    }
+}
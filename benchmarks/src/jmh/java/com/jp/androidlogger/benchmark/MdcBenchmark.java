@@ -0,0 +1,92 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of MDC context per log call - logging to a text file (logcat sink removed) with an empty or populated MDC
+ * - logLine: context set once, each line picks up the current snapshot and writes "[key=value ..]"
+ * - putAndLogLine: a value changes before every line (ie: a new request id) - the copy-on-write cost of MDC.put()
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MdcBenchmark {
+
+    @Param({"0", "2", "8"})
+    public int mdcSize;
+
+    private AndroidLoggerFactory factory;
+    private Logger log;
+    private File dir;
+    private int count;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("androidlogger-bm", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.removeSink(factory.getLogcatSink());
+        factory.setMaxFileSize(16 * 1024 * 1024);
+        factory.setMaxArchiveFiles(1);
+        factory.setCompressArchives(false);
+        factory.logToFile(new File(dir, "bm.log"), false);
+        log = factory.getLogger(MdcBenchmark.class.getName());
+
+        // MDC is per thread - Scope.Thread state is set up on the thread that runs the benchmark
+        MDC.clear();
+        for (int i = 0; i < mdcSize; i++) {
+            MDC.put("key" + i, "value" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MDC.clear();
+        factory.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void logLine() {
+        log.info("onLocationChanged: {}, accuracy: {}", ++count, 12.5f);
+    }
+
+    @Benchmark
+    public void putAndLogLine() {
+        MDC.put("requestId", Integer.toString(++count & 0xFF));
+        log.info("onLocationChanged: {}, accuracy: {}", count, 12.5f);
+    }
+}
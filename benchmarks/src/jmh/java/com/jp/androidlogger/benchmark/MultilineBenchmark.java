@@ -0,0 +1,68 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * splitting large messages over multiple logcat lines (see AndroidLoggerFactory.setMultilineLoggingEnabled())
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MultilineBenchmark {
+
+    @Param({"1000", "16000", "200000", "1000000"})
+    public int messageLength;
+
+    @Param({"false", "true"})
+    public boolean isSplitOnNewlines;
+
+    private Logger log;
+    private String message;
+
+    @Setup
+    public void setup() {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.setMultilineLoggingEnabled(true);
+        factory.setMaxCharactersPerLine(1000);
+        factory.setSplitOnNewlinesEnabled(isSplitOnNewlines);
+        log = factory.getLogger(MultilineBenchmark.class.getName());
+
+        // JSON-ish response body: lines of ~80 characters
+        StringBuilder sb = new StringBuilder(messageLength);
+        for (int line = 0; sb.length() < messageLength; line++) {
+            sb.append("  \"field").append(line).append("\": \"");
+            while (sb.length() % 80 != 0) {
+                sb.append((char) ('a' + sb.length() % 26));
+            }
+            sb.append("\",\n");
+        }
+        sb.setLength(messageLength);
+        message = sb.toString();
+    }
+
+    @Benchmark
+    public void largeMessage() {
+        log.debug("response: {}", message);
+    }
+}
@@ -0,0 +1,67 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+import com.jp.androidlogger.LogSampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chatty logger (2 arguments) sampled down to ~1% - nearly every call is dropped before formatting
+ * - "none" logs every call to logcat (stubbed) for comparison
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SamplingBenchmark {
+
+    @Param({"none", "oneIn", "percent", "mdc"})
+    public String sampler;
+
+    private Logger log;
+    private int count;
+
+    @Setup
+    public void setup() {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        String loggerName = SamplingBenchmark.class.getName();
+        switch (sampler) {
+            case "oneIn":
+                factory.setSampler(loggerName, Log.DEBUG, LogSampler.oneIn(100));
+                break;
+            case "percent":
+                factory.setSampler(loggerName, Log.DEBUG, LogSampler.percent(1));
+                break;
+            case "mdc":
+                // this session isn't one of the kept ones
+                factory.setSampler(loggerName, Log.DEBUG, LogSampler.byMdc("session", 0));
+                MDC.put("session", "2f9c41d7");
+                break;
+        }
+        log = factory.getLogger(loggerName);
+    }
+
+    @Benchmark
+    public void sensorChanged() {
+        log.debug("onSensorChanged: {}, accuracy: {}", ++count, 3);
+    }
+}
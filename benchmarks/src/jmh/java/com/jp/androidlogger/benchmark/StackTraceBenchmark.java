@@ -0,0 +1,91 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * error storm: the same exception (~80 frames + a cause) logged to a text file over and over
+ * - with/without the stack trace cache, with/without writing repeats as a reference
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StackTraceBenchmark {
+    private static final int DEPTH = 80;
+
+    @Param({"0", "32"})
+    public int cacheSize;
+
+    @Param({"false", "true"})
+    public boolean isDedup;
+
+    private AndroidLoggerFactory factory;
+    private Logger log;
+    private File dir;
+    private Exception exception;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("androidlogger-bm", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("unable to create: " + dir);
+        }
+        factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.VERBOSE);
+        factory.removeSink(factory.getLogcatSink());
+        factory.setMaxFileSize(16 * 1024 * 1024);
+        factory.setMaxArchiveFiles(1);
+        factory.setCompressArchives(false);
+        factory.setStackTraceCacheSize(cacheSize);
+        factory.setStackTraceDedupEnabled(isDedup);
+        factory.logToFile(new File(dir, "bm.log"), false);
+        log = factory.getLogger(StackTraceBenchmark.class.getName());
+        exception = newException(DEPTH - 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static Exception newException(int depth) {
+        if (depth > 0) {
+            return newException(depth - 1);
+        }
+        return new IllegalStateException("request failed", new IOException("connection reset"));
+    }
+
+    @Benchmark
+    public void logException() {
+        log.error("sync failed", exception);
+    }
+}
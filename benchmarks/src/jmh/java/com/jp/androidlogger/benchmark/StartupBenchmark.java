@@ -0,0 +1,81 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * app startup: creating 5,000 loggers (one per class), setting the tag prefix once they exist, and each of them logging
+ * a first line
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    private static final int LOGGER_COUNT = 5000;
+
+    private String[] names;
+    private AndroidLoggerFactory factory;
+    private Logger[] loggers;
+    private int prefixIndex;
+
+    @Setup
+    public void setup() {
+        names = new String[LOGGER_COUNT];
+        for (int i = 0; i < LOGGER_COUNT; i++) {
+            names[i] = "com.jp.app.feature" + (i % 50) + ".ui.SomeScreenFragment" + i;
+        }
+        factory = newFactory();
+        loggers = new Logger[LOGGER_COUNT];
+        for (int i = 0; i < LOGGER_COUNT; i++) {
+            loggers[i] = factory.getLogger(names[i]);
+        }
+    }
+
+    @Benchmark
+    public AndroidLoggerFactory createLoggers() {
+        AndroidLoggerFactory factory = newFactory();
+        for (String name : names) {
+            factory.getLogger(name);
+        }
+        return factory;
+    }
+
+    @Benchmark
+    public void setTagPrefix() {
+        factory.setTagPrefix((++prefixIndex & 1) == 0 ? "app" : "bm");
+    }
+
+    @Benchmark
+    public AndroidLoggerFactory createLoggersAndLog() {
+        AndroidLoggerFactory factory = newFactory();
+        factory.setTagPrefix("app");
+        for (String name : names) {
+            factory.getLogger(name).info("onCreate");
+        }
+        return factory;
+    }
+
+    private static AndroidLoggerFactory newFactory() {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.INFO);
+        return factory;
+    }
+}
@@ -0,0 +1,89 @@
+package com.jp.androidlogger.benchmark;
+
+import android.util.Log;
+
+import com.jp.androidlogger.AndroidLoggerFactory;
+import com.jp.androidlogger.strip.LogCallStripper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * disabled debug/trace calls (boxing, varargs, string concatenation, a guard) before and after LogCallStripper removes
+ * them - debug level is INFO
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StripBenchmark {
+
+    @Param({"false", "true"})
+    public boolean isStripped;
+
+    private Runnable target;
+
+    @Setup
+    public void setup() throws Exception {
+        AndroidLoggerFactory factory = new AndroidLoggerFactory();
+        factory.setDebugLevel(Log.INFO);
+        Logger log = factory.getLogger(StripBenchmark.class.getName());
+
+        byte[] classBytes = readClass(StripTarget.class);
+        if (isStripped) {
+            classBytes = new LogCallStripper("INFO").strip(classBytes);
+        }
+        Class<?> targetClass = new TargetLoader().define(StripTarget.class.getName(), classBytes);
+        target = (Runnable) targetClass.getConstructor(Logger.class).newInstance(log);
+    }
+
+    @Benchmark
+    public void locationChanged() {
+        target.run();
+    }
+
+    private static byte[] readClass(Class<?> c) throws IOException {
+        InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * both versions are loaded the same way so neither gets an advantage from the class loader
+     */
+    private static class TargetLoader extends ClassLoader {
+        TargetLoader() {
+            super(StripBenchmark.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classBytes) {
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+}
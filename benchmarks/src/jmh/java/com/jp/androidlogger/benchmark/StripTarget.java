@@ -0,0 +1,28 @@
+package com.jp.androidlogger.benchmark;
+
+import org.slf4j.Logger;
+
+/**
+ * call site for StripBenchmark - loaded as-is and with trace/debug calls stripped
+ */
+public class StripTarget implements Runnable {
+    private final Logger log;
+    private int count;
+    private double latitude = 30.2672;
+    private double longitude = -97.7431;
+
+    public StripTarget(Logger log) {
+        this.log = log;
+    }
+
+    @Override
+    public void run() {
+        count++;
+        // disabled, but still boxes 3 values into a varargs array before the level check
+        log.debug("onLocationChanged: lat={}, lon={}, count={}", latitude, longitude, count);
+        log.trace("onLocationChanged: " + count);
+        if (log.isDebugEnabled()) {
+            log.debug("state: {}", this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.jp.androidlogger.benchmark;
+
+import com.jp.androidlogger.TimestampFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * timestamp at the start of each file line - TimestampFormatter vs the SimpleDateFormat + new Date() per line it
+ * replaced
+ * - single thread: the old shared SimpleDateFormat as it was (not thread-safe)
+ * - 4 threads: the old path has to lock the SimpleDateFormat to be correct; TimestampFormatter doesn't lock
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TimestampBenchmark {
+
+    @Param({TimestampFormatter.DEFAULT, TimestampFormatter.ISO_8601})
+    public String pattern;
+
+    private SimpleDateFormat simpleDateFormat;
+    private TimestampFormatter timestampFormatter;
+
+    @Setup
+    public void setup() {
+        simpleDateFormat = new SimpleDateFormat(pattern, Locale.US);
+        timestampFormatter = new TimestampFormatter(pattern);
+    }
+
+    @Benchmark
+    public StringBuilder simpleDateFormat(Line line) {
+        line.text.setLength(0);
+        return line.text.append(simpleDateFormat.format(new Date()));
+    }
+
+    @Benchmark
+    public StringBuilder timestampFormatter(Line line) {
+        line.text.setLength(0);
+        timestampFormatter.format(System.currentTimeMillis(), line.text);
+        return line.text;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public StringBuilder simpleDateFormatThreaded(Line line) {
+        line.text.setLength(0);
+        String time;
+        synchronized (simpleDateFormat) {
+            time = simpleDateFormat.format(new Date());
+        }
+        return line.text.append(time);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public StringBuilder timestampFormatterThreaded(Line line) {
+        line.text.setLength(0);
+        timestampFormatter.format(System.currentTimeMillis(), line.text);
+        return line.text;
+    }
+
+    /**
+     * each thread's line buffer (like LogFileWriter's)
+     */
+    @State(Scope.Thread)
+    public static class Line {
+        final StringBuilder text = new StringBuilder(256);
+    }
+}
@@ -0,0 +1,108 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * JVM stand-in for android.util.Log so the library can be benchmarked off device
+ * - every call touches the tag + message (so the JIT can't drop the call) but doesn't do any I/O; benchmarks measure
+ * the logger, not logcat
+ * - {@link #setWriteCostNanos(long)} adds a busy wait to each call instead, for benchmarks that compare writing logcat on
+ * the calling thread with handing it off (a real write is a syscall to logd)
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    // total characters "written"; volatile so the writes can't be optimized away
+    private static volatile long charCount;
+    // simulated cost of each write; 0 for none
+    private static volatile long writeCostNanos;
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println(VERBOSE, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println(DEBUG, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println(INFO, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return println(WARN, tag, getStackTraceString(tr));
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return true;
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        int length = tag.length() + msg.length();
+        charCount += length;
+        long costNanos = writeCostNanos;
+        if (costNanos > 0) {
+            long endTime = System.nanoTime() + costNanos;
+            while (System.nanoTime() < endTime) {
+                // busy wait - sleep() can't do a few microseconds
+            }
+        }
+        return length;
+    }
+
+    public static void setWriteCostNanos(long costNanos) {
+        writeCostNanos = costNanos;
+    }
+
+    public static long getCharCount() {
+        return charCount;
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        tr.printStackTrace(pw);
+        pw.flush();
+        return sw.toString();
+    }
+}